@@ -45,6 +45,7 @@ export default new Vuex.Store({
             fov: 0,
             resolution: 0,
             streamDivisor: 0,
+            streamBandwidthKbps: 0,
             tilt: 0
         },
         resolutionList: [],
@@ -0,0 +1,43 @@
+package com.chameleonvision.benchmark;
+
+import com.chameleonvision.vision.pipeline.ContourFeatures;
+import com.chameleonvision.vision.pipeline.impl.StandardCVPipeline;
+import org.apache.commons.lang3.tuple.Pair;
+import org.opencv.core.MatOfPoint;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ContourPipesBenchmark {
+
+    @Benchmark
+    public Pair<List<MatOfPoint>, Long> findContoursPipe(PipeBenchmarkState state) {
+        return state.findContoursPipe.run(state.hsvMask);
+    }
+
+    @Benchmark
+    public Pair<List<ContourFeatures>, Long> filterContoursPipe(PipeBenchmarkState state) {
+        return state.filterContoursPipe.run(state.foundContours);
+    }
+
+    @Benchmark
+    public Pair<List<ContourFeatures>, Long> speckleRejectPipe(PipeBenchmarkState state) {
+        return state.speckleRejectPipe.run(state.filteredContours);
+    }
+
+    @Benchmark
+    public Pair<List<StandardCVPipeline.TrackedTarget>, Long> groupContoursPipe(PipeBenchmarkState state) {
+        return state.groupContoursPipe.run(state.despeckledContours);
+    }
+
+    @Benchmark
+    public Pair<List<StandardCVPipeline.TrackedTarget>, Long> sortContoursPipe(PipeBenchmarkState state) {
+        return state.sortContoursPipe.run(state.groupedTargets);
+    }
+}
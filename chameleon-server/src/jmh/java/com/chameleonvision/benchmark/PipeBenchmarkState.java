@@ -0,0 +1,174 @@
+package com.chameleonvision.benchmark;
+
+import com.chameleonvision.config.CameraCalibrationConfig;
+import com.chameleonvision.util.ProgramDirectoryUtilities;
+import com.chameleonvision.vision.camera.CaptureStaticProperties;
+import com.chameleonvision.vision.image.StaticImageCapture;
+import com.chameleonvision.vision.pipeline.ContourFeatures;
+import com.chameleonvision.vision.pipeline.impl.StandardCVPipeline;
+import com.chameleonvision.vision.pipeline.impl.StandardCVPipelineSettings;
+import com.chameleonvision.vision.pipeline.pipes.*;
+import edu.wpi.cscore.CameraServerCvJNI;
+import edu.wpi.cscore.CameraServerJNI;
+import edu.wpi.cscore.VideoMode;
+import edu.wpi.first.wpilibj.geometry.Rotation2d;
+import org.opencv.core.*;
+import org.opencv.imgproc.Imgproc;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Shared JMH state for the pipe benchmarks.
+ * Loads a frame from the recorded corpus, scales it to the requested resolution, paints the requested
+ * number of synthetic targets on it, and runs every pipe once so each benchmark gets realistic input.
+ */
+@State(Scope.Thread)
+public class PipeBenchmarkState {
+
+    private static final Path corpusPath = Paths.get(ProgramDirectoryUtilities.getProgramDirectory(), "testimages", "2019");
+    private static final double CORPUS_FOV = 68.5;
+
+    @Param({"320x240", "640x480", "1280x720"})
+    public String resolution;
+
+    @Param({"1", "4", "16"})
+    public int targetCount;
+
+    @Param({"CargoStraightDark48in", "RocketPanelAngleDark48in", "LoadingStraightDark36in"})
+    public String corpusImage;
+
+    public final StandardCVPipelineSettings settings = new StandardCVPipelineSettings();
+    public CaptureStaticProperties camProps;
+
+    // pipe inputs
+    public Mat frame = new Mat();
+    public Mat workFrame = new Mat();
+    public Mat drawFrame = new Mat();
+    public Mat hsvMask = new Mat();
+    public Mat workMask = new Mat();
+    public List<MatOfPoint> foundContours;
+    public List<ContourFeatures> filteredContours;
+    public List<ContourFeatures> despeckledContours;
+    public List<StandardCVPipeline.TrackedTarget> groupedTargets;
+    public List<StandardCVPipeline.TrackedTarget> sortedTargets;
+    public List<StandardCVPipeline.TrackedTarget> poseTargets;
+
+    // pipes under test
+    public HsvPipe hsvPipe;
+    public HsvPipe stripedHsvPipe;
+    public LutThresholdPipe quantizedLutThresholdPipe;
+    public LutThresholdPipe exactLutThresholdPipe;
+    public ErodeDilatePipe erodeDilatePipe;
+    public ErodeDilatePipe stripedErodeDilatePipe;
+    public FindContoursPipe findContoursPipe;
+    public FilterContoursPipe filterContoursPipe;
+    public SpeckleRejectPipe speckleRejectPipe;
+    public GroupContoursPipe groupContoursPipe;
+    public SortContoursPipe sortContoursPipe;
+    public SolvePNPPipe solvePNPPipe;
+    public Draw2dContoursPipe draw2dContoursPipe;
+    public Draw2dCrosshairPipe draw2dCrosshairPipe;
+    public DrawSolvePNPPipe drawSolvePNPPipe;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException, InterruptedException {
+        CameraServerJNI.forceLoad();
+        CameraServerCvJNI.forceLoad();
+
+        String[] dimensions = resolution.split("x");
+        int width = Integer.parseInt(dimensions[0]);
+        int height = Integer.parseInt(dimensions[1]);
+
+        var capture = new StaticImageCapture(corpusPath.resolve(corpusImage + ".jpg"), CORPUS_FOV);
+        Imgproc.resize(capture.getFrame().getLeft(), frame, new Size(width, height));
+        drawTargets(frame, targetCount);
+        frame.copyTo(drawFrame);
+
+        camProps = new CaptureStaticProperties(new VideoMode(VideoMode.PixelFormat.kBGR, width, height, 60), CORPUS_FOV);
+        CameraCalibrationConfig calibration = syntheticCalibration(camProps);
+
+        Scalar hsvLower = new Scalar(settings.hue.get(0).intValue(), settings.saturation.get(0).intValue(), settings.value.get(0).intValue());
+        Scalar hsvUpper = new Scalar(settings.hue.get(1).intValue(), settings.saturation.get(1).intValue(), settings.value.get(1).intValue());
+
+        int stripes = Runtime.getRuntime().availableProcessors();
+        hsvPipe = new HsvPipe(hsvLower, hsvUpper, 1);
+        stripedHsvPipe = new HsvPipe(hsvLower, hsvUpper, stripes);
+        quantizedLutThresholdPipe = new LutThresholdPipe(hsvLower, hsvUpper, false);
+        exactLutThresholdPipe = new LutThresholdPipe(hsvLower, hsvUpper, true);
+        erodeDilatePipe = new ErodeDilatePipe(true, true, 7, 1);
+        stripedErodeDilatePipe = new ErodeDilatePipe(true, true, 7, stripes);
+        findContoursPipe = new FindContoursPipe();
+        filterContoursPipe = new FilterContoursPipe(settings.area, settings.ratio, settings.extent, camProps);
+        speckleRejectPipe = new SpeckleRejectPipe(settings.speckle.doubleValue());
+        groupContoursPipe = new GroupContoursPipe(settings.targetGroup, settings.targetIntersection);
+        sortContoursPipe = new SortContoursPipe(settings.sortMode, camProps, 5);
+        solvePNPPipe = new SolvePNPPipe(settings, calibration, new Rotation2d());
+
+        var contoursSettings = new Draw2dContoursPipe.Draw2dContoursSettings();
+        contoursSettings.boxOutlineSize = 2;
+        contoursSettings.showRotatedBox = true;
+        contoursSettings.showMaximumBox = true;
+        contoursSettings.showMultiple = true;
+        draw2dContoursPipe = new Draw2dContoursPipe(contoursSettings, camProps);
+        draw2dCrosshairPipe = new Draw2dCrosshairPipe(new Draw2dCrosshairPipe.Draw2dCrosshairPipeSettings(),
+                settings.calibrationMode, settings.point, settings.dualTargetCalibrationM, settings.dualTargetCalibrationB);
+        drawSolvePNPPipe = new DrawSolvePNPPipe(calibration);
+
+        // run every stage once so each benchmark gets the output of the stage before it
+        hsvPipe.run(frame).getLeft().copyTo(hsvMask);
+        // the lookup tables are built in the background, wait for them so the benchmarks only measure applying them
+        while (!quantizedLutThresholdPipe.isTableReady() || !exactLutThresholdPipe.isTableReady()) {
+            Thread.sleep(10);
+        }
+        quantizedLutThresholdPipe.run(frame);
+        exactLutThresholdPipe.run(frame);
+        foundContours = new ArrayList<>(findContoursPipe.run(hsvMask).getLeft());
+        filteredContours = new ArrayList<>(filterContoursPipe.run(foundContours).getLeft());
+        despeckledContours = new ArrayList<>(speckleRejectPipe.run(filteredContours).getLeft());
+        groupedTargets = new ArrayList<>(groupContoursPipe.run(despeckledContours).getLeft());
+        sortedTargets = new ArrayList<>(sortContoursPipe.run(groupedTargets).getLeft());
+        poseTargets = new ArrayList<>(solvePNPPipe.run(sortedTargets).getLeft());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        frame.release();
+        workFrame.release();
+        drawFrame.release();
+        hsvMask.release();
+        workMask.release();
+    }
+
+    /**
+     * Paints a grid of filled green rectangles on the frame, sized so that each one passes the default
+     * {@link StandardCVPipelineSettings} thresholds and filters.
+     */
+    private static void drawTargets(Mat frame, int count) {
+        int columns = (int) Math.ceil(Math.sqrt(count));
+        int rows = (int) Math.ceil((double) count / columns);
+        int cellWidth = frame.cols() / columns;
+        int cellHeight = frame.rows() / rows;
+        Scalar green = new Scalar(0, 255, 0);
+
+        for (int i = 0; i < count; i++) {
+            int x = (i % columns) * cellWidth + cellWidth / 4;
+            int y = (i / columns) * cellHeight + cellHeight / 3;
+            Imgproc.rectangle(frame, new Point(x, y), new Point(x + cellWidth / 2.0, y + cellHeight / 3.0), green, Imgproc.FILLED);
+        }
+    }
+
+    private static CameraCalibrationConfig syntheticCalibration(CaptureStaticProperties props) {
+        Mat cameraMatrix = new Mat(3, 3, CvType.CV_64FC1);
+        cameraMatrix.put(0, 0,
+                props.horizontalFocalLength, 0, props.centerX,
+                0, props.verticalFocalLength, props.centerY,
+                0, 0, 1);
+        Mat distortionCoeffs = Mat.zeros(1, 5, CvType.CV_64FC1);
+        return new CameraCalibrationConfig(new Size(props.imageWidth, props.imageHeight), cameraMatrix, distortionCoeffs, 1.0);
+    }
+}
@@ -0,0 +1,37 @@
+package com.chameleonvision.benchmark;
+
+import com.chameleonvision.vision.pipeline.impl.StandardCVPipeline;
+import org.apache.commons.lang3.tuple.Pair;
+import org.opencv.core.Mat;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TargetPipesBenchmark {
+
+    @Benchmark
+    public Pair<List<StandardCVPipeline.TrackedTarget>, Long> solvePNPPipe(PipeBenchmarkState state) {
+        return state.solvePNPPipe.run(state.sortedTargets);
+    }
+
+    @Benchmark
+    public Pair<Mat, Long> draw2dContoursPipe(PipeBenchmarkState state) {
+        return state.draw2dContoursPipe.run(Pair.of(state.drawFrame, state.sortedTargets));
+    }
+
+    @Benchmark
+    public Pair<Mat, Long> draw2dCrosshairPipe(PipeBenchmarkState state) {
+        return state.draw2dCrosshairPipe.run(Pair.of(state.drawFrame, state.sortedTargets));
+    }
+
+    @Benchmark
+    public Pair<Mat, Long> drawSolvePNPPipe(PipeBenchmarkState state) {
+        return state.drawSolvePNPPipe.run(Pair.of(state.drawFrame, state.poseTargets));
+    }
+}
@@ -0,0 +1,82 @@
+package com.chameleonvision.benchmark;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.opencv.core.Mat;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ThresholdPipesBenchmark {
+
+    @Benchmark
+    public Pair<Mat, Long> hsvPipe(PipeBenchmarkState state) {
+        return state.hsvPipe.run(state.frame);
+    }
+
+    @Benchmark
+    public Pair<Mat, Long> stripedHsvPipe(PipeBenchmarkState state) {
+        return state.stripedHsvPipe.run(state.frame);
+    }
+
+    @Benchmark
+    public Pair<Mat, Long> quantizedLutThresholdPipe(PipeBenchmarkState state) {
+        return state.quantizedLutThresholdPipe.run(state.frame);
+    }
+
+    @Benchmark
+    public Pair<Mat, Long> exactLutThresholdPipe(PipeBenchmarkState state) {
+        return state.exactLutThresholdPipe.run(state.frame);
+    }
+
+    /**
+     * ErodeDilatePipe works in place, so every invocation starts from a fresh copy of the frame.
+     * This is the 3 channel BGR frame the pipeline erodes and dilates before thresholding, so it isn't comparable
+     * with the threshold pipes above, see {@link #erodeDilatePipeMask} for that.
+     * Subtract {@link #copyFrameBaseline} to get the cost of the pipe alone.
+     */
+    @Benchmark
+    public Pair<Mat, Long> erodeDilatePipeBgr(PipeBenchmarkState state) {
+        state.frame.copyTo(state.workFrame);
+        return state.erodeDilatePipe.run(state.workFrame);
+    }
+
+    /**
+     * The striped pipe leaves its input alone, no copy of the frame is needed.
+     */
+    @Benchmark
+    public Pair<Mat, Long> stripedErodeDilatePipeBgr(PipeBenchmarkState state) {
+        return state.stripedErodeDilatePipe.run(state.frame);
+    }
+
+    /**
+     * The same pipe on the single channel mask the threshold pipes produce.
+     * Subtract {@link #copyMaskBaseline} to get the cost of the pipe alone.
+     */
+    @Benchmark
+    public Pair<Mat, Long> erodeDilatePipeMask(PipeBenchmarkState state) {
+        state.hsvMask.copyTo(state.workMask);
+        return state.erodeDilatePipe.run(state.workMask);
+    }
+
+    @Benchmark
+    public Pair<Mat, Long> stripedErodeDilatePipeMask(PipeBenchmarkState state) {
+        return state.stripedErodeDilatePipe.run(state.hsvMask);
+    }
+
+    @Benchmark
+    public Mat copyFrameBaseline(PipeBenchmarkState state) {
+        state.frame.copyTo(state.workFrame);
+        return state.workFrame;
+    }
+
+    @Benchmark
+    public Mat copyMaskBaseline(PipeBenchmarkState state) {
+        state.hsvMask.copyTo(state.workMask);
+        return state.workMask;
+    }
+}
@@ -83,12 +83,7 @@ public class CameraConfig {
     }
 
     void saveConfig(CameraJsonConfig config) {
-        try {
-            JacksonHelper.serializer(configPath, config);
-            FileHelper.setFilePerms(configPath);
-        } catch (IOException e) {
-            System.err.println("Failed to save camera config file: " + configPath.toString());
-        }
+        ConfigPersistence.save(configPath, config);
     }
 
     void savePipelines(List<CVPipelineSettings> pipelines) {
@@ -96,23 +91,13 @@ public class CameraConfig {
     }
 
     public void saveDriverMode(CVPipelineSettings driverMode) {
-        try {
-            JacksonHelper.serializer(driverModePath, driverMode);
-            FileHelper.setFilePerms(driverModePath);
-        } catch (IOException e) {
-            System.err.println("Failed to save camera drivermode file: " + driverModePath.toString());
-        }
+        ConfigPersistence.save(driverModePath, driverMode);
     }
 
 
     public void saveCalibration(List<CameraCalibrationConfig> cal) {
         CameraCalibrationConfig[] configs = cal.toArray(new CameraCalibrationConfig[0]);
-        try {
-            JacksonHelper.serializer(calibrationPath, configs);
-            FileHelper.setFilePerms(calibrationPath);
-        } catch (IOException e) {
-            System.err.println("Failed to save camera calibration file: " + calibrationPath.toString());
-        }
+        ConfigPersistence.save(calibrationPath, configs);
     }
 
     void checkFolder() {
@@ -13,6 +13,11 @@ public class CameraJsonConfig {
     public final String nickname;
     public final int videomode;
     public final StreamDivisor streamDivisor;
+    public final int threadPriority;
+    public final String cpuAffinity;
+    public final int targetFps;
+    // kilobits per second this camera's dashboard stream may use, 0 to stream at full frame rate and quality
+    public final int streamBandwidthKbps;
 
     @JsonCreator
     public CameraJsonConfig(
@@ -21,13 +26,22 @@ public class CameraJsonConfig {
             @JsonProperty("name") String name,
             @JsonProperty("nickname") String nickname,
             @JsonProperty("videomode") int videomode,
-            @JsonProperty("streamDivisor") StreamDivisor streamDivisor) {
+            @JsonProperty("streamDivisor") StreamDivisor streamDivisor,
+            @JsonProperty("threadPriority") int threadPriority,
+            @JsonProperty("cpuAffinity") String cpuAffinity,
+            @JsonProperty("targetFps") int targetFps,
+            @JsonProperty("streamBandwidthKbps") int streamBandwidthKbps) {
         this.fov = fov;
         this.path = path;
         this.name = name;
         this.nickname = nickname;
         this.videomode = videomode;
         this.streamDivisor = streamDivisor;
+        // configs from before scheduling was added have none of these
+        this.threadPriority = threadPriority < Thread.MIN_PRIORITY || threadPriority > Thread.MAX_PRIORITY ? Thread.NORM_PRIORITY : threadPriority;
+        this.cpuAffinity = cpuAffinity != null ? cpuAffinity : "";
+        this.targetFps = Math.max(0, targetFps);
+        this.streamBandwidthKbps = Math.max(0, streamBandwidthKbps);
     }
 
     public CameraJsonConfig(String path, String name) {
@@ -37,12 +51,18 @@ public class CameraJsonConfig {
         this.nickname = name;
         this.videomode = 0;
         this.streamDivisor = StreamDivisor.NONE;
+        this.threadPriority = Thread.NORM_PRIORITY;
+        this.cpuAffinity = "";
+        this.targetFps = 0;
+        this.streamBandwidthKbps = 0;
     }
 
     public static CameraJsonConfig fromVisionProcess(VisionProcess process) {
         USBCaptureProperties camProps = process.getCamera().getProperties();
         int videomode = camProps.getCurrentVideoModeIndex();
         StreamDivisor streamDivisor = process.cameraStreamer.getDivisor();
-        return new CameraJsonConfig(camProps.getFOV(), camProps.path, camProps.name, camProps.getNickname(), videomode, streamDivisor);
+        return new CameraJsonConfig(camProps.getFOV(), camProps.path, camProps.name, camProps.getNickname(), videomode, streamDivisor,
+                process.getThreadPriority(), process.getCpuAffinity(), process.getTargetFps(),
+                process.cameraStreamer.getBandwidthBudget());
     }
 }
@@ -69,12 +69,7 @@ public class ConfigManager {
     }
 
     private static void saveSettingsFile() {
-        try {
-            JacksonHelper.serializer(settingsFilePath, settings);
-            FileHelper.setFilePerms(settingsFilePath);
-        } catch (IOException e) {
-            System.err.println("Failed to save settings.json!");
-        }
+        ConfigPersistence.save(settingsFilePath, settings);
     }
 
     public static void saveGeneralSettings() {
@@ -0,0 +1,244 @@
+package com.chameleonvision.config;
+
+import com.chameleonvision.util.FileHelper;
+import com.chameleonvision.util.JacksonHelper;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Writes config files in the background, so changing a setting in the UI never waits on a slow SD card.
+ * A save only marks the file as pending, with the object to write. The writer thread serializes the object once the
+ * file has had no saves for {@link #DEBOUNCE_MS}, or {@link #MAX_DELAY_MS} after its first pending save, so a burst of
+ * slider moves turns into one write of the final values. Files are written to a temporary file next to them, synced
+ * to disk and renamed over the old one, so a power cut leaves either the old file or the new one, never half of one.
+ */
+public class ConfigPersistence {
+    private ConfigPersistence() {
+    }
+
+    public static final long DEBOUNCE_MS = 500;
+    public static final long MAX_DELAY_MS = 2000;
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    // the files waiting to be written, oldest first
+    private static final Map<Path, PendingWrite> pendingWrites = new LinkedHashMap<>();
+    // held from taking a write off the pending files until it's on disk, and while deleting, so a delete can't be
+    // undone by a write that was already under way
+    private static final Object fileLock = new Object();
+    private static Thread writerThread;
+
+    private static volatile long writeCount = 0;
+    private static volatile long coalescedCount = 0;
+    private static volatile long failedCount = 0;
+    private static volatile long lastWriteNanos = 0;
+    private static volatile double averageWriteNanos = 0;
+    private static volatile long maxWriteNanos = 0;
+
+    /**
+     * Writes an object to a file soon. Never blocks on the disk.
+     * The object is serialized when it's written, not now, so it should not be replaced by a copy before then.
+     */
+    public static void save(Path path, Object object) {
+        long now = System.nanoTime();
+        synchronized (pendingWrites) {
+            PendingWrite pending = pendingWrites.get(path);
+            if (pending == null) {
+                pendingWrites.put(path, new PendingWrite(object, now));
+            } else {
+                pending.object = object;
+                pending.lastSaveNanos = now;
+                coalescedCount++;
+            }
+            startWriter();
+        }
+        LockSupport.unpark(writerThread);
+    }
+
+    /**
+     * Deletes a file now, along with any write of it that is still pending.
+     */
+    public static void delete(Path path) throws IOException {
+        synchronized (fileLock) {
+            synchronized (pendingWrites) {
+                pendingWrites.remove(path);
+            }
+            Files.deleteIfExists(path);
+        }
+    }
+
+    /**
+     * Writes an object to a new file now, on the calling thread, and only then deletes the old file, so a power cut
+     * in between leaves at least one of them. Pending writes of either file are dropped.
+     */
+    public static void move(Path oldPath, Path newPath, Object object) throws IOException {
+        synchronized (fileLock) {
+            synchronized (pendingWrites) {
+                pendingWrites.remove(oldPath);
+                pendingWrites.remove(newPath);
+            }
+            if (!write(newPath, object)) {
+                throw new IOException("Failed to write " + newPath.toString());
+            }
+            if (!oldPath.equals(newPath)) {
+                Files.deleteIfExists(oldPath);
+                syncFolder(oldPath.getParent());
+            }
+        }
+    }
+
+    /**
+     * Writes every pending file now, on the calling thread. For shutting down and for when the user asks to save.
+     */
+    public static void flush() {
+        synchronized (fileLock) {
+            List<Map.Entry<Path, PendingWrite>> writes;
+            synchronized (pendingWrites) {
+                writes = new ArrayList<>(pendingWrites.entrySet());
+                pendingWrites.clear();
+            }
+            for (Map.Entry<Path, PendingWrite> write : writes) {
+                write(write.getKey(), write.getValue().object);
+            }
+        }
+    }
+
+    private static void startWriter() {
+        if (writerThread != null) return;
+        writerThread = new Thread(ConfigPersistence::run);
+        writerThread.setName("Config Writer Thread");
+        writerThread.setDaemon(true);
+        writerThread.start();
+        // whatever hasn't been written yet when the program exits is written on the way out
+        Runtime.getRuntime().addShutdownHook(new Thread(ConfigPersistence::flush));
+    }
+
+    private static void run() {
+        while (!Thread.interrupted()) {
+            boolean wrote = false;
+            long waitNanos = Long.MAX_VALUE;
+
+            synchronized (fileLock) {
+                Path duePath = null;
+                Object dueObject = null;
+                synchronized (pendingWrites) {
+                    long now = System.nanoTime();
+                    for (Map.Entry<Path, PendingWrite> entry : pendingWrites.entrySet()) {
+                        long remainingNanos = entry.getValue().dueNanos() - now;
+                        if (remainingNanos <= 0) {
+                            duePath = entry.getKey();
+                            dueObject = entry.getValue().object;
+                            break;
+                        }
+                        waitNanos = Math.min(waitNanos, remainingNanos);
+                    }
+                    if (duePath != null) {
+                        pendingWrites.remove(duePath);
+                    }
+                }
+                if (duePath != null) {
+                    write(duePath, dueObject);
+                    wrote = true;
+                }
+            }
+
+            if (wrote) continue;
+            if (waitNanos == Long.MAX_VALUE) {
+                LockSupport.park();
+            } else {
+                // a new save wakes the thread early, the due times are worked out again either way
+                LockSupport.parkNanos(waitNanos);
+            }
+        }
+    }
+
+    /**
+     * Must be called holding {@link #fileLock}.
+     *
+     * @return whether the file was written
+     */
+    private static boolean write(Path path, Object object) {
+        long startNanos = System.nanoTime();
+        try {
+            byte[] data = JacksonHelper.serialize(object);
+            Path tempPath = path.resolveSibling(path.getFileName() + TEMP_SUFFIX);
+            try (FileChannel channel = FileChannel.open(tempPath, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer buffer = ByteBuffer.wrap(data);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(true);
+            }
+            Files.move(tempPath, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            syncFolder(path.getParent());
+            FileHelper.setFilePerms(path);
+
+            long writeNanos = System.nanoTime() - startNanos;
+            lastWriteNanos = writeNanos;
+            averageWriteNanos = writeCount == 0 ? writeNanos : averageWriteNanos * 0.9 + writeNanos * 0.1;
+            if (writeNanos > maxWriteNanos) maxWriteNanos = writeNanos;
+            writeCount++;
+            return true;
+        } catch (Exception e) {
+            failedCount++;
+            System.err.println("Failed to save config file: " + path.toString());
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * Makes the rename itself survive a power cut. Not every platform can open a folder for this, Windows can't.
+     */
+    private static void syncFolder(Path folder) {
+        if (folder == null) return;
+        try (FileChannel channel = FileChannel.open(folder, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException ignored) {
+        }
+    }
+
+    public static HashMap<String, Object> getMetrics() {
+        HashMap<String, Object> metrics = new HashMap<>();
+        synchronized (pendingWrites) {
+            metrics.put("pending", pendingWrites.size());
+        }
+        metrics.put("writes", writeCount);
+        metrics.put("coalesced", coalescedCount);
+        metrics.put("failed", failedCount);
+        metrics.put("lastWriteMs", lastWriteNanos / 1000000.0);
+        metrics.put("averageWriteMs", averageWriteNanos / 1000000.0);
+        metrics.put("maxWriteMs", maxWriteNanos / 1000000.0);
+        return metrics;
+    }
+
+    private static class PendingWrite {
+        Object object;
+        final long firstSaveNanos;
+        long lastSaveNanos;
+
+        PendingWrite(Object object, long nanos) {
+            this.object = object;
+            firstSaveNanos = nanos;
+            lastSaveNanos = nanos;
+        }
+
+        long dueNanos() {
+            return Math.min(lastSaveNanos + TimeUnit.MILLISECONDS.toNanos(DEBOUNCE_MS),
+                    firstSaveNanos + TimeUnit.MILLISECONDS.toNanos(MAX_DELAY_MS));
+        }
+    }
+}
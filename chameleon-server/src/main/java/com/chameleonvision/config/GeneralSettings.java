@@ -1,7 +1,12 @@
 package com.chameleonvision.config;
 
 import com.chameleonvision.network.NetworkIPMode;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.chameleonvision.vision.enums.NetworkTablesPublishMode;
+import com.chameleonvision.vision.enums.PipelineExecutionPolicy;
 
+// settings files from older versions can have settings that have since moved to the cameras' own configs
+@JsonIgnoreProperties(ignoreUnknown = true)
 public class GeneralSettings {
 	public int teamNumber = 1577;
 	public NetworkIPMode connectionType = NetworkIPMode.DHCP;
@@ -11,4 +16,8 @@ public class GeneralSettings {
 	public String hostname = "Chameleon-vision";
 	public String currentCamera = "";
 	public Integer currentPipeline = null;
+	public PipelineExecutionPolicy executionPolicy = PipelineExecutionPolicy.Serial;
+	public NetworkTablesPublishMode ntPublishMode = NetworkTablesPublishMode.Json;
+	// most times per second the shared publisher thread writes every camera's targets to NetworkTables, 0 to publish every frame from the vision thread
+	public int ntPublishRate = 0;
 }
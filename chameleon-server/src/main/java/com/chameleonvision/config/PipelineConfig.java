@@ -39,7 +39,8 @@ public class PipelineConfig {
     }
 
     private File[] getPipelineFiles() {
-        return new File(cameraConfig.pipelineFolderPath.toUri()).listFiles();
+        // only the pipelines, not a temporary file left by a write that was cut short
+        return new File(cameraConfig.pipelineFolderPath.toUri()).listFiles((dir, name) -> name.endsWith(".json"));
     }
 
     private boolean folderHasPipelines() {
@@ -63,20 +64,8 @@ public class PipelineConfig {
         return Path.of(cameraConfig.pipelineFolderPath.toString(), fullFileName);
     }
 
-    private boolean pipelineExists(CVPipelineSettings setting) {
-        return Files.exists(getPipelinePath(setting));
-    }
-
     public void save(CVPipelineSettings settings) {
-
-        var path = getPipelinePath(settings);
-
-        try {
-            JacksonHelper.serializer(path, settings);
-            FileHelper.setFilePerms(path);
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        ConfigPersistence.save(getPipelinePath(settings), settings);
     }
 
     public void save(List<CVPipelineSettings> settings) {
@@ -86,23 +75,25 @@ public class PipelineConfig {
     }
 
     public void delete(CVPipelineSettings setting) {
-        if(pipelineExists(setting)) {
-            try {
-                Files.delete(getPipelinePath(setting));
-            } catch (IOException e) {
-                System.err.println("Failed to delete pipeline!");
-            }
+        // also when it isn't on disk yet, so a pending write doesn't bring it back
+        try {
+            ConfigPersistence.delete(getPipelinePath(setting));
+        } catch (IOException e) {
+            System.err.println("Failed to delete pipeline!");
         }
     }
 
-    public CVPipelineSettings rename(CVPipelineSettings setting, String newName) {
-        if (pipelineExists(setting)) {
-            delete(setting);
-            setting.nickname = newName;
-            save(setting);
-        } else {
-            setting.nickname = newName;
-            save(setting);
+    /**
+     * @param oldSetting the settings from before the rename, only used to find the old file
+     */
+    public CVPipelineSettings rename(CVPipelineSettings oldSetting, CVPipelineSettings setting) {
+        Path oldPath = getPipelinePath(oldSetting);
+        // the new file is on disk before the old one goes
+        try {
+            ConfigPersistence.move(oldPath, getPipelinePath(setting), setting);
+        } catch (IOException e) {
+            System.err.println("Failed to rename pipeline!");
+            e.printStackTrace();
         }
         return setting;
     }
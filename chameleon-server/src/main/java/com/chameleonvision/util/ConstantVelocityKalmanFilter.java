@@ -0,0 +1,90 @@
+package com.chameleonvision.util;
+
+/**
+ * A Kalman filter for one value that moves at a roughly constant velocity, with the position measured and the velocity
+ * estimated. The state and its 2x2 covariance are plain fields, so predicting and updating allocate nothing.
+ * Changes in velocity are modelled as white noise acceleration.
+ */
+public class ConstantVelocityKalmanFilter {
+
+    private double position;
+    private double velocity;
+    // covariance of the state, it is symmetric so the other corner is covariance01 too
+    private double covariance00;
+    private double covariance01;
+    private double covariance11;
+
+    private double processNoise;
+    private double measurementNoise;
+
+    /**
+     * @param processNoise     standard deviation of the acceleration, in units per second squared
+     * @param measurementNoise standard deviation of a measurement, in units
+     */
+    public ConstantVelocityKalmanFilter(double processNoise, double measurementNoise) {
+        setNoise(processNoise, measurementNoise);
+    }
+
+    public void setNoise(double processNoise, double measurementNoise) {
+        this.processNoise = processNoise;
+        this.measurementNoise = measurementNoise;
+    }
+
+    /**
+     * Starts over at a measured position with an unknown velocity.
+     *
+     * @param velocityDeviation how far off a velocity of 0 could be, in units per second
+     */
+    public void reset(double measuredPosition, double velocityDeviation) {
+        position = measuredPosition;
+        velocity = 0;
+        covariance00 = measurementNoise * measurementNoise;
+        covariance01 = 0;
+        covariance11 = velocityDeviation * velocityDeviation;
+    }
+
+    /**
+     * Moves the state forward in time.
+     */
+    public void predict(double dtSeconds) {
+        if (dtSeconds <= 0) return;
+        double dt2 = dtSeconds * dtSeconds;
+        double q = processNoise * processNoise;
+
+        position += velocity * dtSeconds;
+        covariance00 += dtSeconds * (2 * covariance01 + dtSeconds * covariance11) + q * dt2 * dt2 / 4;
+        covariance01 += dtSeconds * covariance11 + q * dt2 * dtSeconds / 2;
+        covariance11 += q * dt2;
+    }
+
+    /**
+     * Corrects the state with a measured position.
+     */
+    public void update(double measuredPosition) {
+        double innovationCovariance = covariance00 + measurementNoise * measurementNoise;
+        double gain0 = covariance00 / innovationCovariance;
+        double gain1 = covariance01 / innovationCovariance;
+        double innovation = measuredPosition - position;
+
+        position += gain0 * innovation;
+        velocity += gain1 * innovation;
+        covariance11 -= gain1 * covariance01;
+        covariance00 -= gain0 * covariance00;
+        covariance01 -= gain0 * covariance01;
+    }
+
+    public double getPosition() {
+        return position;
+    }
+
+    public double getVelocity() {
+        return velocity;
+    }
+
+    /**
+     * @return the standard deviation of the position estimate
+     */
+    public double getPositionDeviation() {
+        return Math.sqrt(covariance00);
+    }
+}
@@ -0,0 +1,89 @@
+package com.chameleonvision.util;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Holds a loop to a maximum number of iterations per second, for vision loops that would otherwise take every frame
+ * the camera gives them.
+ * Besides a plain frame rate cap it can hold the loop to a CPU budget: given how long frames take to process, it
+ * stretches the frame period so processing only fills the budgeted share of it, and sleeps away the rest so other
+ * cameras can use that CPU.
+ */
+public class FrameRateLimiter {
+    private volatile long periodNanos = 0;
+    private volatile int cpuBudgetPercent = 0;
+    private long lastFrameNanos = 0;
+
+    private volatile double averageWorkNanos = 0;
+    private volatile long lastPeriodNanos = 0;
+    private volatile double averageWaitNanos = 0;
+
+    /**
+     * @param maxFps most frames per second to let through, 0 for no limit
+     */
+    public FrameRateLimiter(int maxFps) {
+        setMaxFps(maxFps);
+    }
+
+    public void setMaxFps(int maxFps) {
+        periodNanos = maxFps > 0 ? 1_000_000_000L / maxFps : 0;
+    }
+
+    /**
+     * @param cpuBudgetPercent how much of one core processing may use, 0 for no limit
+     */
+    public void setCpuBudget(int cpuBudgetPercent) {
+        this.cpuBudgetPercent = cpuBudgetPercent;
+    }
+
+    /**
+     * Reports how long the last frame took to process, for the CPU budget. May be called from another thread.
+     */
+    public void frameDone(long workNanos) {
+        averageWorkNanos = averageWorkNanos * 0.9 + workNanos * 0.1;
+    }
+
+    /**
+     * Waits until a frame period has passed since the last call returned.
+     *
+     * @return how long it waited, in nanoseconds
+     */
+    public long waitForNextFrame() {
+        long startNanos = System.nanoTime();
+        long period = periodNanos;
+        int budget = cpuBudgetPercent;
+        if (budget > 0 && budget < 100) {
+            period = Math.max(period, (long) (averageWorkNanos * 100 / budget));
+        }
+        lastPeriodNanos = period;
+
+        if (period > 0) {
+            long remainingNanos;
+            while ((remainingNanos = lastFrameNanos + period - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(remainingNanos);
+                if (Thread.currentThread().isInterrupted()) break;
+            }
+        }
+        lastFrameNanos = System.nanoTime();
+
+        long waitedNanos = lastFrameNanos - startNanos;
+        averageWaitNanos = averageWaitNanos * 0.9 + waitedNanos * 0.1;
+        return waitedNanos;
+    }
+
+    /**
+     * @return the frame rate the loop is currently held to, 0 if it isn't
+     */
+    public double getFpsLimit() {
+        long period = lastPeriodNanos;
+        return period > 0 ? 1e9 / period : 0;
+    }
+
+    public double getAverageWorkNanos() {
+        return averageWorkNanos;
+    }
+
+    public double getAverageWaitNanos() {
+        return averageWaitNanos;
+    }
+}
@@ -13,9 +13,19 @@ public class JacksonHelper {
     private JacksonHelper() {} // no construction, utility class
 
     public static <T> void serializer(Path path, T object) throws IOException {
+        serializerMapper(object).writerWithDefaultPrettyPrinter().writeValue(new File(path.toString()), object);
+    }
+
+    /**
+     * Serializes the same way as {@link #serializer(Path, Object)}, but to memory.
+     */
+    public static <T> byte[] serialize(T object) throws IOException {
+        return serializerMapper(object).writerWithDefaultPrettyPrinter().writeValueAsBytes(object);
+    }
+
+    private static <T> ObjectMapper serializerMapper(T object) {
         PolymorphicTypeValidator ptv = BasicPolymorphicTypeValidator.builder().allowIfBaseType(object.getClass()).build();
-        ObjectMapper objectMapper = JsonMapper.builder().activateDefaultTyping(ptv, ObjectMapper.DefaultTyping.JAVA_LANG_OBJECT).build();
-        objectMapper.writerWithDefaultPrettyPrinter().writeValue(new File(path.toString()), object);
+        return JsonMapper.builder().activateDefaultTyping(ptv, ObjectMapper.DefaultTyping.JAVA_LANG_OBJECT).build();
     }
 
     public static <T> T deserializer(Path path, Class<T> ref) throws IOException {
@@ -0,0 +1,106 @@
+package com.chameleonvision.util;
+
+import org.opencv.core.Mat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Tracks the native OpenCV buffers owned by a pipeline, so they are freed deterministically instead of
+ * waiting on the garbage collector to finalize the Java side of each Mat.
+ *
+ * Persistent Mats live as long as the pipeline, frame Mats are released when {@link #endFrame()} is called.
+ * Native memory use is measured at the end of every frame on the vision thread, so reading it from the web
+ * server is just a volatile read.
+ * Not thread safe, with the staged executor only the threshold stage's thread may use a pipeline's arena.
+ */
+public class MatArena {
+
+    private final Set<Mat> persistentMats = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final List<Mat> frameMats = new ArrayList<>();
+
+    private volatile long persistentBytes = 0;
+    private volatile long frameBytes = 0;
+    private volatile long peakFrameBytes = 0;
+    private volatile int trackedMatCount = 0;
+
+    /**
+     * Registers a Mat that is reused across frames. Registering the same Mat again does nothing.
+     */
+    public <T extends Mat> T persistent(T mat) {
+        persistentMats.add(mat);
+        return mat;
+    }
+
+    /**
+     * Registers a Mat that is only valid for the current frame, it will be released by {@link #endFrame()}.
+     */
+    public <T extends Mat> T frame(T mat) {
+        frameMats.add(mat);
+        return mat;
+    }
+
+    /**
+     * Releases every frame Mat and updates the memory metrics.
+     */
+    public void endFrame() {
+        long currentFrameBytes = 0;
+        for (int i = 0; i < frameMats.size(); i++) {
+            Mat mat = frameMats.get(i);
+            currentFrameBytes += sizeOf(mat);
+            mat.release();
+        }
+        int frameMatCount = frameMats.size();
+        frameMats.clear();
+
+        long currentPersistentBytes = 0;
+        for (Mat mat : persistentMats) {
+            currentPersistentBytes += sizeOf(mat);
+        }
+
+        persistentBytes = currentPersistentBytes;
+        frameBytes = currentFrameBytes;
+        peakFrameBytes = Math.max(peakFrameBytes, currentFrameBytes);
+        trackedMatCount = persistentMats.size() + frameMatCount;
+    }
+
+    /**
+     * Releases every Mat owned by this arena, used when the pipeline is thrown away.
+     */
+    public void releaseAll() {
+        frameMats.forEach(Mat::release);
+        frameMats.clear();
+        persistentMats.forEach(Mat::release);
+        persistentMats.clear();
+        persistentBytes = 0;
+        frameBytes = 0;
+        trackedMatCount = 0;
+    }
+
+    public long getNativeBytes() {
+        return persistentBytes + frameBytes;
+    }
+
+    public long getPersistentBytes() {
+        return persistentBytes;
+    }
+
+    public long getFrameBytes() {
+        return frameBytes;
+    }
+
+    public long getPeakFrameBytes() {
+        return peakFrameBytes;
+    }
+
+    public int getTrackedMatCount() {
+        return trackedMatCount;
+    }
+
+    public static long sizeOf(Mat mat) {
+        return mat.total() * mat.elemSize();
+    }
+}
@@ -0,0 +1,55 @@
+package com.chameleonvision.util;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.IntConsumer;
+
+/**
+ * Splits per-pixel image work into horizontal stripes and runs them on a fork-join pool shared by every camera.
+ * The calling thread works on the first stripe itself instead of waiting idle.
+ */
+public class ParallelStripes {
+
+    private static final ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors(), pool -> {
+        var worker = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+        worker.setName("Vision Stripe Worker " + worker.getPoolIndex());
+        worker.setDaemon(true);
+        return worker;
+    }, null, false);
+
+    private ParallelStripes() {}
+
+    /**
+     * Runs the body once per stripe and returns when every stripe is done.
+     *
+     * @param stripeCount how many stripes to split the image in, 1 or less runs the body on the calling thread
+     * @param body        called with the index of each stripe, from several threads at once
+     */
+    public static void forEach(int stripeCount, IntConsumer body) {
+        if (stripeCount <= 1) {
+            body.accept(0);
+            return;
+        }
+
+        ForkJoinTask<?>[] tasks = new ForkJoinTask<?>[stripeCount - 1];
+        for (int i = 1; i < stripeCount; i++) {
+            final int stripe = i;
+            tasks[i - 1] = pool.submit(() -> body.accept(stripe));
+        }
+        body.accept(0);
+        for (ForkJoinTask<?> task : tasks) {
+            task.join();
+        }
+    }
+
+    /**
+     * @return the first row of a stripe, the stripe ends where the next one starts
+     */
+    public static int stripeStart(int rows, int stripeCount, int stripe) {
+        return (int) ((long) rows * stripe / stripeCount);
+    }
+
+    public static int getParallelism() {
+        return pool.getParallelism();
+    }
+}
@@ -0,0 +1,117 @@
+package com.chameleonvision.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A bounded, lock-free ring buffer for exactly one producer thread and one consumer thread.
+ * Nothing is allocated after construction, so it can sit between the vision threads without adding GC pressure.
+ *
+ * @param <T> element type
+ */
+public class SpscRingBuffer<T> {
+
+    private static final int SPINS_BEFORE_YIELD = 100;
+    private static final int YIELDS_BEFORE_PARK = 10;
+    private static final long PARK_NANOS = 50_000;
+
+    private final Object[] buffer;
+    private final int capacity;
+
+    // next index to read, only written by the consumer
+    private final AtomicLong head = new AtomicLong(0);
+    // next index to write, only written by the producer
+    private final AtomicLong tail = new AtomicLong(0);
+
+    public SpscRingBuffer(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Ring buffer capacity must be at least 1!");
+        }
+        this.capacity = capacity;
+        buffer = new Object[capacity];
+    }
+
+    /**
+     * Adds an element if there is room for it. Producer thread only.
+     *
+     * @return true if the element was added, false if the buffer is full
+     */
+    public boolean offer(T item) {
+        long currentTail = tail.get();
+        if (currentTail - head.get() >= capacity) {
+            return false;
+        }
+        buffer[(int) (currentTail % capacity)] = item;
+        tail.lazySet(currentTail + 1);
+        return true;
+    }
+
+    /**
+     * Removes the oldest element. Consumer thread only.
+     *
+     * @return the oldest element, or null if the buffer is empty
+     */
+    @SuppressWarnings("unchecked")
+    public T poll() {
+        long currentHead = head.get();
+        if (currentHead >= tail.get()) {
+            return null;
+        }
+        int index = (int) (currentHead % capacity);
+        T item = (T) buffer[index];
+        buffer[index] = null;
+        head.lazySet(currentHead + 1);
+        return item;
+    }
+
+    /**
+     * Adds an element, waiting for room if the buffer is full. Producer thread only.
+     */
+    public void put(T item) throws InterruptedException {
+        int idleCount = 0;
+        while (!offer(item)) {
+            idleCount = idle(idleCount);
+        }
+    }
+
+    /**
+     * Removes the oldest element, waiting for one if the buffer is empty. Consumer thread only.
+     */
+    public T take() throws InterruptedException {
+        int idleCount = 0;
+        T item;
+        while ((item = poll()) == null) {
+            idleCount = idle(idleCount);
+        }
+        return item;
+    }
+
+    public int size() {
+        return (int) (tail.get() - head.get());
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Spin first, as the other side usually answers within microseconds, then back off to yielding and parking.
+     */
+    private static int idle(int idleCount) throws InterruptedException {
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+        if (idleCount < SPINS_BEFORE_YIELD) {
+            Thread.onSpinWait();
+        } else if (idleCount < SPINS_BEFORE_YIELD + YIELDS_BEFORE_PARK) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+        return idleCount + 1;
+    }
+}
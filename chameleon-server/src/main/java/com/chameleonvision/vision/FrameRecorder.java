@@ -0,0 +1,215 @@
+package com.chameleonvision.vision;
+
+import com.chameleonvision.util.SpscRingBuffer;
+import com.chameleonvision.vision.image.FrameLogWriter;
+import com.chameleonvision.vision.image.RecordedSettings;
+import com.chameleonvision.vision.pipeline.CVPipelineSettings;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfByte;
+import org.opencv.imgcodecs.Imgcodecs;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Records a camera's raw frames, with their timestamps and the pipeline settings they were processed with, to a
+ * frame log that {@link com.chameleonvision.vision.image.ReplayCameraCapture} can play back.
+ * The vision thread only copies the frame into a free buffer, writing and compressing happen on a recorder thread.
+ * Frames are dropped rather than waited for when the recorder falls behind.
+ */
+public class FrameRecorder {
+
+    private static final int BUFFER_COUNT = 4;
+
+    private final String cameraName;
+
+    private final SpscRingBuffer<RecordedFrame> freeFrames = new SpscRingBuffer<>(BUFFER_COUNT);
+    private final SpscRingBuffer<RecordedFrame> readyFrames = new SpscRingBuffer<>(BUFFER_COUNT);
+
+    private volatile boolean recording = false;
+    private Thread writerThread;
+    private Path path;
+    private volatile int width;
+    private volatile int height;
+
+    // vision thread only
+    private final RecordedSettings recordedSettings = new RecordedSettings();
+
+    private volatile long recordedFrames = 0;
+    private volatile long droppedFrames = 0;
+    private volatile long bytesWritten = 0;
+
+    public FrameRecorder(String cameraName) {
+        this.cameraName = cameraName;
+        for (int i = 0; i < BUFFER_COUNT; i++) {
+            freeFrames.offer(new RecordedFrame());
+        }
+    }
+
+    /**
+     * @param lossless compress frames to PNG on the recorder thread, rather than storing raw pixels
+     */
+    public synchronized void start(Path path, int width, int height, int matType, int fps, double fov, boolean lossless) throws IOException {
+        // also when the last recording stopped itself, its thread may still be closing its log
+        stop();
+        // frames offered while the last recording was stopping are never written
+        RecordedFrame leftover;
+        while ((leftover = readyFrames.poll()) != null) {
+            freeFrames.offer(leftover);
+        }
+
+        FrameLogWriter writer = new FrameLogWriter(path, width, height, matType, fps, fov, lossless ? FrameLogWriter.ENCODING_PNG : FrameLogWriter.ENCODING_RAW);
+        this.path = path;
+        this.width = width;
+        this.height = height;
+        recordedFrames = 0;
+        droppedFrames = 0;
+        bytesWritten = 0;
+        recording = true;
+
+        writerThread = new Thread(() -> writeFrames(writer, path, lossless));
+        writerThread.setName(cameraName + " - Recorder Thread");
+        writerThread.setDaemon(true);
+        writerThread.start();
+        System.out.println("Recording " + cameraName + " to " + path);
+    }
+
+    /**
+     * Finishes writing the frames already offered and closes the log.
+     */
+    public synchronized void stop() {
+        if (writerThread == null) {
+            return;
+        }
+        recording = false;
+        try {
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        writerThread = null;
+        System.out.println("Stopped recording " + cameraName + ", " + recordedFrames + " frames written to " + path);
+    }
+
+    /**
+     * Queues a frame for recording, does nothing if not recording. Vision thread only.
+     *
+     * @param frame    the raw camera frame, only read during this call
+     * @param settings the settings of the pipeline the frame is about to go through
+     */
+    public void offer(Mat frame, long timestampNanos, CVPipelineSettings settings) {
+        if (!recording) {
+            return;
+        }
+        // the log has one resolution, frames from after a video mode change can't be replayed with it
+        if (frame.cols() != width || frame.rows() != height) {
+            droppedFrames++;
+            return;
+        }
+        RecordedFrame recorded = freeFrames.poll();
+        if (recorded == null) {
+            droppedFrames++;
+            return;
+        }
+
+        int length = (int) (frame.total() * frame.elemSize());
+        if (recorded.data.length < length) {
+            recorded.data = new byte[length];
+        }
+        frame.get(0, 0, recorded.data);
+        recorded.length = length;
+        recorded.rows = frame.rows();
+        recorded.cols = frame.cols();
+        recorded.type = frame.type();
+        recorded.timestampNanos = timestampNanos;
+
+        recorded.settings = recordedSettings.next(settings);
+
+        readyFrames.offer(recorded);
+    }
+
+    /**
+     * Recorder thread, only ever touches the log it was started with.
+     */
+    private void writeFrames(FrameLogWriter writer, Path path, boolean lossless) {
+        Mat pngSource = new Mat();
+        MatOfByte pngBuffer = new MatOfByte();
+        byte[] pngBytes = new byte[0];
+
+        try {
+            while (true) {
+                RecordedFrame frame = readyFrames.poll();
+                if (frame == null) {
+                    if (!recording) break;
+                    LockSupport.parkNanos(1_000_000);
+                    continue;
+                }
+
+                try {
+                    if (writer.getBytesWritten() + frame.length > FrameLogWriter.MAX_LOG_BYTES - (1 << 20)) {
+                        System.err.println("Recording of " + cameraName + " is full, stopping.");
+                        recording = false;
+                        continue;
+                    }
+
+                    if (lossless) {
+                        pngSource.create(frame.rows, frame.cols, frame.type);
+                        pngSource.put(0, 0, frame.data, 0, frame.length);
+                        Imgcodecs.imencode(".png", pngSource, pngBuffer);
+                        int pngLength = (int) pngBuffer.total();
+                        if (pngBytes.length < pngLength) {
+                            pngBytes = new byte[pngLength];
+                        }
+                        pngBuffer.get(0, 0, pngBytes);
+                        writer.writeFrame(frame.timestampNanos, frame.settings, pngBytes, pngLength);
+                    } else {
+                        writer.writeFrame(frame.timestampNanos, frame.settings, frame.data, frame.length);
+                    }
+                    recordedFrames++;
+                    bytesWritten = writer.getBytesWritten();
+                } finally {
+                    freeFrames.offer(frame);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to write recording of " + cameraName + " to " + path);
+            e.printStackTrace();
+            recording = false;
+        } finally {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            pngSource.release();
+            pngBuffer.release();
+        }
+    }
+
+    public boolean isRecording() {
+        return recording;
+    }
+
+    public long getRecordedFrames() {
+        return recordedFrames;
+    }
+
+    public long getDroppedFrames() {
+        return droppedFrames;
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    private static class RecordedFrame {
+        byte[] data = new byte[0];
+        int length;
+        int rows;
+        int cols;
+        int type;
+        long timestampNanos;
+        String settings;
+    }
+}
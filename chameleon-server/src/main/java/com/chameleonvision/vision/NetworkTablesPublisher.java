@@ -0,0 +1,126 @@
+package com.chameleonvision.vision;
+
+import edu.wpi.first.networktables.NetworkTableInstance;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * One thread that publishes the results of every camera to NetworkTables, so a slow NetworkTables connection never
+ * holds up a vision thread.
+ * Vision threads drop their newest result in their camera's {@link TargetSnapshotMailbox} and wake the publisher.
+ * The publisher writes the newest result of every camera that has one, then flushes once for all of them, and waits
+ * out the rest of the cycle before doing it again. Results that arrive during a cycle replace each other.
+ */
+public class NetworkTablesPublisher {
+    private NetworkTablesPublisher() {
+    }
+
+    private static final List<VisionProcess> processes = new CopyOnWriteArrayList<>();
+    private static Thread publisherThread;
+    private static long cycleNanos;
+
+    private static volatile boolean signalled = false;
+
+    private static volatile long cycleCount = 0;
+    private static volatile long lastCycleNanos = 0;
+    private static volatile double averageCycleNanos = 0;
+
+    /**
+     * Starts publishing a camera's results, and the publisher thread if it isn't running yet.
+     *
+     * @param publishRate how many cycles per second the publisher runs at most, taken from the first camera registered
+     */
+    public static synchronized void register(VisionProcess process, int publishRate) {
+        processes.add(process);
+
+        if (publisherThread == null) {
+            cycleNanos = 1_000_000_000L / publishRate;
+            publisherThread = new Thread(NetworkTablesPublisher::run);
+            publisherThread.setName("NetworkTables Publisher Thread");
+            publisherThread.setDaemon(true);
+            publisherThread.start();
+        }
+    }
+
+    /**
+     * Tells the publisher a camera has a new result. Never blocks.
+     */
+    static void signal() {
+        if (!signalled) {
+            signalled = true;
+            LockSupport.unpark(publisherThread);
+        }
+    }
+
+    private static void run() {
+        while (!Thread.interrupted()) {
+            while (!signalled) {
+                LockSupport.park();
+                if (Thread.interrupted()) return;
+            }
+            signalled = false;
+
+            long cycleStartNanos = System.nanoTime();
+            boolean published = false;
+            for (VisionProcess process : processes) {
+                TargetSnapshot snapshot = process.getNetworkTablesMailbox().take();
+                if (snapshot == null) continue;
+                try {
+                    process.writeNetworkTableEntries(snapshot);
+                    published = true;
+                } catch (Exception e) {
+                    System.err.println("Exception publishing to NetworkTables for " + process.getCamera().getProperties().getNickname() + "!");
+                    e.printStackTrace();
+                }
+            }
+            if (published) {
+                NetworkTableInstance.getDefault().flush();
+            }
+
+            long elapsedNanos = System.nanoTime() - cycleStartNanos;
+            lastCycleNanos = elapsedNanos;
+            averageCycleNanos = averageCycleNanos * 0.9 + elapsedNanos * 0.1;
+            cycleCount++;
+
+            // results that come in while waiting out the cycle are coalesced into the next one
+            long remainingNanos;
+            while ((remainingNanos = cycleNanos - (System.nanoTime() - cycleStartNanos)) > 0) {
+                // a signal wakes the thread early, keep waiting until the cycle is over
+                LockSupport.parkNanos(remainingNanos);
+                if (Thread.interrupted()) return;
+            }
+        }
+    }
+
+    public static boolean isRunning() {
+        return publisherThread != null;
+    }
+
+    public static HashMap<String, Object> getMetrics() {
+        HashMap<String, Object> metrics = new HashMap<>();
+        metrics.put("running", isRunning());
+        metrics.put("cycles", cycleCount);
+        metrics.put("lastCycleMs", lastCycleNanos / 1000000.0);
+        metrics.put("averageCycleMs", averageCycleNanos / 1000000.0);
+
+        List<HashMap<String, Object>> cameras = new ArrayList<>();
+        for (VisionProcess process : VisionManager.getAllVisionProcesses()) {
+            TargetSnapshotMailbox mailbox = process.getNetworkTablesMailbox();
+            HashMap<String, Object> camera = new HashMap<>();
+            camera.put("camera", process.getCamera().getProperties().getNickname());
+            camera.put("offered", mailbox.getOfferedCount());
+            camera.put("published", mailbox.getTakenCount());
+            camera.put("coalesced", mailbox.getCoalescedCount());
+            camera.put("lastPublishLagMs", mailbox.getLastLagNanos() / 1000000.0);
+            camera.put("averagePublishLagMs", mailbox.getAverageLagNanos() / 1000000.0);
+            camera.put("maxPublishLagMs", mailbox.getMaxLagNanos() / 1000000.0);
+            cameras.add(camera);
+        }
+        metrics.put("cameras", cameras);
+        return metrics;
+    }
+}
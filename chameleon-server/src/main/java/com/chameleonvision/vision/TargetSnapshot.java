@@ -0,0 +1,109 @@
+package com.chameleonvision.vision;
+
+import com.chameleonvision.vision.pipeline.CVPipelineResult;
+import com.chameleonvision.vision.pipeline.impl.DriverVisionPipeline;
+import com.chameleonvision.vision.pipeline.impl.StandardCVPipeline;
+import edu.wpi.first.wpilibj.geometry.Pose2d;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The values of one frame's targets that get published to NetworkTables, copied out of the pipeline result so they
+ * can be published after the vision thread has moved on to the next frame.
+ * Every array is preallocated and grows to the largest target count seen, filling a snapshot allocates nothing.
+ *
+ * In packed mode target_data holds {@link #VALUES_PER_TARGET} doubles per target, best target first:
+ * pitch, yaw, area, pose x, pose y, pose rotation (degrees), and the capture time of the frame in seconds on the
+ * NetworkTables clock.
+ */
+public class TargetSnapshot {
+
+    public static final int PITCH = 0;
+    public static final int YAW = 1;
+    public static final int AREA = 2;
+    public static final int POSE_X = 3;
+    public static final int POSE_Y = 4;
+    public static final int POSE_ROTATION = 5;
+    public static final int TIMESTAMP = 6;
+    public static final int VALUES_PER_TARGET = 7;
+
+    public boolean hasTarget;
+    public boolean isDriverResult;
+    public boolean isStandardResult;
+    public long imageTimestamp;
+    public int targetCount;
+    // the best target's track, see TrackTargetsPipe
+    public int bestTrackId;
+    public double bestPitchVelocity;
+    public double bestYawVelocity;
+    public boolean bestPredicted;
+    public final List<Pose2d> poses = new ArrayList<>();
+
+    private double[] values = new double[0];
+    // one array per target count, NetworkTables needs an array of exactly the right length
+    private final List<double[]> packedArrays = new ArrayList<>();
+
+    // set by TargetSnapshotMailbox while the snapshot waits to be published
+    volatile boolean fresh;
+    long offerNanos;
+
+    public void set(CVPipelineResult<?> result) {
+        hasTarget = result.hasTarget;
+        imageTimestamp = result.imageTimestamp;
+        isDriverResult = result instanceof DriverVisionPipeline.DriverPipelineResult;
+        isStandardResult = result instanceof StandardCVPipeline.StandardCVPipelineResult;
+        targetCount = 0;
+        bestTrackId = -1;
+        bestPitchVelocity = 0;
+        bestYawVelocity = 0;
+        bestPredicted = false;
+        poses.clear();
+        if (!isStandardResult) return;
+
+        //noinspection unchecked
+        List<StandardCVPipeline.TrackedTarget> targets = (List<StandardCVPipeline.TrackedTarget>) result.targets;
+        if (values.length < targets.size() * VALUES_PER_TARGET) {
+            values = new double[targets.size() * 2 * VALUES_PER_TARGET];
+        }
+        for (int i = 0; i < targets.size(); i++) {
+            var target = targets.get(i);
+            int offset = i * VALUES_PER_TARGET;
+            values[offset + PITCH] = target.pitch;
+            values[offset + YAW] = target.yaw;
+            values[offset + AREA] = target.area;
+            values[offset + POSE_X] = target.cameraRelativePose.getTranslation().getX();
+            values[offset + POSE_Y] = target.cameraRelativePose.getTranslation().getY();
+            values[offset + POSE_ROTATION] = target.cameraRelativePose.getRotation().getDegrees();
+            poses.add(target.cameraRelativePose);
+        }
+        targetCount = targets.size();
+        if (targetCount > 0) {
+            var best = targets.get(0);
+            bestTrackId = best.trackId;
+            bestPitchVelocity = best.pitchVelocity;
+            bestYawVelocity = best.yawVelocity;
+            bestPredicted = best.predicted;
+        }
+    }
+
+    public double get(int target, int value) {
+        return values[target * VALUES_PER_TARGET + value];
+    }
+
+    /**
+     * @param timestampSeconds capture time written into every target
+     * @return the targets in the packed layout, the array is reused by the next call with the same target count
+     */
+    public double[] pack(double timestampSeconds) {
+        while (packedArrays.size() <= targetCount) {
+            packedArrays.add(new double[packedArrays.size() * VALUES_PER_TARGET]);
+        }
+        double[] packed = packedArrays.get(targetCount);
+        System.arraycopy(values, 0, packed, 0, packed.length);
+        for (int i = 0; i < targetCount; i++) {
+            packed[i * VALUES_PER_TARGET + TIMESTAMP] = timestampSeconds;
+        }
+        return packed;
+    }
+}
@@ -0,0 +1,98 @@
+package com.chameleonvision.vision;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Hands the newest {@link TargetSnapshot} from the vision thread to a publisher thread without locking or allocating.
+ * There are three snapshots: one being filled by the vision thread, one waiting in the mailbox, and one being
+ * published. They change hands by swapping them through the mailbox, so a snapshot belongs to exactly one thread at a time.
+ * A snapshot that is replaced before the publisher picks it up is never published.
+ */
+public class TargetSnapshotMailbox {
+
+    private final AtomicReference<TargetSnapshot> mailbox = new AtomicReference<>(new TargetSnapshot());
+    private TargetSnapshot writing = new TargetSnapshot();
+    private TargetSnapshot publishing = new TargetSnapshot();
+
+    private volatile long offeredCount = 0;
+    private volatile long coalescedCount = 0;
+    private volatile long takenCount = 0;
+    private volatile long lastLagNanos = 0;
+    private volatile double averageLagNanos = 0;
+    private volatile long maxLagNanos = 0;
+
+    /**
+     * @return the snapshot the vision thread fills before calling {@link #offer()}
+     */
+    public TargetSnapshot getWritable() {
+        return writing;
+    }
+
+    /**
+     * Puts the filled snapshot in the mailbox. Vision thread only.
+     *
+     * @return true if it replaced a snapshot that was never published
+     */
+    public boolean offer() {
+        writing.offerNanos = System.nanoTime();
+        writing.fresh = true;
+        writing = mailbox.getAndSet(writing);
+        offeredCount++;
+        if (writing.fresh) {
+            coalescedCount++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Takes the newest snapshot out of the mailbox. Publisher thread only.
+     *
+     * @return the snapshot, which stays valid until the next call, or null if nothing new was offered
+     */
+    public TargetSnapshot take() {
+        if (!mailbox.get().fresh) {
+            return null;
+        }
+        // only the vision thread can swap in between, and it only ever puts in fresh snapshots
+        publishing.fresh = false;
+        publishing = mailbox.getAndSet(publishing);
+
+        long lagNanos = System.nanoTime() - publishing.offerNanos;
+        lastLagNanos = lagNanos;
+        averageLagNanos = averageLagNanos * 0.9 + lagNanos * 0.1;
+        maxLagNanos = Math.max(maxLagNanos, lagNanos);
+        takenCount++;
+        return publishing;
+    }
+
+    public long getOfferedCount() {
+        return offeredCount;
+    }
+
+    public long getTakenCount() {
+        return takenCount;
+    }
+
+    /**
+     * @return how long the last snapshot taken waited in the mailbox
+     */
+    public long getLastLagNanos() {
+        return lastLagNanos;
+    }
+
+    public double getAverageLagNanos() {
+        return averageLagNanos;
+    }
+
+    public long getMaxLagNanos() {
+        return maxLagNanos;
+    }
+
+    /**
+     * @return how many snapshots were replaced by a newer one before they could be published
+     */
+    public long getCoalescedCount() {
+        return coalescedCount;
+    }
+}
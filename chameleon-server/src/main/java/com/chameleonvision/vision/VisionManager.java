@@ -94,7 +94,13 @@ public class VisionManager {
     }
 
     public static void startProcesses() {
+        VisionScheduler.startMonitor();
         visionProcesses.forEach((vpm) -> vpm.visionProcess.start());
+        Runtime.getRuntime().addShutdownHook(new Thread(VisionManager::stopProcesses));
+    }
+
+    public static void stopProcesses() {
+        visionProcesses.forEach((vpm) -> vpm.visionProcess.stop());
     }
 
     public static VisionProcess getCurrentUIVisionProcess() {
@@ -128,6 +134,10 @@ public class VisionManager {
         return vpm != null ? vpm.visionProcess : null;
     }
 
+    public static List<VisionProcess> getAllVisionProcesses() {
+        return visionProcesses.stream().map(vpm -> vpm.visionProcess).collect(Collectors.toList());
+    }
+
     public static List<String> getAllCameraNicknames() {
         return visionProcesses.stream().map(vpm -> vpm.visionProcess.getCamera()
                 .getProperties().getNickname()).collect(Collectors.toList());
@@ -1,50 +1,66 @@
 package com.chameleonvision.vision;
 
-import com.chameleonvision.Debug;
 import com.chameleonvision.config.CameraCalibrationConfig;
 import com.chameleonvision.config.CameraConfig;
 import com.chameleonvision.config.ConfigManager;
 import com.chameleonvision.scripting.ScriptEventType;
 import com.chameleonvision.scripting.ScriptManager;
 import com.chameleonvision.config.FullCameraConfiguration;
-import com.chameleonvision.util.LoopingRunnable;
+import com.chameleonvision.util.FrameRateLimiter;
 import com.chameleonvision.util.MathHandler;
+import com.chameleonvision.util.SpscRingBuffer;
 import com.chameleonvision.vision.camera.CameraStreamer;
 import com.chameleonvision.vision.camera.USBCameraCapture;
+import com.chameleonvision.vision.enums.NetworkTablesPublishMode;
+import com.chameleonvision.vision.enums.PipelineExecutionPolicy;
+import com.chameleonvision.vision.image.FrameLogRing;
 import com.chameleonvision.vision.pipeline.*;
 import com.chameleonvision.vision.pipeline.impl.StandardCVPipeline;
+import com.chameleonvision.vision.pipeline.impl.StandardCVPipeline.TrackedTarget;
 import com.chameleonvision.vision.pipeline.impl.DriverVisionPipeline;
 import com.chameleonvision.vision.pipeline.impl.StandardCVPipelineSettings;
+import com.chameleonvision.vision.trace.FrameTrace;
+import com.chameleonvision.vision.trace.LatencyTracer;
+import com.chameleonvision.vision.trace.TracePoint;
+import com.chameleonvision.web.LiveTargetUpdate;
 import com.chameleonvision.web.SocketHandler;
+import com.chameleonvision.web.WebSocketFanout;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import edu.wpi.cscore.VideoMode;
 import edu.wpi.first.networktables.*;
-import edu.wpi.first.wpilibj.geometry.Pose2d;
 import edu.wpi.first.wpiutil.CircularBuffer;
 import org.apache.commons.lang3.tuple.Pair;
+import org.opencv.core.CvType;
 import org.opencv.core.Mat;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Date;
 import java.util.List;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingDeque;
-import java.util.stream.Collectors;
+import java.util.function.Consumer;
 
 
 public class VisionProcess {
 
+    private static final double[] NO_TARGET_DATA = new double[0];
+
     private final USBCameraCapture cameraCapture;
     private final CameraStreamerRunnable streamRunnable;
     private final VisionProcessRunnable visionRunnable;
+    private Thread visionThread;
+    private StagedVisionExecutor stagedExecutor;
+    private PipelineExecutionPolicy executionPolicy;
+    private Thread streamThread;
     private final CameraConfig fileConfig;
     public final CameraStreamer cameraStreamer;
     public PipelineManager pipelineManager;
 
     private volatile CVPipelineResult lastPipelineResult;
 
-    private BlockingQueue<Mat> streamFrameQueue = new LinkedBlockingDeque<>(1);
 
     // network table stuff
     private final NetworkTable defaultTable;
@@ -60,20 +76,47 @@ public class VisionProcess {
     private NetworkTableEntry ntLatencyEntry;
     private NetworkTableEntry ntValidEntry;
     private NetworkTableEntry ntPoseEntry;
+    private NetworkTableEntry ntTargetDataEntry;
+    private NetworkTableEntry ntTrackIdEntry;
+    private NetworkTableEntry ntPitchVelocityEntry;
+    private NetworkTableEntry ntYawVelocityEntry;
+    private NetworkTableEntry ntPredictedEntry;
+    private final TargetSnapshotMailbox ntMailbox = new TargetSnapshotMailbox();
+    private boolean ntPublishAsync = false;
     private ObjectMapper objectMapper = new ObjectMapper();
 
     private long lastUIUpdateMs = 0;
 
+    private volatile Double fps = 0.0;
+    private final CircularBuffer fpsAveragingBuffer = new CircularBuffer(7);
+    private long lastFrameDoneNanos = System.nanoTime();
+
+    private final LatencyTracer latencyTracer = new LatencyTracer(512);
+
+    private final int threadPriority;
+    private final String cpuAffinity;
+    private final int targetFps;
+    private final FrameRateLimiter frameRateLimiter;
+    private final FrameRecorder frameRecorder;
+    private volatile FrameLogRing frameLogRing;
+
     VisionProcess(USBCameraCapture cameraCapture, FullCameraConfiguration config) {
         this.cameraCapture = cameraCapture;
 
         fileConfig = config.fileConfig;
 
+        threadPriority = config.cameraConfig.threadPriority;
+        cpuAffinity = config.cameraConfig.cpuAffinity;
+        targetFps = config.cameraConfig.targetFps;
+        frameRateLimiter = new FrameRateLimiter(targetFps);
+        frameRecorder = new FrameRecorder(cameraCapture.getProperties().name);
+
         pipelineManager = new PipelineManager(this, config.pipelines);
 
         // Thread to put frames on the dashboard
         this.cameraStreamer = new CameraStreamer(cameraCapture, config.cameraConfig.name, pipelineManager.getCurrentPipeline().settings.streamDivisor);
-        this.streamRunnable = new CameraStreamerRunnable(30, cameraStreamer);
+        this.cameraStreamer.setBandwidthBudget(config.cameraConfig.streamBandwidthKbps);
+        this.streamRunnable = new CameraStreamerRunnable(cameraStreamer);
 
         // Thread to process vision data
         this.visionRunnable = new VisionProcessRunnable();
@@ -86,15 +129,95 @@ public class VisionProcess {
         System.out.println("Starting NetworkTables.");
         initNT(defaultTable);
 
-        System.out.println("Starting vision thread.");
-        var visionThread = new Thread(visionRunnable);
-        visionThread.setName(getCamera().getProperties().name + " - Vision Thread");
-        visionThread.start();
+        int ntPublishRate = ConfigManager.settings.ntPublishRate;
+        if (ntPublishRate > 0) {
+            System.out.println("Publishing to NetworkTables from the shared publisher thread at up to " + ntPublishRate + "Hz.");
+            NetworkTablesPublisher.register(this, ntPublishRate);
+            ntPublishAsync = true;
+        }
+
+        System.out.println("Starting capture thread.");
+        cameraCapture.startCapture(this);
+
+        startVisionThreads(ConfigManager.settings.executionPolicy);
+
+        System.out.println("Starting stream thread.");
+        streamThread = VisionScheduler.startThread(this, streamRunnable, getCamera().getProperties().name + " - Stream Thread");
+    }
+
+    /**
+     * Stops every thread of this process and waits for them, then frees the pipelines' buffers.
+     * {@link #start()} starts them again, the pipelines reallocate what they need.
+     */
+    public synchronized void stop() {
+        System.out.println("Stopping vision process " + getCamera().getProperties().getNickname() + ".");
+        boolean stopped = stopVisionThreads();
+        if (streamThread != null) {
+            VisionScheduler.stopThread(streamThread);
+            streamThread = null;
+        }
+        cameraCapture.stopCapture();
+        // a vision thread that didn't stop may still be using them
+        if (stopped) {
+            pipelineManager.releaseAllPipelines();
+        }
+    }
+
+    /**
+     * Frees the buffers of a pipeline that was removed. The vision threads are restarted around it, as they may be
+     * in the middle of a frame with it or, staged, have it in a queued frame.
+     */
+    public synchronized void releasePipeline(CVPipeline pipeline) {
+        boolean running = visionThread != null || stagedExecutor != null;
+        if (!running || stopVisionThreads()) {
+            pipeline.getMatArena().releaseAll();
+        }
+        if (running) {
+            startVisionThreads(executionPolicy);
+        }
+    }
+
+    /**
+     * Switches between running each frame on one thread and the staged executor. The threads of the old one are
+     * stopped before the new one starts, as both run the same pipelines.
+     */
+    public synchronized void setExecutionPolicy(PipelineExecutionPolicy policy) {
+        if (policy == executionPolicy || (visionThread == null && stagedExecutor == null)) {
+            return;
+        }
+        stopVisionThreads();
+        startVisionThreads(policy);
+    }
+
+    private void startVisionThreads(PipelineExecutionPolicy policy) {
+        if (policy == null) {
+            policy = PipelineExecutionPolicy.Serial;
+        }
+        executionPolicy = policy;
+        if (policy == PipelineExecutionPolicy.Serial) {
+            System.out.println("Starting vision thread.");
+            visionThread = VisionScheduler.startThread(this, visionRunnable, getCamera().getProperties().name + " - Vision Thread");
+        } else {
+            System.out.println("Starting staged vision threads, policy: " + policy);
+            stagedExecutor = new StagedVisionExecutor(policy);
+            stagedExecutor.start();
+        }
+    }
 
-//        System.out.println("Starting stream thread.");
-//        var streamThread = new Thread(streamRunnable);
-//        streamThread.setName(getCamera().getProperties().name + " - Stream Thread");
-//        streamThread.start();
+    /**
+     * @return whether every vision thread ended
+     */
+    private boolean stopVisionThreads() {
+        boolean stopped = true;
+        if (visionThread != null) {
+            stopped = VisionScheduler.stopThread(visionThread);
+            visionThread = null;
+        }
+        if (stagedExecutor != null) {
+            stopped &= stagedExecutor.stop();
+            stagedExecutor = null;
+        }
+        return stopped;
     }
 
     /**
@@ -126,6 +249,11 @@ public class VisionProcess {
         ntValidEntry = newTable.getEntry("is_valid");
         ntAuxListEntry = newTable.getEntry("aux_targets");
         ntPoseEntry = newTable.getEntry("poseList");
+        ntTargetDataEntry = newTable.getEntry("target_data");
+        ntTrackIdEntry = newTable.getEntry("track_id");
+        ntPitchVelocityEntry = newTable.getEntry("pitch_velocity");
+        ntYawVelocityEntry = newTable.getEntry("yaw_velocity");
+        ntPredictedEntry = newTable.getEntry("is_predicted");
         ntDriveModeListenerID = ntDriverModeEntry.addListener(this::setDriverMode, EntryListenerFlags.kUpdate);
         ntPipelineListenerID = ntPipelineEntry.addListener(this::setPipeline, EntryListenerFlags.kUpdate);
         ntDriverModeEntry.setBoolean(false);
@@ -140,7 +268,7 @@ public class VisionProcess {
     public void setDriverMode(boolean driverMode) {
         pipelineManager.setDriverMode(driverMode);
         ScriptManager.queueEvent(driverMode ? ScriptEventType.kEnterDriverMode : ScriptEventType.kExitDriverMode);
-        SocketHandler.sendFullSettings();
+        SocketHandler.publishSettings();
     }
 
     /**
@@ -169,89 +297,106 @@ public class VisionProcess {
             lastUIUpdateMs = currentMillis;
 
 
-            if (cameraCapture.getProperties().name.equals(ConfigManager.settings.currentCamera)) {
-                HashMap<String, Object> WebSend = new HashMap<>();
-                HashMap<String, Object> point = new HashMap<>();
-                HashMap<String, Object> pointMap = new HashMap<>();
-                ArrayList<Object> webTargets = new ArrayList<Object>();
-                List<Double> center = new ArrayList<>();
-
-
-
-                if (data.hasTarget) {
-                    if (data instanceof StandardCVPipeline.StandardCVPipelineResult) {
-                        StandardCVPipeline.StandardCVPipelineResult result = (StandardCVPipeline.StandardCVPipelineResult) data;
-                        StandardCVPipeline.TrackedTarget bestTarget = result.targets.get(0);
-                        if (((StandardCVPipelineSettings) pipelineManager.getCurrentPipeline().settings).multiple) {
-                            for (var target : result.targets) {
-                                pointMap = new HashMap<>();
-                                pointMap.put("pitch", target.pitch);
-                                pointMap.put("yaw", target.yaw);
-                                pointMap.put("area", target.area);
-                                pointMap.put("pose", target.cameraRelativePose);
-                                webTargets.add(pointMap);
-                            }
-                        } else {
-                            pointMap.put("pitch", bestTarget.pitch);
-                            pointMap.put("yaw", bestTarget.yaw);
-                            pointMap.put("area", bestTarget.area);
-                            pointMap.put("pose", bestTarget.cameraRelativePose);
-                            webTargets.add(pointMap);
-                        }
-                        center.add(bestTarget.minAreaRect.center.x);
-                        center.add(bestTarget.minAreaRect.center.y);
+            if (cameraCapture.getProperties().name.equals(ConfigManager.settings.currentCamera) && WebSocketFanout.hasClients()) {
+                LiveTargetUpdate update = WebSocketFanout.obtainLiveUpdate();
+                update.point.fps = fps;
 
+                if (data.hasTarget && data instanceof StandardCVPipeline.StandardCVPipelineResult) {
+                    StandardCVPipeline.StandardCVPipelineResult result = (StandardCVPipeline.StandardCVPipelineResult) data;
+                    TrackedTarget bestTarget = result.targets.get(0);
+                    update.clearTargets();
+                    if (((StandardCVPipelineSettings) pipelineManager.getCurrentPipeline().settings).multiple) {
+                        for (var target : result.targets) {
+                            setLiveTarget(update.addTarget(), target);
+                        }
+                    } else {
+                        setLiveTarget(update.addTarget(), bestTarget);
                     }
+                    update.point.rawPoint[0] = bestTarget.minAreaRect.center.x;
+                    update.point.rawPoint[1] = bestTarget.minAreaRect.center.y;
                 } else {
-                    pointMap.put("pitch", null);
-                    pointMap.put("yaw", null);
-                    pointMap.put("area", null);
-                    pointMap.put("pose", new Pose2d());
-                    webTargets.add(pointMap);
-                    center.add(null);
-                    center.add(null);
+                    update.setNoTarget();
                 }
 
-                point.put("fps", visionRunnable.fps);
-                point.put("targets", webTargets);
-                point.put("rawPoint", center);
-                WebSend.put("point", point);
-                SocketHandler.broadcastMessage(WebSend);
+                WebSocketFanout.publishLiveUpdate(update);
             }
         }
     }
 
+    private static void setLiveTarget(LiveTargetUpdate.Target liveTarget, TrackedTarget target) {
+        liveTarget.pitch = target.pitch;
+        liveTarget.yaw = target.yaw;
+        liveTarget.area = target.area;
+        liveTarget.pose = target.cameraRelativePose;
+    }
+
+    /**
+     * Publishes the result right away, or hands it to the {@link NetworkTablesPublisher} if publishing asynchronously.
+     */
     private void updateNetworkTableData(CVPipelineResult data) {
+        ntMailbox.getWritable().set(data);
+        if (ntPublishAsync) {
+            ntMailbox.offer();
+            NetworkTablesPublisher.signal();
+        } else {
+            writeNetworkTableEntries(ntMailbox.getWritable());
+            tableInstance.flush();
+        }
+    }
+
+    TargetSnapshotMailbox getNetworkTablesMailbox() {
+        return ntMailbox;
+    }
+
+    /**
+     * Writes a result to this camera's entries, without flushing.
+     */
+    void writeNetworkTableEntries(TargetSnapshot data) {
         ntValidEntry.setBoolean(data.hasTarget);
-        if (data.hasTarget && !(data instanceof DriverVisionPipeline.DriverPipelineResult)) {
-            if (data instanceof StandardCVPipeline.StandardCVPipelineResult) {
-
-                //noinspection unchecked
-                List<StandardCVPipeline.TrackedTarget> targets = (List<StandardCVPipeline.TrackedTarget>) data.targets;
-                ntLatencyEntry.setDouble(MathHandler.roundTo(data.processTime * 1e-6, 3));
-                ntPitchEntry.setDouble(targets.get(0).pitch);
-                ntYawEntry.setDouble(targets.get(0).yaw);
-                ntAreaEntry.setDouble(targets.get(0).area);
+        if (data.hasTarget && !data.isDriverResult && data.isStandardResult && data.targetCount > 0) {
+            long imageAgeNanos = System.nanoTime() - data.imageTimestamp;
+            // from the frame being grabbed to now, which is what a robot needs to compensate for
+            ntLatencyEntry.setDouble(MathHandler.roundTo(imageAgeNanos * 1e-6, 3));
+            ntPitchEntry.setDouble(data.get(0, TargetSnapshot.PITCH));
+            ntYawEntry.setDouble(data.get(0, TargetSnapshot.YAW));
+            ntAreaEntry.setDouble(data.get(0, TargetSnapshot.AREA));
+            ntTrackIdEntry.setDouble(data.bestTrackId);
+            ntPitchVelocityEntry.setDouble(data.bestPitchVelocity);
+            ntYawVelocityEntry.setDouble(data.bestYawVelocity);
+            ntPredictedEntry.setBoolean(data.bestPredicted);
+
+            if (ConfigManager.settings.ntPublishMode == NetworkTablesPublishMode.Packed) {
+                double captureSeconds = (NetworkTablesJNI.now() - imageAgeNanos / 1000) / 1e6;
+                ntTargetDataEntry.setDoubleArray(data.pack(captureSeconds));
+            } else {
                 try {
-                    ntAuxListEntry.setString(objectMapper.writeValueAsString(targets.stream()
-                            .map(it -> List.of(it.pitch, it.yaw, it.area, it.cameraRelativePose))
-                            .collect(Collectors.toList())));
+                    List<List<Object>> auxTargets = new ArrayList<>(data.targetCount);
+                    for (int i = 0; i < data.targetCount; i++) {
+                        auxTargets.add(List.of(data.get(i, TargetSnapshot.PITCH), data.get(i, TargetSnapshot.YAW),
+                                data.get(i, TargetSnapshot.AREA), data.poses.get(i)));
+                    }
+                    ntAuxListEntry.setString(objectMapper.writeValueAsString(auxTargets));
 
                     // TODO: (2.1) 3d stuff...
-                    ntPoseEntry.setString(objectMapper.writeValueAsString(targets.stream().map(target -> target.cameraRelativePose).collect(Collectors.toList())));
+                    ntPoseEntry.setString(objectMapper.writeValueAsString(data.poses));
                 } catch (JsonProcessingException e) {
                     e.printStackTrace();
                 }
-            } else {
-                ntPitchEntry.setDouble(0.0);
-                ntYawEntry.setDouble(0.0);
-                ntAreaEntry.setDouble(0.0);
-                ntLatencyEntry.setDouble(0.0);
-                ntAuxListEntry.setString("");
             }
+        } else {
+            ntPitchEntry.setDouble(0.0);
+            ntYawEntry.setDouble(0.0);
+            ntAreaEntry.setDouble(0.0);
+            ntTrackIdEntry.setDouble(-1);
+            ntPitchVelocityEntry.setDouble(0.0);
+            ntYawVelocityEntry.setDouble(0.0);
+            ntPredictedEntry.setBoolean(false);
+            ntLatencyEntry.setDouble(0.0);
+            ntAuxListEntry.setString("");
+            ntPoseEntry.setString("");
+            // a robot reading the packed array must not see the last target again
+            ntTargetDataEntry.setDoubleArray(NO_TARGET_DATA);
         }
-        tableInstance.flush();
-
     }
 
     public void setVideoMode(VideoMode newMode) {
@@ -267,6 +412,42 @@ public class VisionProcess {
         return cameraCapture.getProperties().videoModes;
     }
 
+    /**
+     * @return frames dropped by the staged executor because the first stage was busy, always 0 when running serially
+     */
+    public long getPipelineDroppedFrameCount() {
+        return stagedExecutor != null ? stagedExecutor.droppedFrames : 0;
+    }
+
+    public double getFps() {
+        return fps;
+    }
+
+    /**
+     * @return the Java priority of this camera's threads, see {@link VisionScheduler}
+     */
+    public int getThreadPriority() {
+        return threadPriority;
+    }
+
+    /**
+     * @return the cpus this camera's threads are pinned to, in taskset's list format, empty for any
+     */
+    public String getCpuAffinity() {
+        return cpuAffinity;
+    }
+
+    /**
+     * @return the most frames per second this camera processes, 0 for as many as it delivers
+     */
+    public int getTargetFps() {
+        return targetFps;
+    }
+
+    public LatencyTracer getLatencyTracer() {
+        return latencyTracer;
+    }
+
     public USBCameraCapture getCamera() {
         return cameraCapture;
     }
@@ -282,9 +463,9 @@ public class VisionProcess {
     }
 
     public void setIs3d(Boolean value) {
-        var settings = pipelineManager.getCurrentPipeline().settings;
-        if (settings instanceof StandardCVPipelineSettings) {
-            ((StandardCVPipelineSettings) settings).is3D = value;
+        var pipeline = pipelineManager.getCurrentPipeline();
+        if (pipeline.settings instanceof StandardCVPipelineSettings) {
+            pipeline.updateSettings(List.of(SettingsBinder.of(StandardCVPipelineSettings.class).bind("is3D", value)));
         }
     }
 
@@ -296,102 +477,393 @@ public class VisionProcess {
         return false;
     }
 
+    /**
+     * Holds the vision loop to the lower of the camera's target FPS and the pipeline's max FPS, and to the pipeline's
+     * CPU budget, so a camera that doesn't need every frame leaves the CPU to the others.
+     */
+    private void applyFrameRateLimits(CVPipeline pipeline) {
+        int maxFps = pipeline.settings.maxFps;
+        if (targetFps > 0 && (maxFps <= 0 || targetFps < maxFps)) {
+            maxFps = targetFps;
+        }
+        frameRateLimiter.setMaxFps(maxFps);
+        frameRateLimiter.setCpuBudget(pipeline.settings.cpuBudget);
+    }
+
+    /**
+     * Starts recording this camera's raw frames to a new frame log in the recordings folder.
+     *
+     * @param lossless store frames as PNG rather than raw pixels, smaller but costs CPU on the recorder thread
+     * @return the path of the log
+     */
+    public Path startRecording(boolean lossless) throws IOException {
+        Path folder = Path.of(ConfigManager.SettingsPath.toString(), "recordings");
+        Files.createDirectories(folder);
+        String fileName = getCamera().getProperties().name.replace(' ', '_') + "_"
+                + new SimpleDateFormat("yyyyMMdd_HHmmss").format(new Date()) + ".cvlog";
+        Path path = Path.of(folder.toString(), fileName);
+
+        var videoMode = cameraCapture.getCurrentVideoMode();
+        frameRecorder.start(path, videoMode.width, videoMode.height, CvType.CV_8UC3, videoMode.fps,
+                cameraCapture.getProperties().getFOV(), lossless);
+        return path;
+    }
+
+    public void stopRecording() {
+        frameRecorder.stop();
+    }
+
+    public FrameRecorder getFrameRecorder() {
+        return frameRecorder;
+    }
+
+    /**
+     * Starts recording raw frames and the targets found in them to this camera's frame log ring, picking up after the
+     * segments already in it.
+     */
+    public synchronized void startRingRecording(int segmentMegabytes, int segmentCount) throws IOException {
+        stopRingRecording();
+        var videoMode = cameraCapture.getCurrentVideoMode();
+        FrameLogRing ring = new FrameLogRing(getRingFolder(), getCamera().getProperties().name, segmentMegabytes << 20,
+                segmentCount, videoMode.width, videoMode.height, CvType.CV_8UC3, videoMode.fps, cameraCapture.getProperties().getFOV());
+        ring.start();
+        frameLogRing = ring;
+    }
+
+    public synchronized void stopRingRecording() {
+        if (frameLogRing != null) {
+            frameLogRing.stop();
+        }
+    }
+
+    /**
+     * @return the ring being recorded to, or the last one, null if there never was one
+     */
+    public FrameLogRing getFrameLogRing() {
+        return frameLogRing;
+    }
+
+    public Path getRingFolder() {
+        return Path.of(ConfigManager.SettingsPath.toString(), "recordings", getCamera().getProperties().name.replace(' ', '_'));
+    }
+
+    private static List<TrackedTarget> getTrackedTargets(CVPipelineResult result) {
+        if (result instanceof StandardCVPipeline.StandardCVPipelineResult) {
+            return ((StandardCVPipeline.StandardCVPipelineResult) result).targets;
+        }
+        return List.of();
+    }
+
+    public FrameRateLimiter getFrameRateLimiter() {
+        return frameRateLimiter;
+    }
+
+    private void onFrameDone(FrameTrace trace) {
+        latencyTracer.record(trace);
+
+        var deltaTimeNanos = System.nanoTime() - lastFrameDoneNanos;
+        fpsAveragingBuffer.addFirst(1.0 / (deltaTimeNanos * 1E-09));
+        lastFrameDoneNanos = System.nanoTime();
+        fps = getAverageFPS();
+    }
+
+    private double getAverageFPS() {
+        var temp = 0.0;
+        for (int i = 0; i < 7; i++) {
+            temp += fpsAveragingBuffer.get(i);
+        }
+        temp /= 7.0;
+        return temp;
+    }
+
     /**
      * VisionProcessRunnable will process images as quickly as possible
      */
     private class VisionProcessRunnable implements Runnable {
 
-        volatile Double fps = 0.0;
-        private CircularBuffer fpsAveragingBuffer = new CircularBuffer(7);
+        private final FrameTrace trace = new FrameTrace();
+        // published as soon as the pipeline has its targets, before it draws, in the same order the staged executor does
+        private final Consumer<CVPipelineResult> publisher = this::publish;
+        private long frameTimestamp;
+        private boolean published;
+
+        private void publish(CVPipelineResult result) {
+            result.setTimestamp(frameTimestamp);
+            updateNetworkTableData(result);
+            trace.mark(TracePoint.NetworkTablesPublish);
+            published = true;
+        }
 
         @Override
         public void run() {
-            var lastUpdateTimeNanos = System.nanoTime();
-            var lastStreamTimeMs = System.currentTimeMillis();
             while (!Thread.interrupted()) {
+                var pipeline = pipelineManager.getCurrentPipeline();
+                applyFrameRateLimits(pipeline);
+                frameRateLimiter.waitForNextFrame();
+                // settings only change between frames
+                pipeline.applyPendingSettings();
 
                 // blocking call, will block until camera has a new frame.
                 Pair<Mat, Long> camData = cameraCapture.getFrame();
-
                 Mat camFrame = camData.getLeft();
-                if (camFrame.cols() > 0 && camFrame.rows() > 0) {
-                    CVPipelineResult result = null;
-                    try {
-                        result = pipelineManager.getCurrentPipeline().runPipeline(camFrame);
-                    } catch (Exception e) {
-                        System.err.println("Exception in vision process " + getCamera().getProperties().getNickname() + "!");
-                        e.printStackTrace();
+                if (camFrame.cols() <= 0 || camFrame.rows() <= 0) {
+                    // the camera timed out, nothing to process, stream or count
+                    continue;
+                }
+                long workStartNanos = System.nanoTime();
+                trace.begin(camData.getRight());
+                frameTimestamp = camData.getRight();
+                published = false;
+
+                boolean render = cameraStreamer.hasViewers();
+                CVPipelineResult result = null;
+                FrameLogRing ring = frameLogRing;
+                try {
+                    // pipelines work on the frame in place, record it before they touch it
+                    frameRecorder.offer(camFrame, camData.getRight(), pipeline.settings);
+                    if (ring != null) {
+                        ring.beginFrame(camFrame, camData.getRight(), pipeline.settings);
                     }
+                    pipeline.setFrameTrace(trace);
+                    pipeline.setRenderOutput(render);
+                    pipeline.setTargetsListener(publisher);
+                    trace.mark(TracePoint.PipelineStart);
+                    result = pipeline.runPipeline(camFrame);
+                    trace.mark(TracePoint.PipelineEnd);
+                } catch (Exception e) {
+                    System.err.println("Exception in vision process " + getCamera().getProperties().getNickname() + "!");
+                    e.printStackTrace();
+                }
 
-                    camFrame.release();
+                if (ring != null) {
+                    ring.commitFrame(getTrackedTargets(result));
+                }
 
-                    if (result != null) {
-                        result.setTimestamp(camData.getRight());
-                        lastPipelineResult = result;
-                        updateNetworkTableData(lastPipelineResult);
-                        updateUI(lastPipelineResult);
+                if (result != null) {
+                    lastPipelineResult = result;
+                    // driver mode and calibration don't hand out their targets early
+                    if (!published) {
+                        publish(result);
                     }
+                    updateUI(lastPipelineResult);
                 }
 
                 try {
-//                    streamFrameQueue.clear();
-//                    streamFrameQueue.add(lastPipelineResult.outputMat);
-                    var currentTime = System.currentTimeMillis();
-                    if((currentTime - lastStreamTimeMs)/1000d > 1.0 / 30.0) {
+                    // the streamer skips frames that come in faster than its frame rate
+                    // no result until the pipeline first gets through a frame
+                    if (render && lastPipelineResult != null) {
                         cameraStreamer.runStream(lastPipelineResult.outputMat);
-//                        System.out.println("Ran stream in " + (System.currentTimeMillis() - currentTime) + "ms!");
-                        lastStreamTimeMs = currentTime;
-                        lastPipelineResult.outputMat.release();
+                        trace.mark(TracePoint.StreamPutFrame);
                     }
-
                 } catch (Exception e) {
-                    Debug.printInfo("Vision running faster than stream.");
+                    System.err.println("Exception streaming " + getCamera().getProperties().getNickname() + "!");
+                    e.printStackTrace();
                 }
 
-                var deltaTimeNanos = System.nanoTime() - lastUpdateTimeNanos;
-                fpsAveragingBuffer.addFirst(1.0 / (deltaTimeNanos * 1E-09));
-                lastUpdateTimeNanos = System.nanoTime();
-                fps = getAverageFPS();
+                frameRateLimiter.frameDone(System.nanoTime() - workStartNanos);
+                onFrameDone(trace);
             }
         }
+    }
+
+    /**
+     * Runs the vision work as four stages on their own threads: capture, threshold/contours, targets/NetworkTables
+     * and drawing/streaming. The stages hand preallocated {@link FrameSlot}s to each other through single-producer,
+     * single-consumer ring buffers, and finished slots go back to the capture thread to be reused.
+     */
+    private class StagedVisionExecutor {
 
-        double getAverageFPS() {
-            var temp = 0.0;
-            for (int i = 0; i < 7; i++) {
-                temp += fpsAveragingBuffer.get(i);
+        private static final int STAGE_COUNT = 4;
+
+        private final PipelineExecutionPolicy policy;
+        private final SpscRingBuffer<FrameSlot> freeSlots;
+        private final SpscRingBuffer<FrameSlot> thresholdQueue;
+        private final SpscRingBuffer<FrameSlot> targetQueue;
+        private final SpscRingBuffer<FrameSlot> drawQueue;
+
+        private final List<Thread> stageThreads = new ArrayList<>(STAGE_COUNT);
+        private final List<FrameSlot> allSlots;
+
+        volatile long droppedFrames = 0;
+
+        private StagedVisionExecutor(PipelineExecutionPolicy policy) {
+            this.policy = policy;
+
+            // enough slots that every stage can hold one while every queue is full
+            int slotCount = STAGE_COUNT + 3 * policy.queueDepth;
+            freeSlots = new SpscRingBuffer<>(slotCount);
+            allSlots = new ArrayList<>(slotCount);
+            for (int i = 0; i < slotCount; i++) {
+                FrameSlot slot = new FrameSlot();
+                allSlots.add(slot);
+                freeSlots.offer(slot);
             }
-            temp /= 7.0;
-            return temp;
+            thresholdQueue = new SpscRingBuffer<>(policy.queueDepth);
+            targetQueue = new SpscRingBuffer<>(policy.queueDepth);
+            drawQueue = new SpscRingBuffer<>(policy.queueDepth);
         }
 
-    }
+        void start() {
+            startStage("Capture", this::runCapture);
+            startStage("Threshold", this::runThreshold);
+            startStage("Targets", this::runTargets);
+            startStage("Draw", this::runDraw);
+        }
 
-    private class CameraStreamerRunnable extends LoopingRunnable {
+        /**
+         * Stops the stage threads and waits for them, then frees the slots' buffers. The executor can't be restarted.
+         *
+         * @return whether every stage thread ended
+         */
+        boolean stop() {
+            boolean stopped = true;
+            for (Thread thread : stageThreads) {
+                stopped &= VisionScheduler.stopThread(thread);
+            }
+            stageThreads.clear();
+            // a stage that didn't stop may still be using its slot
+            if (stopped) {
+                allSlots.forEach(FrameSlot::release);
+            }
+            return stopped;
+        }
 
-        final CameraStreamer streamer;
-        private Mat bufferMat = new Mat();
+        private void startStage(String name, StageLoop loop) {
+            stageThreads.add(VisionScheduler.startThread(VisionProcess.this, () -> {
+                try {
+                    loop.run();
+                } catch (InterruptedException ignored) {
+                }
+            }, getCamera().getProperties().name + " - Vision " + name + " Thread"));
+        }
 
-        private CameraStreamerRunnable(int cameraFPS, CameraStreamer streamer) {
-            // add 2 FPS to allow for a bit of overhead
-            super(1000L / (cameraFPS + 2));
-            this.streamer = streamer;
+        private void runCapture() throws InterruptedException {
+            FrameSlot slot = freeSlots.take();
+            while (!Thread.interrupted()) {
+                CVPipeline pipeline = pipelineManager.getCurrentPipeline();
+                applyFrameRateLimits(pipeline);
+                frameRateLimiter.waitForNextFrame();
+                // settings only change between captured frames, each frame carries the ones it was captured with
+                pipeline.applyPendingSettings();
+
+                // blocking call, will block until camera has a new frame.
+                Pair<Mat, Long> camData = cameraCapture.getFrame();
+                Mat camFrame = camData.getLeft();
+                if (camFrame.cols() <= 0 || camFrame.rows() <= 0) {
+                    continue;
+                }
+
+                camFrame.copyTo(slot.inputMat);
+                slot.begin(pipeline, camData.getRight());
+                frameRecorder.offer(camFrame, camData.getRight(), slot.settings);
+                slot.render = cameraStreamer.hasViewers();
+                FrameLogRing ring = frameLogRing;
+                if (ring != null && ring.isRecording()) {
+                    // the ring is written from the targets stage, which no longer has the frame as it came in
+                    camFrame.copyTo(slot.recordMat);
+                    slot.record = true;
+                }
+
+                if (policy == PipelineExecutionPolicy.LowestLatency) {
+                    // the threshold stage is still busy, drop this frame rather than let it age in the queue
+                    if (!thresholdQueue.offer(slot)) {
+                        droppedFrames++;
+                        continue;
+                    }
+                } else {
+                    thresholdQueue.put(slot);
+                }
+                slot = freeSlots.take();
+            }
         }
 
-        @Override
-        protected void process() {
-            if (!streamFrameQueue.isEmpty()) {
+        private void runThreshold() throws InterruptedException {
+            while (!Thread.interrupted()) {
+                FrameSlot slot = thresholdQueue.take();
                 try {
+                    slot.pipeline.setFrameTrace(slot.trace);
+                    slot.trace.mark(TracePoint.PipelineStart);
+                    slot.pipeline.runThresholdStage(slot);
+                } catch (Exception e) {
+                    System.err.println("Exception in vision process " + getCamera().getProperties().getNickname() + "!");
+                    e.printStackTrace();
+                    slot.failed = true;
+                }
+                targetQueue.put(slot);
+            }
+        }
 
-                    bufferMat = streamFrameQueue.take();
+        private void runTargets() throws InterruptedException {
+            while (!Thread.interrupted()) {
+                FrameSlot slot = targetQueue.take();
+                if (!slot.failed) {
+                    try {
+                        slot.pipeline.runTargetStage(slot);
+                        slot.result.setTimestamp(slot.imageTimestamp);
+                        updateNetworkTableData(slot.result);
+                        slot.trace.mark(TracePoint.NetworkTablesPublish);
+                    } catch (Exception e) {
+                        System.err.println("Exception in vision process " + getCamera().getProperties().getNickname() + "!");
+                        e.printStackTrace();
+                        slot.failed = true;
+                    }
+                }
+                FrameLogRing ring = frameLogRing;
+                if (slot.record && ring != null) {
+                    ring.append(slot.recordMat, slot.imageTimestamp, slot.settings, getTrackedTargets(slot.result));
+                }
+                drawQueue.put(slot);
+            }
+        }
 
+        private void runDraw() throws InterruptedException {
+            while (!Thread.interrupted()) {
+                FrameSlot slot = drawQueue.take();
+                if (!slot.failed) {
                     try {
-                        streamer.runStream(bufferMat);
-                        bufferMat.release();
+                        slot.pipeline.runDrawStage(slot);
+                        slot.trace.mark(TracePoint.PipelineEnd);
+                        updateUI(slot.result);
+
+                        if (slot.render) {
+                            cameraStreamer.runStream(slot.result.outputMat);
+                            slot.trace.mark(TracePoint.StreamPutFrame);
+                        }
                     } catch (Exception e) {
-                        // do nothing
+                        System.err.println("Exception in vision process " + getCamera().getProperties().getNickname() + "!");
+                        e.printStackTrace();
                     }
+                    // the stages run in parallel, so their summed time is what the frame cost in CPU
+                    frameRateLimiter.frameDone(slot.processTimeNanos);
+                    onFrameDone(slot.trace);
+                }
+                freeSlots.put(slot);
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface StageLoop {
+        void run() throws InterruptedException;
+    }
+
+    private class CameraStreamerRunnable implements Runnable {
+
+        final CameraStreamer streamer;
+
+        private CameraStreamerRunnable(CameraStreamer streamer) {
+            this.streamer = streamer;
+        }
 
+        @Override
+        public void run() {
+            while (!Thread.interrupted()) {
+                try {
+                    streamer.streamNextFrame();
                 } catch (InterruptedException e) {
+                    return;
+                } catch (Exception e) {
+                    System.err.println("Exception streaming " + getCamera().getProperties().getNickname() + "!");
                     e.printStackTrace();
                 }
             }
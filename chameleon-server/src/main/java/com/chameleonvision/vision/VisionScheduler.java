@@ -0,0 +1,258 @@
+package com.chameleonvision.vision;
+
+import com.chameleonvision.util.FrameRateLimiter;
+import com.chameleonvision.util.LoopingRunnable;
+import com.chameleonvision.util.Platform;
+import com.chameleonvision.util.ShellExec;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.regex.Pattern;
+
+/**
+ * Starts the threads of every {@link VisionProcess} with the priority and CPU cores set in its camera config, and
+ * keeps track of how busy each core and each of those threads is, so cameras can be spread across cores.
+ *
+ * Java thread priorities are ignored by Linux, so on Linux each thread is also reniced and pinned with taskset once
+ * it is running. Negative nice values need root; when that fails the thread just runs at normal priority.
+ */
+public class VisionScheduler {
+    private VisionScheduler() {
+    }
+
+    // a list of cpus as taskset takes it, like 2 or 0,1 or 2-3
+    private static final Pattern CPU_LIST = Pattern.compile("[0-9]+([,-][0-9]+)*");
+    // USER_HZ, which /proc reports CPU time in, is 100 on every platform we run on
+    private static final double CLOCK_TICKS_PER_SECOND = 100.0;
+    // longer than a camera takes to time out, see USBCameraCapture, so only a thread stuck outside its loop misses it
+    private static final long STOP_TIMEOUT_MS = 2000;
+
+    private static final List<ScheduledThread> threads = new CopyOnWriteArrayList<>();
+    private static Thread monitorThread;
+
+    private static long[] lastCoreBusyTicks = new long[0];
+    private static long[] lastCoreTotalTicks = new long[0];
+    private static volatile double[] coreUtilization = new double[0];
+    private static long lastSampleNanos = 0;
+
+    /**
+     * Starts a thread belonging to a vision process, with the process' priority and CPU affinity.
+     */
+    public static Thread startThread(VisionProcess process, Runnable runnable, String name) {
+        ScheduledThread scheduled = new ScheduledThread(process, name);
+        var thread = new Thread(() -> {
+            try {
+                scheduled.applyToCurrentThread();
+                runnable.run();
+            } finally {
+                threads.remove(scheduled);
+            }
+        });
+        thread.setName(name);
+        thread.setPriority(process.getThreadPriority());
+        threads.add(scheduled);
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * Interrupts a thread started by {@link #startThread} and waits for it to end, at most {@link #STOP_TIMEOUT_MS}.
+     *
+     * @return whether the thread ended
+     */
+    public static boolean stopThread(Thread thread) {
+        thread.interrupt();
+        try {
+            thread.join(STOP_TIMEOUT_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (thread.isAlive()) {
+            System.err.println(thread.getName() + " did not stop within " + STOP_TIMEOUT_MS + "ms!");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Starts sampling core and thread utilization once a second, Linux only.
+     */
+    public static synchronized void startMonitor() {
+        if (monitorThread != null || !Platform.CurrentPlatform.isLinux()) {
+            return;
+        }
+        monitorThread = new Thread(new MonitorRunnable());
+        monitorThread.setName("Vision Scheduler Monitor Thread");
+        monitorThread.setDaemon(true);
+        monitorThread.start();
+    }
+
+    /**
+     * Maps a Java thread priority to a Linux nice value, from -10 for {@link Thread#MAX_PRIORITY} to 8 for
+     * {@link Thread#MIN_PRIORITY}.
+     */
+    static int toNiceValue(int priority) {
+        return (Thread.NORM_PRIORITY - priority) * 2;
+    }
+
+    static boolean isValidCpuList(String cpus) {
+        return cpus != null && CPU_LIST.matcher(cpus).matches();
+    }
+
+    private static void sample() {
+        long now = System.nanoTime();
+        double elapsedSeconds = (now - lastSampleNanos) / 1e9;
+        lastSampleNanos = now;
+
+        try {
+            // cpuN user nice system idle iowait irq softirq steal ...
+            List<String> lines = Files.readAllLines(Path.of("/proc/stat"));
+            List<long[]> cores = new ArrayList<>();
+            for (String line : lines) {
+                if (!line.startsWith("cpu") || line.startsWith("cpu ")) continue;
+                String[] fields = line.trim().split("\\s+");
+                long total = 0;
+                for (int i = 1; i < fields.length && i <= 8; i++) {
+                    total += Long.parseLong(fields[i]);
+                }
+                long idle = Long.parseLong(fields[4]) + Long.parseLong(fields[5]);
+                cores.add(new long[]{total - idle, total});
+            }
+
+            double[] utilization = new double[cores.size()];
+            if (lastCoreTotalTicks.length != cores.size()) {
+                lastCoreBusyTicks = new long[cores.size()];
+                lastCoreTotalTicks = new long[cores.size()];
+            }
+            for (int i = 0; i < cores.size(); i++) {
+                long busy = cores.get(i)[0] - lastCoreBusyTicks[i];
+                long total = cores.get(i)[1] - lastCoreTotalTicks[i];
+                utilization[i] = total > 0 ? (double) busy / total : 0;
+                lastCoreBusyTicks[i] = cores.get(i)[0];
+                lastCoreTotalTicks[i] = cores.get(i)[1];
+            }
+            coreUtilization = utilization;
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Failed to read core utilization from /proc/stat");
+        }
+
+        for (ScheduledThread thread : threads) {
+            thread.sample(elapsedSeconds);
+        }
+    }
+
+    public static HashMap<String, Object> getMetrics() {
+        HashMap<String, Object> metrics = new HashMap<>();
+        metrics.put("coreUtilization", coreUtilization);
+
+        List<HashMap<String, Object>> threadMetrics = new ArrayList<>();
+        for (ScheduledThread thread : threads) {
+            HashMap<String, Object> threadMap = new HashMap<>();
+            threadMap.put("camera", thread.process.getCamera().getProperties().getNickname());
+            threadMap.put("thread", thread.name);
+            threadMap.put("tid", thread.tid);
+            threadMap.put("priority", thread.process.getThreadPriority());
+            threadMap.put("cpus", thread.process.getCpuAffinity());
+            threadMap.put("cpuUtilization", thread.cpuUtilization);
+            threadMap.put("lastCore", thread.lastCore);
+            threadMetrics.add(threadMap);
+        }
+        metrics.put("threads", threadMetrics);
+
+        List<HashMap<String, Object>> cameraMetrics = new ArrayList<>();
+        for (VisionProcess process : VisionManager.getAllVisionProcesses()) {
+            FrameRateLimiter limiter = process.getFrameRateLimiter();
+            HashMap<String, Object> cameraMap = new HashMap<>();
+            cameraMap.put("camera", process.getCamera().getProperties().getNickname());
+            cameraMap.put("fpsLimit", limiter.getFpsLimit());
+            cameraMap.put("averageWorkMs", limiter.getAverageWorkNanos() / 1000000.0);
+            cameraMap.put("averageWaitMs", limiter.getAverageWaitNanos() / 1000000.0);
+            cameraMetrics.add(cameraMap);
+        }
+        metrics.put("cameras", cameraMetrics);
+        return metrics;
+    }
+
+    private static class ScheduledThread {
+        final VisionProcess process;
+        final String name;
+        volatile long tid = -1;
+        volatile double cpuUtilization = 0;
+        volatile int lastCore = -1;
+        private long lastTicks = -1;
+
+        ScheduledThread(VisionProcess process, String name) {
+            this.process = process;
+            this.name = name;
+        }
+
+        /**
+         * Renices and pins the thread this is called on. Linux only, does nothing elsewhere.
+         */
+        void applyToCurrentThread() {
+            if (!Platform.CurrentPlatform.isLinux()) {
+                return;
+            }
+            try {
+                // /proc/thread-self links to /proc/<pid>/task/<tid>
+                tid = Long.parseLong(Files.readSymbolicLink(Path.of("/proc/thread-self")).getFileName().toString());
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Failed to find the native thread id of " + name + ", it won't be pinned or reniced.");
+                return;
+            }
+
+            try {
+                int nice = toNiceValue(process.getThreadPriority());
+                if (nice != 0 && new ShellExec().executeBashCommand("renice -n " + nice + " -p " + tid) != 0) {
+                    System.err.println("Failed to renice " + name + " to " + nice + ", negative values need root.");
+                }
+
+                String cpus = process.getCpuAffinity();
+                if (cpus != null && !cpus.isEmpty()) {
+                    if (!isValidCpuList(cpus)) {
+                        System.err.println("Ignoring invalid CPU affinity \"" + cpus + "\" for " + name);
+                    } else if (new ShellExec().executeBashCommand("taskset -pc " + cpus + " " + tid) != 0) {
+                        System.err.println("Failed to pin " + name + " to cpus " + cpus);
+                    }
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+        void sample(double elapsedSeconds) {
+            if (tid < 0) return;
+            try {
+                // the thread name may contain spaces, the fields after it are split from the closing parenthesis
+                String stat = Files.readString(Path.of("/proc/self/task/" + tid + "/stat"));
+                String[] fields = stat.substring(stat.lastIndexOf(')') + 2).split(" ");
+                // utime and stime are fields 14 and 15, processor is field 39, the first field here is field 3
+                long ticks = Long.parseLong(fields[11]) + Long.parseLong(fields[12]);
+                lastCore = Integer.parseInt(fields[36]);
+                if (lastTicks >= 0 && elapsedSeconds > 0) {
+                    cpuUtilization = (ticks - lastTicks) / CLOCK_TICKS_PER_SECOND / elapsedSeconds;
+                }
+                lastTicks = ticks;
+            } catch (IOException | RuntimeException e) {
+                // the thread has ended
+                tid = -1;
+            }
+        }
+    }
+
+    private static class MonitorRunnable extends LoopingRunnable {
+        MonitorRunnable() {
+            super(1000L);
+        }
+
+        @Override
+        protected void process() {
+            sample();
+        }
+    }
+}
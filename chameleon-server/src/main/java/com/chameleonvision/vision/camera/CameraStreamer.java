@@ -1,24 +1,77 @@
 package com.chameleonvision.vision.camera;
 
+import com.chameleonvision.util.SpscRingBuffer;
 import com.chameleonvision.vision.enums.StreamDivisor;
 import com.chameleonvision.web.SocketHandler;
 import edu.wpi.cscore.CvSource;
 import edu.wpi.cscore.MjpegServer;
 import edu.wpi.cscore.VideoMode;
 import edu.wpi.first.cameraserver.CameraServer;
-import org.opencv.core.CvType;
 import org.opencv.core.Mat;
+import org.opencv.core.MatOfByte;
+import org.opencv.core.MatOfInt;
 import org.opencv.core.Size;
+import org.opencv.imgcodecs.Imgcodecs;
 import org.opencv.imgproc.Imgproc;
 
+import java.util.HashMap;
+
+/**
+ * Puts frames on the dashboard stream.
+ * The thread that ran the pipeline scales its output straight into one of two preallocated stream buffers, and a
+ * separate stream thread hands the buffer to cscore, so compressing the frame never holds up vision.
+ *
+ * With a bandwidth budget set, the stream thread measures the stream once a second and trades JPEG quality, then
+ * frame rate, then resolution to stay under it, and gives them back in the opposite order when there is room again.
+ * The divisor set by the pipeline is the finest the stream is ever sent at.
+ */
 public class CameraStreamer {
+    private static final int MAX_FPS = 30;
+    private static final int MIN_FPS = 5;
+    private static final int FPS_STEP = 5;
+    private static final int MAX_QUALITY = 80;
+    private static final int MIN_QUALITY = 30;
+    private static final int QUALITY_STEP = 10;
+    // only raise quality back up once the stream is this far under budget, so it doesn't flip back and forth
+    private static final double HEADROOM = 0.6;
+    private static final long MEASURE_INTERVAL_NANOS = 1_000_000_000L;
+    // keep drawing this long after the last viewer left, so a reconnecting browser doesn't see a stale frame
+    private static final long VIEWER_GRACE_NANOS = 2_000_000_000L;
+
     private final CameraCapture cameraCapture;
     private final String name;
-    private StreamDivisor divisor;
+    private volatile StreamDivisor divisor;
     private CvSource cvSource;
-    private final Object streamBufferLock = new Object();
-    private Mat streamBuffer = new Mat();
-    private Size size;
+
+    // what the stream is actually sent at, the adaptive divisor is never finer than the pipeline's
+    private volatile StreamDivisor adaptiveDivisor = StreamDivisor.NONE;
+    // replaced as a whole, so a frame is never scaled with one divisor and another's size
+    private volatile StreamScale streamScale;
+    private volatile int streamFps = MAX_FPS;
+    private volatile int quality = MAX_QUALITY;
+    private volatile int bandwidthBudgetKbps = 0;
+
+    // buffers go from free to ready on the vision thread, and back to free on the stream thread
+    private final SpscRingBuffer<Mat> freeBuffers = new SpscRingBuffer<>(2);
+    private final SpscRingBuffer<Mat> readyBuffers = new SpscRingBuffer<>(2);
+    private final Mat pyramidBuffer = new Mat();
+    // a buffer taken from the free ones whose frame failed to scale, the vision thread can't give it back to them
+    private Mat spareBuffer;
+    private long lastAcceptedNanos = 0;
+
+    // stream thread only
+    private final MatOfByte encodeBuffer = new MatOfByte();
+    private long measureStartNanos = System.nanoTime();
+    private long measureFrames = 0;
+
+    private volatile long lastViewerNanos = System.nanoTime();
+    private volatile boolean hasViewers = true;
+
+    private volatile long streamedFrames = 0;
+    private volatile long droppedFrames = 0;
+    private volatile double achievedFps = 0;
+    private volatile long frameBytes = 0;
+    private volatile double bitrateKbps = 0;
 
     public CameraStreamer(CameraCapture cameraCapture, String name,StreamDivisor div) {
         this.divisor = div;
@@ -27,34 +80,35 @@ public class CameraStreamer {
         this.cvSource = CameraServer.getInstance().putVideo(name,
                 cameraCapture.getProperties().getStaticProperties().imageWidth / divisor.value,
                 cameraCapture.getProperties().getStaticProperties().imageHeight / divisor.value);
-        //noinspection IntegerDivisionInFloatingPointContext
-        this.size = new Size(
-                cameraCapture.getProperties().getStaticProperties().imageWidth / divisor.value,
-                cameraCapture.getProperties().getStaticProperties().imageHeight / divisor.value
-        );
+        freeBuffers.offer(new Mat());
+        freeBuffers.offer(new Mat());
         setDivisor(divisor, false);
     }
 
     public void setDivisor(StreamDivisor newDivisor, boolean updateUI) {
         this.divisor = newDivisor;
-        var camValues = cameraCapture.getProperties();
-        var newWidth = camValues.getStaticProperties().imageWidth / newDivisor.value;
-        var newHeight = camValues.getStaticProperties().imageHeight / newDivisor.value;
-        this.size = new Size(newWidth, newHeight);
-        synchronized (streamBufferLock) {
-            this.streamBuffer = new Mat(newWidth, newHeight, CvType.CV_8UC3);
-            VideoMode oldVideoMode = cvSource.getVideoMode();
-            cvSource.setVideoMode(new VideoMode(oldVideoMode.pixelFormat,
-                    cameraCapture.getProperties().getStaticProperties().imageWidth / divisor.value,
-                    cameraCapture.getProperties().getStaticProperties().imageHeight / divisor.value,
-                    oldVideoMode.fps));
-        }
+        applyStreamDivisor();
         if (updateUI) {
-            SocketHandler.sendFullSettings();
+            SocketHandler.publishSettings();
         }
 
     }
 
+    /**
+     * Resizes the stream to the coarser of the pipeline's divisor and the adaptive one.
+     * Called from the web thread when the pipeline changes and from the stream thread when adapting.
+     */
+    private synchronized void applyStreamDivisor() {
+        StreamDivisor newDivisor = divisor.ordinal() >= adaptiveDivisor.ordinal() ? divisor : adaptiveDivisor;
+        var camValues = cameraCapture.getProperties();
+        var newWidth = camValues.getStaticProperties().imageWidth / newDivisor.value;
+        var newHeight = camValues.getStaticProperties().imageHeight / newDivisor.value;
+        // the stream buffers are resized by the next frame scaled into them
+        this.streamScale = new StreamScale(newDivisor, new Size(newWidth, newHeight));
+        VideoMode oldVideoMode = cvSource.getVideoMode();
+        cvSource.setVideoMode(new VideoMode(oldVideoMode.pixelFormat, newWidth, newHeight, oldVideoMode.fps));
+    }
+
     public StreamDivisor getDivisor() {
         return divisor;
     }
@@ -69,23 +123,213 @@ public class CameraStreamer {
         setDivisor(divisor, true);
     }
 
+    /**
+     * @param bandwidthBudgetKbps how many kilobits per second this camera's stream may use, 0 to stream at full
+     *                            frame rate and quality whatever it costs
+     */
+    public void setBandwidthBudget(int bandwidthBudgetKbps) {
+        this.bandwidthBudgetKbps = bandwidthBudgetKbps;
+        if (bandwidthBudgetKbps <= 0) {
+            streamFps = MAX_FPS;
+            quality = MAX_QUALITY;
+            adaptiveDivisor = StreamDivisor.NONE;
+            applyStreamDivisor();
+            // back to cscore's own default
+            getServer().setCompression(-1);
+        }
+    }
+
+    public int getBandwidthBudget() {
+        return bandwidthBudgetKbps;
+    }
+
+    private MjpegServer getServer() {
+        return (MjpegServer) CameraServer.getInstance().getServer("serve_" + name);
+    }
+
     public int getStreamPort() {
-        var s = (MjpegServer) CameraServer.getInstance().getServer("serve_" + name);
-        return s.getPort();
+        return getServer().getPort();
+    }
+
+    /**
+     * cscore only enables the source while a client is connected to its MJPEG server, which covers the dashboard
+     * and the web UI alike.
+     *
+     * @return whether anyone watched the stream in the last couple of seconds
+     */
+    public boolean hasViewers() {
+        long now = System.nanoTime();
+        if (cvSource.isEnabled()) {
+            lastViewerNanos = now;
+        }
+        hasViewers = now - lastViewerNanos < VIEWER_GRACE_NANOS;
+        return hasViewers;
     }
 
+    /**
+     * Scales a frame into a free stream buffer and queues it for the stream thread.
+     * Frames that come in faster than the stream frame rate are skipped before any work is done on them, and the
+     * frame is dropped if the stream thread is still busy with both buffers.
+     *
+     * @param image the pipeline's output, only read during this call
+     */
     public void runStream(Mat image) {
-        synchronized (streamBufferLock) {
-            image.copyTo(streamBuffer);
+        long now = System.nanoTime();
+        if (now - lastAcceptedNanos < 1_000_000_000L / streamFps) {
+            return;
         }
 
-        if (divisor.value != 1) {
-//            var camVal = cameraProcess.getProperties().staticProperties;
-//            var newWidth = camVal.imageWidth / divisor.value;
-//            var newHeight = camVal.imageHeight / divisor.value;
-//            Size newSize = new Size(newWidth, newHeight);
-             Imgproc.resize(streamBuffer, streamBuffer, this.size);
+        Mat buffer = spareBuffer != null ? spareBuffer : freeBuffers.poll();
+        spareBuffer = null;
+        if (buffer == null) {
+            droppedFrames++;
+            return;
+        }
+        lastAcceptedNanos = now;
+
+        try {
+            StreamScale scale = this.streamScale;
+            Size size = scale.size;
+            switch (scale.divisor) {
+                case NONE:
+                    image.copyTo(buffer);
+                    break;
+                case HALF:
+                    scaleDown(image, buffer, size);
+                    break;
+                case QUARTER:
+                    Imgproc.pyrDown(image, pyramidBuffer, new Size(image.cols() / 2, image.rows() / 2));
+                    scaleDown(pyramidBuffer, buffer, size);
+                    break;
+                default:
+                    Imgproc.resize(image, buffer, size, 0, 0, Imgproc.INTER_AREA);
+                    break;
+            }
+
+            readyBuffers.offer(buffer);
+            buffer = null;
+        } finally {
+            if (buffer != null) {
+                spareBuffer = buffer;
+            }
+        }
+    }
+
+    /**
+     * Halves an image with pyrDown, or resizes it if it isn't twice the size, which happens for a frame or so when the
+     * image is rotated or the video mode changes, before the stream size catches up.
+     */
+    private static void scaleDown(Mat image, Mat buffer, Size size) {
+        if (Math.abs(size.width * 2 - image.cols()) <= 2 && Math.abs(size.height * 2 - image.rows()) <= 2) {
+            Imgproc.pyrDown(image, buffer, size);
+        } else {
+            Imgproc.resize(image, buffer, size, 0, 0, Imgproc.INTER_AREA);
+        }
+    }
+
+    /**
+     * Waits for the next queued frame and puts it on the stream. Stream thread only.
+     */
+    public void streamNextFrame() throws InterruptedException {
+        Mat buffer = readyBuffers.take();
+        try {
+            cvSource.putFrame(buffer);
+            streamedFrames++;
+            measureFrames++;
+
+            long elapsedNanos = System.nanoTime() - measureStartNanos;
+            if (elapsedNanos >= MEASURE_INTERVAL_NANOS) {
+                measure(buffer, elapsedNanos);
+            }
+        } finally {
+            freeBuffers.put(buffer);
+        }
+    }
+
+    /**
+     * Estimates the stream's bitrate from the size of one frame encoded at the current quality, and adapts to the budget.
+     */
+    private void measure(Mat frame, long elapsedNanos) {
+        Imgcodecs.imencode(".jpg", frame, encodeBuffer, new MatOfInt(Imgcodecs.IMWRITE_JPEG_QUALITY, quality));
+        frameBytes = encodeBuffer.total();
+        achievedFps = measureFrames * 1e9 / elapsedNanos;
+        bitrateKbps = frameBytes * 8 * achievedFps / 1000.0;
+
+        measureFrames = 0;
+        measureStartNanos = System.nanoTime();
+
+        int budget = bandwidthBudgetKbps;
+        if (budget > 0) {
+            adapt(budget);
+        }
+    }
+
+    private void adapt(int budgetKbps) {
+        int oldQuality = quality;
+        StreamDivisor oldDivisor = adaptiveDivisor;
+        StreamDivisor streamDivisor = streamScale.divisor;
+
+        if (bitrateKbps > budgetKbps) {
+            if (quality > MIN_QUALITY) {
+                quality = Math.max(MIN_QUALITY, quality - QUALITY_STEP);
+            } else if (streamFps > MIN_FPS) {
+                // frame rate costs bandwidth linearly, so jump straight to what fits
+                int fittingFps = (int) (Math.min(streamFps, achievedFps) * budgetKbps / bitrateKbps);
+                streamFps = Math.max(MIN_FPS, Math.min(streamFps - 1, fittingFps));
+            } else if (streamDivisor.ordinal() < StreamDivisor.values().length - 1) {
+                adaptiveDivisor = StreamDivisor.values()[streamDivisor.ordinal() + 1];
+            }
+        } else if (bitrateKbps < budgetKbps * HEADROOM) {
+            if (adaptiveDivisor.ordinal() > divisor.ordinal()) {
+                adaptiveDivisor = StreamDivisor.values()[adaptiveDivisor.ordinal() - 1];
+            } else if (streamFps < MAX_FPS) {
+                streamFps = Math.min(MAX_FPS, streamFps + FPS_STEP);
+            } else if (quality < MAX_QUALITY) {
+                quality = Math.min(MAX_QUALITY, quality + QUALITY_STEP);
+            }
+        }
+
+        if (quality != oldQuality) {
+            getServer().setCompression(quality);
+        }
+        if (adaptiveDivisor != oldDivisor) {
+            applyStreamDivisor();
+        }
+    }
+
+    /**
+     * @return the parameters the stream is sent with and what it achieved over the last second
+     */
+    public HashMap<String, Object> getStreamStats() {
+        HashMap<String, Object> stats = new HashMap<>();
+        stats.put("fps", streamFps);
+        stats.put("achievedFps", achievedFps);
+        stats.put("divisor", streamScale.divisor.ordinal());
+        stats.put("quality", quality);
+        stats.put("frameBytes", frameBytes);
+        stats.put("bitrateKbps", bitrateKbps);
+        stats.put("budgetKbps", bandwidthBudgetKbps);
+        stats.put("hasViewers", hasViewers);
+        stats.put("streamedFrames", streamedFrames);
+        stats.put("droppedFrames", droppedFrames);
+        return stats;
+    }
+
+    public long getStreamedFrames() {
+        return streamedFrames;
+    }
+
+    public long getDroppedFrames() {
+        return droppedFrames;
+    }
+
+    private static class StreamScale {
+        final StreamDivisor divisor;
+        final Size size;
+
+        StreamScale(StreamDivisor divisor, Size size) {
+            this.divisor = divisor;
+            this.size = size;
         }
-        cvSource.putFrame(streamBuffer);
     }
 }
@@ -2,6 +2,9 @@ package com.chameleonvision.vision.camera;
 
 import com.chameleonvision.config.CameraCalibrationConfig;
 import com.chameleonvision.config.FullCameraConfiguration;
+import com.chameleonvision.vision.VisionProcess;
+import com.chameleonvision.vision.VisionScheduler;
+import edu.wpi.cscore.CameraServerJNI;
 import edu.wpi.cscore.CvSink;
 import edu.wpi.cscore.UsbCamera;
 import edu.wpi.cscore.VideoException;
@@ -14,14 +17,38 @@ import org.opencv.imgcodecs.Imgcodecs;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 public class USBCameraCapture implements CameraCapture {
+    // how long getFrame waits before giving the vision thread an empty frame, so an unplugged camera can't hang it
+    private static final long FRAME_TIMEOUT_MS = 1000;
+    // a converted grab timestamp further from now than this is taken to be bogus, and the frame stamped on arrival
+    private static final long MAX_GRAB_AGE_NANOS = TimeUnit.SECONDS.toNanos(1);
+
     private final UsbCamera baseCamera;
     private final CvSink cvSink;
     private List<CameraCalibrationConfig> calibrationList;
-    private Mat imageBuffer = new Mat();
     private USBCaptureProperties properties;
 
+    // triple buffer, the capture thread owns backIndex, the vision thread owns frontIndex, and they swap through middleIndex
+    private final Mat[] frameBuffers = {new Mat(), new Mat(), new Mat()};
+    private final long[] frameTimestamps = new long[3];
+    private final Object frameLock = new Object();
+    private int backIndex = 0;
+    private int middleIndex = 1;
+    private int frontIndex = 2;
+    private boolean hasNewFrame = false;
+    private final Mat emptyMat = new Mat();
+    // vision thread only
+    private boolean stalled = false;
+
+    private Thread captureThread;
+    private volatile long capturedFrames = 0;
+    private volatile long droppedFrames = 0;
+    private volatile long timedOutFrames = 0;
+    private volatile long lastFrameAgeNanos = 0;
+    private volatile double averageFrameAgeNanos = 0;
+
     public USBCameraCapture(FullCameraConfiguration fullCameraConfiguration) {
         var config = fullCameraConfiguration.cameraConfig;
         this.calibrationList = new ArrayList<>(); //fullCameraConfiguration.calibration;
@@ -63,15 +90,135 @@ public class USBCameraCapture implements CameraCapture {
         return baseCamera.getVideoMode();
     }
 
+    /**
+     * Starts the thread that grabs frames from the camera as fast as it delivers them, scheduled like the rest of the
+     * process' threads. Must be called before {@link #getFrame()}.
+     */
+    public synchronized void startCapture(VisionProcess process) {
+        if (captureThread != null) return;
+
+        captureThread = VisionScheduler.startThread(process, this::captureLoop, properties.name + " - Capture Thread");
+    }
+
+    /**
+     * Stops the capture thread and waits for it, {@link #getFrame()} returns empty frames until capture starts again.
+     */
+    public synchronized void stopCapture() {
+        if (captureThread == null) return;
+
+        VisionScheduler.stopThread(captureThread);
+        captureThread = null;
+    }
+
+    private void captureLoop() {
+        // grabFrame returns when the driver captured the frame, in uS on cscore's clock, so the offset to the
+        // monotonic clock the rest of the latency measurements use is measured once
+        long clockOffsetNanos = measureClockOffsetNanos();
+
+        while (!Thread.interrupted()) {
+            long grabTimeMicros = cvSink.grabFrame(frameBuffers[backIndex]);
+            if (grabTimeMicros == 0) {
+                continue;
+            }
+
+            long nowNanos = System.nanoTime();
+            long grabNanos = grabTimeMicros * 1000 + clockOffsetNanos;
+            if (grabNanos > nowNanos || nowNanos - grabNanos > MAX_GRAB_AGE_NANOS) {
+                grabNanos = nowNanos;
+            }
+            frameTimestamps[backIndex] = grabNanos;
+            capturedFrames++;
+
+            synchronized (frameLock) {
+                if (hasNewFrame) {
+                    // the vision thread never picked up the last frame, it is replaced by this one
+                    droppedFrames++;
+                }
+                int newestIndex = backIndex;
+                backIndex = middleIndex;
+                middleIndex = newestIndex;
+                hasNewFrame = true;
+                frameLock.notifyAll();
+            }
+        }
+    }
+
+    private static long measureClockOffsetNanos() {
+        long before = System.nanoTime();
+        long cscoreMicros = CameraServerJNI.now();
+        long after = System.nanoTime();
+        return before + (after - before) / 2 - cscoreMicros * 1000;
+    }
+
+    /**
+     * Blocks until the capture thread has a frame newer than the last one returned, and returns the newest one.
+     * The Mat stays valid and untouched by the capture thread until the next call.
+     * Returns an empty Mat if no new frame arrives within {@link #FRAME_TIMEOUT_MS}.
+     */
     @Override
     public Pair<Mat, Long> getFrame() {
-        Long deltaTime;
-        // TODO: Why multiply by 1000 here?
-        Mat tempMat = new Mat();
-        deltaTime = cvSink.grabFrame(tempMat) * 1000L;
-        tempMat.copyTo(imageBuffer);
-        tempMat.release();
-        return Pair.of(imageBuffer, deltaTime);
+        synchronized (frameLock) {
+            long deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(FRAME_TIMEOUT_MS);
+            while (!hasNewFrame) {
+                long remainingNanos = deadlineNanos - System.nanoTime();
+                if (remainingNanos <= 0) {
+                    timedOutFrames++;
+                    if (!stalled) {
+                        stalled = true;
+                        System.err.println("Camera " + properties.name + " delivered no frame for " + FRAME_TIMEOUT_MS + "ms!");
+                    }
+                    return Pair.of(emptyMat, System.nanoTime());
+                }
+                try {
+                    TimeUnit.NANOSECONDS.timedWait(frameLock, remainingNanos);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return Pair.of(emptyMat, 0L);
+                }
+            }
+            int newestIndex = middleIndex;
+            middleIndex = frontIndex;
+            frontIndex = newestIndex;
+            hasNewFrame = false;
+        }
+        if (stalled) {
+            stalled = false;
+            System.out.println("Camera " + properties.name + " is delivering frames again.");
+        }
+
+        lastFrameAgeNanos = System.nanoTime() - frameTimestamps[frontIndex];
+        averageFrameAgeNanos = averageFrameAgeNanos * 0.9 + lastFrameAgeNanos * 0.1;
+
+        return Pair.of(frameBuffers[frontIndex], frameTimestamps[frontIndex]);
+    }
+
+    public long getCapturedFrameCount() {
+        return capturedFrames;
+    }
+
+    /**
+     * @return how many captured frames were replaced by a newer one before the vision thread got to them
+     */
+    public long getDroppedFrameCount() {
+        return droppedFrames;
+    }
+
+    /**
+     * @return how many times {@link #getFrame()} gave up waiting for the camera and returned an empty frame
+     */
+    public long getTimedOutFrameCount() {
+        return timedOutFrames;
+    }
+
+    /**
+     * @return time between the last frame returned by {@link #getFrame()} being grabbed and being handed out
+     */
+    public long getLastFrameAgeNanos() {
+        return lastFrameAgeNanos;
+    }
+
+    public double getAverageFrameAgeNanos() {
+        return averageFrameAgeNanos;
     }
 
     @Override
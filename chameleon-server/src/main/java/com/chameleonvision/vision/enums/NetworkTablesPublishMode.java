@@ -0,0 +1,11 @@
+package com.chameleonvision.vision.enums;
+
+/**
+ * How the list of targets is written to NetworkTables. pitch, yaw, area, latency and is_valid are always written.
+ */
+public enum NetworkTablesPublishMode {
+    /** aux_targets and poseList as JSON strings. */
+    Json,
+    /** target_data as one flat double array, see {@link com.chameleonvision.vision.TargetSnapshot}. */
+    Packed
+}
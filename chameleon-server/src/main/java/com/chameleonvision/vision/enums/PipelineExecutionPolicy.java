@@ -0,0 +1,19 @@
+package com.chameleonvision.vision.enums;
+
+/**
+ * How a camera's vision work is spread over threads.
+ */
+public enum PipelineExecutionPolicy {
+    /** Capture, pipeline, NetworkTables and streaming all run one after the other on a single thread. */
+    Serial(0),
+    /** One thread per stage, frames that arrive while the first stage is busy are dropped so none of them wait in a queue. */
+    LowestLatency(1),
+    /** One thread per stage with deeper queues between them, so every stage always has a frame to work on. */
+    HighestThroughput(3);
+
+    public final int queueDepth;
+
+    PipelineExecutionPolicy(int queueDepth) {
+        this.queueDepth = queueDepth;
+    }
+}
@@ -0,0 +1,13 @@
+package com.chameleonvision.vision.enums;
+
+/**
+ * How the HSV threshold of a pipeline is computed.
+ */
+public enum ThresholdMode {
+    /** OpenCV cvtColor to HSV followed by inRange. */
+    Hsv,
+    /** A 32x32x32 table of BGR colors, 32KB so it stays in cache, colors near the edge of the range may be misclassified. */
+    QuantizedLut,
+    /** A bitset of every 24-bit BGR color, 2MB, gives exactly the same mask as {@link #Hsv}. */
+    ExactLut
+}
@@ -0,0 +1,47 @@
+package com.chameleonvision.vision.image;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * Recorded frames that can be played back, either a single frame log or every segment of a {@link FrameLogRing}.
+ * Frames are numbered from 0 in the order they were recorded.
+ */
+public interface FrameLog extends AutoCloseable {
+
+    int getFrameCount();
+
+    long getTimestamp(int frame);
+
+    /**
+     * @return the pipeline settings the frame was recorded with, the class name and its JSON on the line after,
+     * or null if none were recorded
+     */
+    String getSettings(int frame);
+
+    /**
+     * @return a read only view of the frame's bytes, valid until the log is closed
+     */
+    ByteBuffer getFrameData(int frame);
+
+    /**
+     * @return the targets the vision loop found in the frame, empty if they weren't recorded
+     */
+    List<RecordedTarget> getTargets(int frame);
+
+    int getWidth();
+
+    int getHeight();
+
+    int getMatType();
+
+    int getFps();
+
+    double getFov();
+
+    boolean isLossless();
+
+    @Override
+    void close() throws IOException;
+}
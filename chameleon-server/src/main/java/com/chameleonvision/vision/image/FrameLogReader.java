@@ -0,0 +1,221 @@
+package com.chameleonvision.vision.image;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reads a frame log written by {@link FrameLogWriter}, or one segment of a {@link FrameLogRing}. The file is memory
+ * mapped, so frames are read straight from the page cache without being copied into the heap first.
+ */
+public class FrameLogReader implements FrameLog {
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+
+    private final int width;
+    private final int height;
+    private final int matType;
+    private final int fps;
+    private final double fov;
+    private final int encoding;
+
+    private long[] recordOffsets;
+    private int frameCount;
+    // each frame's settings, as an index into settingsList
+    private int[] settingsIndices;
+    private final List<String> settingsList = new ArrayList<>();
+
+    public FrameLogReader(Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        long size = channel.size();
+        if (size > FrameLogWriter.MAX_LOG_BYTES) {
+            channel.close();
+            throw new IOException("Frame log " + path + " is too large to replay");
+        }
+        buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+
+        if (size < FrameLogWriter.HEADER_BYTES || buffer.getInt(0) != FrameLogWriter.MAGIC) {
+            channel.close();
+            throw new IOException(path + " is not a frame log");
+        }
+        int version = buffer.getInt(4);
+        if (version != FrameLogWriter.VERSION) {
+            channel.close();
+            throw new IOException("Unsupported frame log version " + version);
+        }
+        width = buffer.getInt(8);
+        height = buffer.getInt(12);
+        matType = buffer.getInt(16);
+        fps = buffer.getInt(20);
+        fov = buffer.getDouble(24);
+        encoding = buffer.getInt(32);
+
+        if (!readIndex(size)) {
+            System.err.println("Frame log " + path + " has no index, it was probably cut short. Rebuilding it.");
+            rebuildIndex(size);
+        }
+        readSettings();
+    }
+
+    private boolean readIndex(long size) {
+        if (size < FrameLogWriter.HEADER_BYTES + FrameLogWriter.FOOTER_BYTES) return false;
+        int footer = (int) size - FrameLogWriter.FOOTER_BYTES;
+        if (buffer.getInt(footer + Long.BYTES + Integer.BYTES) != FrameLogWriter.MAGIC) return false;
+
+        long indexOffset = buffer.getLong(footer);
+        int count = buffer.getInt(footer + Long.BYTES);
+        if (count < 0 || indexOffset < FrameLogWriter.HEADER_BYTES || indexOffset + (long) count * Long.BYTES != footer) {
+            return false;
+        }
+
+        recordOffsets = new long[count];
+        for (int i = 0; i < count; i++) {
+            recordOffsets[i] = buffer.getLong((int) indexOffset + i * Long.BYTES);
+        }
+        frameCount = count;
+        return true;
+    }
+
+    /**
+     * Walks the records from the start, keeping every record that was written completely. The walk stops at the first
+     * offset without a record magic, which is where the zeroes start in a ring segment that wasn't finished.
+     */
+    private void rebuildIndex(long size) {
+        recordOffsets = new long[1024];
+        frameCount = 0;
+        long offset = FrameLogWriter.HEADER_BYTES;
+        while (offset + Integer.BYTES + Long.BYTES + Integer.BYTES <= size) {
+            if (buffer.getInt((int) offset) != FrameLogWriter.RECORD_MAGIC) break;
+            int settingsLength = buffer.getInt(settingsLengthOffset((int) offset));
+            long frameLengthOffset = settingsLengthOffset((int) offset) + Integer.BYTES + (long) settingsLength;
+            if (settingsLength < 0 || frameLengthOffset + Integer.BYTES > size) break;
+            int frameLength = buffer.getInt((int) frameLengthOffset);
+            long targetCountOffset = frameLengthOffset + Integer.BYTES + frameLength;
+            if (frameLength < 0 || targetCountOffset + Integer.BYTES > size) break;
+            int targetCount = buffer.getInt((int) targetCountOffset);
+            long end = targetCountOffset + Integer.BYTES + (long) targetCount * FrameLogWriter.TARGET_BYTES;
+            if (targetCount < 0 || end > size) break;
+
+            if (frameCount == recordOffsets.length) {
+                recordOffsets = Arrays.copyOf(recordOffsets, recordOffsets.length * 2);
+            }
+            recordOffsets[frameCount++] = offset;
+            offset = end;
+        }
+    }
+
+    private void readSettings() {
+        settingsIndices = new int[frameCount];
+        int current = -1;
+        for (int i = 0; i < frameCount; i++) {
+            int offset = settingsLengthOffset((int) recordOffsets[i]);
+            int settingsLength = buffer.getInt(offset);
+            if (settingsLength > 0) {
+                byte[] settingsBytes = new byte[settingsLength];
+                buffer.duplicate().position(offset + Integer.BYTES).get(settingsBytes);
+                settingsList.add(new String(settingsBytes, StandardCharsets.UTF_8));
+                current = settingsList.size() - 1;
+            }
+            settingsIndices[i] = current;
+        }
+    }
+
+    private static int settingsLengthOffset(int recordOffset) {
+        return recordOffset + Integer.BYTES + Long.BYTES;
+    }
+
+    private int frameLengthOffset(int frame) {
+        int settingsLengthOffset = settingsLengthOffset((int) recordOffsets[frame]);
+        return settingsLengthOffset + Integer.BYTES + buffer.getInt(settingsLengthOffset);
+    }
+
+    @Override
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    @Override
+    public long getTimestamp(int frame) {
+        return buffer.getLong((int) recordOffsets[frame] + Integer.BYTES);
+    }
+
+    @Override
+    public String getSettings(int frame) {
+        int index = settingsIndices[frame];
+        return index >= 0 ? settingsList.get(index) : null;
+    }
+
+    @Override
+    public ByteBuffer getFrameData(int frame) {
+        int frameLengthOffset = frameLengthOffset(frame);
+        int frameLength = buffer.getInt(frameLengthOffset);
+        return buffer.duplicate().position(frameLengthOffset + Integer.BYTES).limit(frameLengthOffset + Integer.BYTES + frameLength).slice();
+    }
+
+    @Override
+    public List<RecordedTarget> getTargets(int frame) {
+        int frameLengthOffset = frameLengthOffset(frame);
+        int targetCountOffset = frameLengthOffset + Integer.BYTES + buffer.getInt(frameLengthOffset);
+        int targetCount = buffer.getInt(targetCountOffset);
+
+        List<RecordedTarget> targets = new ArrayList<>(targetCount);
+        int offset = targetCountOffset + Integer.BYTES;
+        for (int i = 0; i < targetCount; i++) {
+            RecordedTarget target = new RecordedTarget();
+            target.pitch = buffer.getDouble(offset);
+            target.yaw = buffer.getDouble(offset + Double.BYTES);
+            target.area = buffer.getDouble(offset + 2 * Double.BYTES);
+            target.centerX = buffer.getDouble(offset + 3 * Double.BYTES);
+            target.centerY = buffer.getDouble(offset + 4 * Double.BYTES);
+            target.poseX = buffer.getDouble(offset + 5 * Double.BYTES);
+            target.poseY = buffer.getDouble(offset + 6 * Double.BYTES);
+            target.poseRotationDegrees = buffer.getDouble(offset + 7 * Double.BYTES);
+            targets.add(target);
+            offset += FrameLogWriter.TARGET_BYTES;
+        }
+        return targets;
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public int getMatType() {
+        return matType;
+    }
+
+    @Override
+    public int getFps() {
+        return fps;
+    }
+
+    @Override
+    public double getFov() {
+        return fov;
+    }
+
+    @Override
+    public boolean isLossless() {
+        return encoding == FrameLogWriter.ENCODING_PNG;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,495 @@
+package com.chameleonvision.vision.image;
+
+import com.chameleonvision.util.SpscRingBuffer;
+import com.chameleonvision.vision.pipeline.CVPipelineSettings;
+import com.chameleonvision.vision.pipeline.impl.StandardCVPipeline.TrackedTarget;
+import edu.wpi.first.wpilibj.geometry.Pose2d;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Records a whole match worth of raw frames, with the targets found in them, into a ring of memory mapped segment
+ * files in one folder. Every segment is a frame log of its own that {@link FrameLogReader} can read, and
+ * {@link FrameLogRingReader} reads them all as one.
+ *
+ * Segments are created, sized, mapped and paged in ahead of time by a segment thread, so appending a frame is only
+ * copying it into memory: no writes, no page faults that allocate disk blocks, and no waiting on the disk, the kernel
+ * writes the pages back whenever it likes. When a segment is full the vision thread swaps in the prepared one and the
+ * segment thread writes the full one's index and trims it, and deletes the oldest segment once there are
+ * {@code segmentCount} of them. Frames that come while no segment is ready are dropped.
+ *
+ * Only one thread may append at a time. Records are only made visible by writing their magic once they are
+ * complete, so a segment that was never finished, because the process was killed, is read up to its last whole frame.
+ */
+public class FrameLogRing {
+
+    public static final int DEFAULT_SEGMENT_MEGABYTES = 128;
+    public static final int DEFAULT_SEGMENT_COUNT = 16;
+    // targets past this many aren't recorded, so a record's size is known before the pipeline runs
+    public static final int MAX_RECORDED_TARGETS = 16;
+
+    private static final String SEGMENT_PREFIX = "segment_";
+    private static final String SEGMENT_EXTENSION = ".cvlog";
+    private static final int PAGE_BYTES = 4096;
+    private static final long SEGMENT_THREAD_PERIOD_NANOS = 100_000_000L;
+    // a mapping is otherwise only released when the garbage collector gets to it. Unsafe.invokeCleaner is the only way
+    // to unmap one sooner, it is looked up at runtime so the build doesn't depend on it. Null where the JVM lacks it.
+    private static final MethodHandle unmapper = findUnmapper();
+
+    private final Path folder;
+    private final String name;
+    private final int segmentBytes;
+    private final int segmentCount;
+    private final int width;
+    private final int height;
+    private final int matType;
+    private final int fps;
+    private final double fov;
+
+    private volatile boolean recording = false;
+    private Thread segmentThread;
+    private long nextSequence;
+    // handed from the segment thread to the appender, which takes it and leaves null
+    private volatile Segment preparedSegment;
+    private SpscRingBuffer<Segment> fullSegments;
+
+    // appender only, under the lock
+    private Segment currentSegment;
+    private final RecordedSettings recordedSettings = new RecordedSettings();
+    private String lastSettings;
+    private byte[] lastSettingsBytes;
+    private int settingsVersion = 0;
+    private byte[] frameBytes = new byte[0];
+    private boolean pending = false;
+    private int pendingSettingsVersion;
+
+    private volatile long recordedFrames = 0;
+    private volatile long droppedFrames = 0;
+    private volatile long finishedSegments = 0;
+
+    /**
+     * @param segmentBytes size of one segment, which has to fit at least one frame
+     * @param segmentCount how many segments to keep, the oldest is deleted to make room for a new one
+     */
+    public FrameLogRing(Path folder, String name, int segmentBytes, int segmentCount, int width, int height, int matType, int fps, double fov) {
+        long frameBytes = (long) width * height * CvType.ELEM_SIZE(matType);
+        if (segmentBytes < FrameLogWriter.HEADER_BYTES + FrameLogWriter.FOOTER_BYTES + Long.BYTES + maxRecordBytes(frameBytes, 0)) {
+            throw new IllegalArgumentException("A " + segmentBytes + " byte segment can't fit a " + width + "x" + height + " frame");
+        }
+        if (segmentCount < 2) {
+            throw new IllegalArgumentException("A frame log ring needs at least 2 segments");
+        }
+        this.folder = folder;
+        this.name = name;
+        this.segmentBytes = segmentBytes;
+        this.segmentCount = segmentCount;
+        this.width = width;
+        this.height = height;
+        this.matType = matType;
+        this.fps = fps;
+        this.fov = fov;
+    }
+
+    private static long maxRecordBytes(long frameLength, int settingsLength) {
+        return FrameLogWriter.RECORD_OVERHEAD + settingsLength + frameLength + MAX_RECORDED_TARGETS * FrameLogWriter.TARGET_BYTES;
+    }
+
+    /**
+     * Starts recording into the folder. Segments already there are kept, and count towards the ring.
+     */
+    public synchronized void start() throws IOException {
+        if (recording) {
+            return;
+        }
+        Files.createDirectories(folder);
+        List<Path> existing = listSegments(folder);
+        nextSequence = existing.isEmpty() ? 0 : sequenceOf(existing.get(existing.size() - 1)) + 1;
+
+        fullSegments = new SpscRingBuffer<>(segmentCount);
+        currentSegment = prepareSegment();
+        recordedSettings.reset();
+        pending = false;
+        recordedFrames = 0;
+        droppedFrames = 0;
+        finishedSegments = 0;
+        recording = true;
+
+        segmentThread = new Thread(this::runSegments);
+        segmentThread.setName(name + " - Frame Log Ring Thread");
+        segmentThread.setDaemon(true);
+        segmentThread.start();
+        System.out.println("Recording " + name + " to the frame log ring in " + folder);
+    }
+
+    /**
+     * Finishes the current segment and stops the segment thread.
+     */
+    public void stop() {
+        Thread thread;
+        synchronized (this) {
+            if (!recording) {
+                return;
+            }
+            // hand over the current segment before clearing the flag, so the segment thread finishes it on its way out
+            fullSegments.offer(currentSegment);
+            currentSegment = null;
+            pending = false;
+            recording = false;
+            thread = segmentThread;
+            segmentThread = null;
+        }
+        LockSupport.unpark(thread);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        System.out.println("Stopped recording " + name + ", " + recordedFrames + " frames written to " + folder);
+    }
+
+    /**
+     * Copies a frame into the current segment, it is only recorded once {@link #commitFrame(List)} adds its targets.
+     * Does nothing if not recording.
+     *
+     * @param frame    the raw camera frame, only read during this call
+     * @param settings the settings of the pipeline the frame is about to go through
+     */
+    public synchronized void beginFrame(Mat frame, long timestampNanos, CVPipelineSettings settings) {
+        pending = false;
+        if (!recording) {
+            return;
+        }
+        // every segment has one resolution, frames from after a video mode change can't be read back with it
+        if (frame.cols() != width || frame.rows() != height || frame.type() != matType) {
+            droppedFrames++;
+            return;
+        }
+
+        String serialized = recordedSettings.next(settings);
+        if (serialized != null && !serialized.equals(lastSettings)) {
+            lastSettings = serialized;
+            lastSettingsBytes = serialized.getBytes(StandardCharsets.UTF_8);
+            settingsVersion++;
+        }
+
+        int frameLength = (int) (frame.total() * frame.elemSize());
+        if (!currentSegment.fits(maxRecordBytes(frameLength, settingsLength(currentSegment)))) {
+            Segment next = preparedSegment;
+            if (next == null) {
+                // the segment thread hasn't caught up, don't wait for it
+                droppedFrames++;
+                return;
+            }
+            preparedSegment = null;
+            fullSegments.offer(currentSegment);
+            currentSegment = next;
+            LockSupport.unpark(segmentThread);
+            if (!currentSegment.fits(maxRecordBytes(frameLength, settingsLength(currentSegment)))) {
+                // only when the settings alone are too big for a segment
+                droppedFrames++;
+                return;
+            }
+        }
+
+        // the magic goes in last, in commitFrame
+        MappedByteBuffer buffer = currentSegment.buffer;
+        buffer.position(currentSegment.position + Integer.BYTES);
+        buffer.putLong(timestampNanos);
+        int settingsLength = settingsLength(currentSegment);
+        buffer.putInt(settingsLength);
+        if (settingsLength > 0) {
+            buffer.put(lastSettingsBytes);
+        }
+        buffer.putInt(frameLength);
+        if (frameBytes.length != frameLength) {
+            frameBytes = new byte[frameLength];
+        }
+        frame.get(0, 0, frameBytes);
+        buffer.put(frameBytes);
+
+        pendingSettingsVersion = settingsVersion;
+        pending = true;
+    }
+
+    /**
+     * Every segment starts with the settings, after that they are only written when they change.
+     */
+    private int settingsLength(Segment segment) {
+        if (lastSettingsBytes == null || segment.settingsVersion == settingsVersion) {
+            return 0;
+        }
+        return lastSettingsBytes.length;
+    }
+
+    /**
+     * Adds the targets found in the frame passed to {@link #beginFrame(Mat, long, CVPipelineSettings)} and makes the
+     * record visible. Does nothing if that frame wasn't taken.
+     */
+    public synchronized void commitFrame(List<TrackedTarget> targets) {
+        if (!pending) {
+            return;
+        }
+        pending = false;
+
+        Segment segment = currentSegment;
+        MappedByteBuffer buffer = segment.buffer;
+        int targetCount = Math.min(targets.size(), MAX_RECORDED_TARGETS);
+        buffer.putInt(targetCount);
+        for (int i = 0; i < targetCount; i++) {
+            TrackedTarget target = targets.get(i);
+            buffer.putDouble(target.pitch);
+            buffer.putDouble(target.yaw);
+            buffer.putDouble(target.area);
+            buffer.putDouble(target.minAreaRect != null ? target.minAreaRect.center.x : 0);
+            buffer.putDouble(target.minAreaRect != null ? target.minAreaRect.center.y : 0);
+            Pose2d pose = target.cameraRelativePose;
+            buffer.putDouble(pose.getTranslation().getX());
+            buffer.putDouble(pose.getTranslation().getY());
+            buffer.putDouble(pose.getRotation().getDegrees());
+        }
+        int end = buffer.position();
+
+        buffer.putInt(segment.position, FrameLogWriter.RECORD_MAGIC);
+        segment.addRecord(segment.position);
+        segment.position = end;
+        segment.settingsVersion = pendingSettingsVersion;
+        recordedFrames++;
+    }
+
+    /**
+     * Records a frame and its targets in one go, for when both are already at hand.
+     */
+    public synchronized void append(Mat frame, long timestampNanos, CVPipelineSettings settings, List<TrackedTarget> targets) {
+        beginFrame(frame, timestampNanos, settings);
+        commitFrame(targets);
+    }
+
+    private void runSegments() {
+        while (true) {
+            Segment full;
+            while ((full = fullSegments.poll()) != null) {
+                finishSegment(full);
+            }
+            if (!recording) {
+                while ((full = fullSegments.poll()) != null) {
+                    finishSegment(full);
+                }
+                break;
+            }
+
+            if (preparedSegment == null) {
+                try {
+                    preparedSegment = prepareSegment();
+                } catch (IOException e) {
+                    System.err.println("Failed to create a frame log segment for " + name + " in " + folder);
+                    e.printStackTrace();
+                }
+            }
+            LockSupport.parkNanos(SEGMENT_THREAD_PERIOD_NANOS);
+        }
+
+        Segment unused = preparedSegment;
+        preparedSegment = null;
+        if (unused != null) {
+            unmap(unused.buffer);
+            try {
+                unused.channel.close();
+                Files.deleteIfExists(unused.path);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Makes room for a new segment, then creates it at its full size, maps it, touches every page so the appender
+     * never faults one in, and writes its header.
+     */
+    private Segment prepareSegment() throws IOException {
+        List<Path> existing = listSegments(folder);
+        for (int i = 0; i <= existing.size() - segmentCount; i++) {
+            Files.deleteIfExists(existing.get(i));
+        }
+
+        Path path = folder.resolve(String.format("%s%08d%s", SEGMENT_PREFIX, nextSequence++, SEGMENT_EXTENSION));
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        for (int i = 0; i < segmentBytes; i += PAGE_BYTES) {
+            buffer.put(i, (byte) 0);
+        }
+
+        buffer.putInt(0, FrameLogWriter.MAGIC);
+        buffer.putInt(4, FrameLogWriter.VERSION);
+        buffer.putInt(8, width);
+        buffer.putInt(12, height);
+        buffer.putInt(16, matType);
+        buffer.putInt(20, fps);
+        buffer.putDouble(24, fov);
+        buffer.putInt(32, FrameLogWriter.ENCODING_RAW);
+        return new Segment(path, channel, buffer);
+    }
+
+    /**
+     * Writes the index after the last record and trims the file to it.
+     */
+    private void finishSegment(Segment segment) {
+        MappedByteBuffer buffer = segment.buffer;
+        int indexOffset = segment.position;
+        buffer.position(indexOffset);
+        for (int i = 0; i < segment.frameCount; i++) {
+            buffer.putLong(segment.recordOffsets[i]);
+        }
+        buffer.putLong(indexOffset);
+        buffer.putInt(segment.frameCount);
+        buffer.putInt(FrameLogWriter.MAGIC);
+        int end = buffer.position();
+
+        buffer.force();
+        // unmapped before the file shrinks under it, and now rather than at some rare GC, or a long match piles up a
+        // whole segment of address space for every finished one
+        unmap(buffer);
+        try {
+            segment.channel.truncate(end);
+            segment.channel.close();
+            finishedSegments++;
+        } catch (IOException e) {
+            // the segment keeps its preallocated size, the reader still finds the records in it
+            System.err.println("Failed to finish frame log segment " + segment.path);
+            e.printStackTrace();
+        }
+    }
+
+    private static MethodHandle findUnmapper() {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            return MethodHandles.lookup().findVirtual(unsafeClass, "invokeCleaner",
+                    MethodType.methodType(void.class, ByteBuffer.class)).bindTo(field.get(null));
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            System.err.println("Frame log segments can't be unmapped on this JVM, they are left to the garbage collector.");
+            return null;
+        }
+    }
+
+    /**
+     * Unmaps a segment's buffer now. Nothing may touch the buffer afterwards, only the segment thread calls this, on
+     * segments the appender has handed over.
+     */
+    private static void unmap(MappedByteBuffer buffer) {
+        if (unmapper == null) {
+            return;
+        }
+        try {
+            unmapper.invokeExact((ByteBuffer) buffer);
+        } catch (Throwable e) {
+            System.err.println("Failed to unmap a frame log segment!");
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * @return the segments in a folder, oldest first
+     */
+    public static List<Path> listSegments(Path folder) throws IOException {
+        if (!Files.isDirectory(folder)) {
+            return new ArrayList<>();
+        }
+        try (Stream<Path> files = Files.list(folder)) {
+            return files.filter(path -> {
+                String fileName = path.getFileName().toString();
+                return fileName.startsWith(SEGMENT_PREFIX) && fileName.endsWith(SEGMENT_EXTENSION);
+            }).sorted().collect(Collectors.toList());
+        }
+    }
+
+    private static long sequenceOf(Path segment) {
+        String fileName = segment.getFileName().toString();
+        try {
+            return Long.parseLong(fileName.substring(SEGMENT_PREFIX.length(), fileName.length() - SEGMENT_EXTENSION.length()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    public Path getFolder() {
+        return folder;
+    }
+
+    public boolean isRecording() {
+        return recording;
+    }
+
+    public long getRecordedFrames() {
+        return recordedFrames;
+    }
+
+    public long getDroppedFrames() {
+        return droppedFrames;
+    }
+
+    public long getFinishedSegments() {
+        return finishedSegments;
+    }
+
+    public int getSegmentBytes() {
+        return segmentBytes;
+    }
+
+    public int getSegmentCount() {
+        return segmentCount;
+    }
+
+    private static class Segment {
+        final Path path;
+        final FileChannel channel;
+        final MappedByteBuffer buffer;
+
+        int position = FrameLogWriter.HEADER_BYTES;
+        long[] recordOffsets = new long[256];
+        int frameCount = 0;
+        // which settings the segment has last written, -1 so the first record writes them
+        int settingsVersion = -1;
+
+        Segment(Path path, FileChannel channel, MappedByteBuffer buffer) {
+            this.path = path;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+
+        /**
+         * @return whether a record this big fits, along with the index that has to go after it
+         */
+        boolean fits(long recordBytes) {
+            long indexBytes = (frameCount + 1L) * Long.BYTES + FrameLogWriter.FOOTER_BYTES;
+            return position + recordBytes + indexBytes <= buffer.capacity();
+        }
+
+        void addRecord(int offset) {
+            if (frameCount == recordOffsets.length) {
+                recordOffsets = Arrays.copyOf(recordOffsets, recordOffsets.length * 2);
+            }
+            recordOffsets[frameCount++] = offset;
+        }
+    }
+}
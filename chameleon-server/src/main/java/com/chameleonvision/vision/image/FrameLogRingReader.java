@@ -0,0 +1,140 @@
+package com.chameleonvision.vision.image;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Reads every segment of a {@link FrameLogRing} as one frame log, oldest frame first.
+ * Only the newest run of segments with the same resolution is read, segments from before a video mode change are
+ * skipped, as are segments that can't be read at all. The segment that is being recorded into can be read too, up to
+ * the last frame that was complete when it was opened.
+ */
+public class FrameLogRingReader implements FrameLog {
+
+    private final List<FrameLogReader> segments = new ArrayList<>();
+    // the number of the first frame in each segment
+    private final int[] firstFrames;
+    private final int frameCount;
+
+    public FrameLogRingReader(Path folder) throws IOException {
+        List<Path> paths = FrameLogRing.listSegments(folder);
+        for (int i = paths.size() - 1; i >= 0; i--) {
+            FrameLogReader segment;
+            try {
+                segment = new FrameLogReader(paths.get(i));
+            } catch (IOException e) {
+                System.err.println("Skipping frame log segment " + paths.get(i) + ": " + e.getMessage());
+                continue;
+            }
+
+            if (!segments.isEmpty() && !sameFormat(segment, segments.get(0))) {
+                segment.close();
+                break;
+            }
+            if (segment.getFrameCount() == 0) {
+                segment.close();
+                continue;
+            }
+            segments.add(segment);
+        }
+        if (segments.isEmpty()) {
+            throw new IOException("No frame log segments in " + folder);
+        }
+        Collections.reverse(segments);
+
+        firstFrames = new int[segments.size()];
+        int count = 0;
+        for (int i = 0; i < segments.size(); i++) {
+            firstFrames[i] = count;
+            count += segments.get(i).getFrameCount();
+        }
+        frameCount = count;
+    }
+
+    private static boolean sameFormat(FrameLogReader a, FrameLogReader b) {
+        return a.getWidth() == b.getWidth() && a.getHeight() == b.getHeight() && a.getMatType() == b.getMatType()
+                && a.isLossless() == b.isLossless();
+    }
+
+    private int segmentOf(int frame) {
+        int index = Arrays.binarySearch(firstFrames, frame);
+        return index >= 0 ? index : -index - 2;
+    }
+
+    public int getSegmentCount() {
+        return segments.size();
+    }
+
+    @Override
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    @Override
+    public long getTimestamp(int frame) {
+        int segment = segmentOf(frame);
+        return segments.get(segment).getTimestamp(frame - firstFrames[segment]);
+    }
+
+    @Override
+    public String getSettings(int frame) {
+        int segment = segmentOf(frame);
+        return segments.get(segment).getSettings(frame - firstFrames[segment]);
+    }
+
+    @Override
+    public ByteBuffer getFrameData(int frame) {
+        int segment = segmentOf(frame);
+        return segments.get(segment).getFrameData(frame - firstFrames[segment]);
+    }
+
+    @Override
+    public List<RecordedTarget> getTargets(int frame) {
+        int segment = segmentOf(frame);
+        return segments.get(segment).getTargets(frame - firstFrames[segment]);
+    }
+
+    // the header is the same for every segment read, the newest one's fps and fov are as good as any
+
+    @Override
+    public int getWidth() {
+        return segments.get(0).getWidth();
+    }
+
+    @Override
+    public int getHeight() {
+        return segments.get(0).getHeight();
+    }
+
+    @Override
+    public int getMatType() {
+        return segments.get(0).getMatType();
+    }
+
+    @Override
+    public int getFps() {
+        return segments.get(segments.size() - 1).getFps();
+    }
+
+    @Override
+    public double getFov() {
+        return segments.get(segments.size() - 1).getFov();
+    }
+
+    @Override
+    public boolean isLossless() {
+        return segments.get(0).isLossless();
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (FrameLogReader segment : segments) {
+            segment.close();
+        }
+    }
+}
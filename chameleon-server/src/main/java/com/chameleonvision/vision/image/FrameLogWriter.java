@@ -0,0 +1,117 @@
+package com.chameleonvision.vision.image;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Writes camera frames to a frame log, to be replayed later by {@link ReplayCameraCapture}.
+ *
+ * A log is a header, one record per frame, and an index of where each record starts, all big endian:
+ * <pre>
+ * header:  int magic, int version, int width, int height, int matType, int fps, double fov, int encoding
+ * record:  int recordMagic, long timestampNanos, int settingsLength, settings, int frameLength, frame,
+ *          int targetCount, targets
+ * footer:  long[frameCount] recordOffsets, long indexOffset, int frameCount, int magic
+ * </pre>
+ * The settings are the pipeline settings class name and its JSON on the line after, and are only written when they
+ * change, a length of 0 means the previous frame's settings still apply. Frames are raw pixels, or PNG when lossless
+ * compression is on. Each target is {@link #TARGET_BYTES} of doubles, see {@link RecordedTarget}, logs written here
+ * have none since they are recorded before the pipeline runs. A log whose recording was cut short has no footer,
+ * {@link FrameLogReader} rebuilds its index from the records that start with the record magic.
+ */
+public class FrameLogWriter implements AutoCloseable {
+
+    static final int MAGIC = 0x4356464C; // "CVFL"
+    static final int RECORD_MAGIC = 0x43565246; // "CVRF"
+    static final int VERSION = 2;
+    static final int HEADER_BYTES = 7 * Integer.BYTES + Double.BYTES;
+    static final int FOOTER_BYTES = Long.BYTES + 2 * Integer.BYTES;
+    // magic, timestamp, settings length, frame length and target count
+    static final int RECORD_OVERHEAD = 4 * Integer.BYTES + Long.BYTES;
+    // pitch, yaw, area, center x, center y, pose x, pose y, pose rotation in degrees
+    static final int TARGET_BYTES = 8 * Double.BYTES;
+
+    public static final int ENCODING_RAW = 0;
+    public static final int ENCODING_PNG = 1;
+
+    // every record is mapped in one go when replaying, which Java caps at 2GB
+    public static final long MAX_LOG_BYTES = Integer.MAX_VALUE;
+
+    private final DataOutputStream output;
+    private long position = 0;
+    private long[] recordOffsets = new long[1024];
+    private int frameCount = 0;
+    private String lastSettings = null;
+
+    public FrameLogWriter(Path path, int width, int height, int matType, int fps, double fov, int encoding) throws IOException {
+        output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), 1 << 16));
+        output.writeInt(MAGIC);
+        output.writeInt(VERSION);
+        output.writeInt(width);
+        output.writeInt(height);
+        output.writeInt(matType);
+        output.writeInt(fps);
+        output.writeDouble(fov);
+        output.writeInt(encoding);
+        position = HEADER_BYTES;
+    }
+
+    /**
+     * @param settings the pipeline settings the frame was taken with, see the class comment
+     * @param frame    the frame, raw or encoded as the header says
+     * @param length   how many bytes of frame to write
+     */
+    public void writeFrame(long timestampNanos, String settings, byte[] frame, int length) throws IOException {
+        if (frameCount == recordOffsets.length) {
+            recordOffsets = Arrays.copyOf(recordOffsets, recordOffsets.length * 2);
+        }
+        recordOffsets[frameCount++] = position;
+
+        output.writeInt(RECORD_MAGIC);
+        output.writeLong(timestampNanos);
+        if (settings != null && !settings.equals(lastSettings)) {
+            byte[] settingsBytes = settings.getBytes(StandardCharsets.UTF_8);
+            output.writeInt(settingsBytes.length);
+            output.write(settingsBytes);
+            position += settingsBytes.length;
+            lastSettings = settings;
+        } else {
+            output.writeInt(0);
+        }
+        output.writeInt(length);
+        output.write(frame, 0, length);
+        output.writeInt(0);
+        position += RECORD_OVERHEAD + length;
+    }
+
+    /**
+     * @return the size of the log so far, without the index written on close
+     */
+    public long getBytesWritten() {
+        return position;
+    }
+
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     * Writes the index and closes the file.
+     */
+    @Override
+    public void close() throws IOException {
+        long indexOffset = position;
+        for (int i = 0; i < frameCount; i++) {
+            output.writeLong(recordOffsets[i]);
+        }
+        output.writeLong(indexOffset);
+        output.writeInt(frameCount);
+        output.writeInt(MAGIC);
+        output.close();
+    }
+}
@@ -6,7 +6,7 @@ import org.opencv.core.Mat;
 public interface ImageCapture {
     /**
      * Get the next camera frame
-     * @return a Pair of the captured image and the Linux epoch of when the frame was grabbed (in uS)
+     * @return a Pair of the captured image and the {@link System#nanoTime()} the frame was grabbed at
      */
     Pair<Mat, Long> getFrame();
 }
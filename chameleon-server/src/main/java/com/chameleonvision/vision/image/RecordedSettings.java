@@ -0,0 +1,43 @@
+package com.chameleonvision.vision.image;
+
+import com.chameleonvision.vision.pipeline.CVPipelineSettings;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Serializes the pipeline settings for a recording, in the form {@link FrameLog#getSettings(int)} gives them back.
+ * Settings changed from the UI don't tell anyone, so they are serialized whenever the pipeline changes and every
+ * {@link #INTERVAL} frames in between, rather than for every frame.
+ */
+public class RecordedSettings {
+
+    private static final int INTERVAL = 15;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private CVPipelineSettings lastSettings;
+    private int framesSinceSettings = 0;
+
+    /**
+     * @return the settings to record with this frame, or null if it's too soon to look at them again
+     */
+    public String next(CVPipelineSettings settings) {
+        if (settings == lastSettings && ++framesSinceSettings < INTERVAL) {
+            return null;
+        }
+        lastSettings = settings;
+        framesSinceSettings = 0;
+        try {
+            return settings.getClass().getName() + "\n" + objectMapper.writeValueAsString(settings);
+        } catch (JsonProcessingException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Makes the next call serialize the settings whatever they are.
+     */
+    public void reset() {
+        lastSettings = null;
+    }
+}
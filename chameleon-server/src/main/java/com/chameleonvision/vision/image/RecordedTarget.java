@@ -0,0 +1,16 @@
+package com.chameleonvision.vision.image;
+
+/**
+ * A target as the vision loop found it, read back from a frame log.
+ */
+public class RecordedTarget {
+    public double pitch = 0.0;
+    public double yaw = 0.0;
+    public double area = 0.0;
+    // center of the target's minimum area rectangle, in pixels
+    public double centerX = 0.0;
+    public double centerY = 0.0;
+    public double poseX = 0.0;
+    public double poseY = 0.0;
+    public double poseRotationDegrees = 0.0;
+}
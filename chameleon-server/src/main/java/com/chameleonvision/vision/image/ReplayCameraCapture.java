@@ -0,0 +1,169 @@
+package com.chameleonvision.vision.image;
+
+import com.chameleonvision.config.CameraCalibrationConfig;
+import com.chameleonvision.vision.camera.CameraCapture;
+import edu.wpi.cscore.VideoMode;
+import org.apache.commons.lang3.tuple.Pair;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfByte;
+import org.opencv.imgcodecs.Imgcodecs;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Plays a frame log, or every segment of a frame log ring, back as if it were a camera, either at the speed it was recorded at or as fast as it is asked
+ * for frames.
+ */
+public class ReplayCameraCapture implements CameraCapture {
+
+    private final FrameLog log;
+    private final boolean realTime;
+    private final boolean loop;
+    private final VideoMode videoMode;
+    private final CaptureProperties properties;
+
+    private final Mat frameBuffer = new Mat();
+    private final Mat emptyMat = new Mat();
+    private final MatOfByte encodedBuffer = new MatOfByte();
+    private byte[] byteBuffer = new byte[0];
+
+    private int nextFrame = 0;
+    private int currentFrame = -1;
+    private long replayStartNanos = 0;
+
+    /**
+     * @param realTime wait between frames as long as the camera did, rather than handing them out back to back
+     * @param loop     start again from the first frame after the last one
+     */
+    public ReplayCameraCapture(FrameLog log, boolean realTime, boolean loop) {
+        this.log = log;
+        this.realTime = realTime;
+        this.loop = loop;
+        videoMode = new VideoMode(VideoMode.PixelFormat.kBGR, log.getWidth(), log.getHeight(), log.getFps());
+        properties = new CaptureProperties(videoMode, log.getFov());
+    }
+
+    public boolean hasNextFrame() {
+        return log.getFrameCount() > 0 && (loop || nextFrame < log.getFrameCount());
+    }
+
+    /**
+     * @return the next recorded frame, which stays valid until the next call, or an empty Mat once the log is over
+     */
+    @Override
+    public Pair<Mat, Long> getFrame() {
+        if (!hasNextFrame()) {
+            return Pair.of(emptyMat, System.nanoTime());
+        }
+        if (nextFrame == log.getFrameCount()) {
+            nextFrame = 0;
+        }
+        if (nextFrame == 0) {
+            replayStartNanos = System.nanoTime();
+        }
+
+        int frame = nextFrame++;
+        if (realTime) {
+            long dueNanos = replayStartNanos + (log.getTimestamp(frame) - log.getTimestamp(0));
+            long remainingNanos;
+            while ((remainingNanos = dueNanos - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(remainingNanos);
+                if (Thread.currentThread().isInterrupted()) break;
+            }
+        }
+
+        ByteBuffer data = log.getFrameData(frame);
+        if (byteBuffer.length < data.remaining()) {
+            byteBuffer = new byte[data.remaining()];
+        }
+        int length = data.remaining();
+        data.get(byteBuffer, 0, length);
+
+        if (log.isLossless()) {
+            encodedBuffer.create(length, 1, CvType.CV_8UC1);
+            encodedBuffer.put(0, 0, byteBuffer, 0, length);
+            Mat decoded = Imgcodecs.imdecode(encodedBuffer, Imgcodecs.IMREAD_UNCHANGED);
+            decoded.copyTo(frameBuffer);
+            decoded.release();
+        } else {
+            frameBuffer.create(log.getHeight(), log.getWidth(), log.getMatType());
+            frameBuffer.put(0, 0, byteBuffer, 0, length);
+        }
+
+        currentFrame = frame;
+        return Pair.of(frameBuffer, System.nanoTime());
+    }
+
+    /**
+     * @return which frame of the log the last {@link #getFrame()} returned
+     */
+    public int getCurrentFrameIndex() {
+        return currentFrame;
+    }
+
+    public long getRecordedTimestamp() {
+        return log.getTimestamp(currentFrame);
+    }
+
+    /**
+     * @return the pipeline settings the last frame was recorded with, see {@link FrameLog#getSettings(int)}
+     */
+    public String getRecordedSettings() {
+        return log.getSettings(currentFrame);
+    }
+
+    /**
+     * @return the targets the vision loop found in the last frame when it was recorded, for comparing to a replay
+     */
+    public List<RecordedTarget> getRecordedTargets() {
+        return log.getTargets(currentFrame);
+    }
+
+    @Override
+    public CaptureProperties getProperties() {
+        return properties;
+    }
+
+    @Override
+    public VideoMode getCurrentVideoMode() {
+        return videoMode;
+    }
+
+    @Override
+    public void setExposure(int exposure) {
+        // do nothing
+    }
+
+    @Override
+    public void setBrightness(int brightness) {
+        // do nothing
+    }
+
+    @Override
+    public void setVideoMode(VideoMode mode) {
+        // do nothing
+    }
+
+    @Override
+    public void setVideoMode(int index) {
+        // do nothing
+    }
+
+    @Override
+    public void setGain(int gain) {
+        // do nothing
+    }
+
+    @Override
+    public CameraCalibrationConfig getCurrentCalibrationData() {
+        return null;
+    }
+
+    @Override
+    public List<CameraCalibrationConfig> getAllCalibrationData() {
+        return null;
+    }
+}
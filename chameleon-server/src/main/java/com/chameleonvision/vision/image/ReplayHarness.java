@@ -0,0 +1,157 @@
+package com.chameleonvision.vision.image;
+
+import com.chameleonvision.vision.pipeline.CVPipeline;
+import com.chameleonvision.vision.pipeline.CVPipelineResult;
+import com.chameleonvision.vision.pipeline.impl.StandardCVPipeline;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.lang3.tuple.Pair;
+import org.opencv.core.Mat;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runs a frame log through a pipeline without a camera, for regression and performance testing.
+ * The targets found in every frame and how long each frame took go into a {@link Report}, which can be saved as a
+ * baseline and compared to later runs with {@link #diff(Report, Report, double)}.
+ */
+public class ReplayHarness {
+    private ReplayHarness() {
+    }
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    /**
+     * @param realTime            feed frames at the speed they were recorded at, rather than as fast as the pipeline takes them
+     * @param useRecordedSettings load the settings each frame was recorded with into the pipeline before running it,
+     *                            when they were recorded for the same kind of pipeline
+     */
+    public static Report run(FrameLog log, CVPipeline pipeline, boolean realTime, boolean useRecordedSettings) {
+        ReplayCameraCapture capture = new ReplayCameraCapture(log, realTime, false);
+        pipeline.initPipeline(capture);
+
+        Report report = new Report();
+        String appliedSettings = null;
+        long startNanos = System.nanoTime();
+
+        while (capture.hasNextFrame()) {
+            Pair<Mat, Long> frame = capture.getFrame();
+
+            String settings = capture.getRecordedSettings();
+            if (useRecordedSettings && settings != null && !settings.equals(appliedSettings)) {
+                applySettings(pipeline, settings);
+                appliedSettings = settings;
+            }
+
+            long frameStartNanos = System.nanoTime();
+            CVPipelineResult result = pipeline.runPipeline(frame.getLeft());
+            long frameNanos = System.nanoTime() - frameStartNanos;
+
+            report.frames.add(new FrameResult(capture.getCurrentFrameIndex(), capture.getRecordedTimestamp(), frameNanos, result));
+        }
+
+        report.wallNanos = System.nanoTime() - startNanos;
+        report.summarize();
+        return report;
+    }
+
+    private static void applySettings(CVPipeline pipeline, String recordedSettings) {
+        int newline = recordedSettings.indexOf('\n');
+        String className = recordedSettings.substring(0, newline);
+        if (!className.equals(pipeline.settings.getClass().getName())) {
+            return;
+        }
+        try {
+            objectMapper.readerForUpdating(pipeline.settings).readValue(recordedSettings.substring(newline + 1));
+        } catch (IOException e) {
+            System.err.println("Failed to apply recorded settings, replaying with the pipeline's own.");
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Compares the targets found in two runs of the same log, frame by frame.
+     *
+     * @param tolerance how far pitch, yaw and area may drift before a target counts as changed
+     * @return a line for every frame whose targets differ, empty if the runs agree
+     */
+    public static List<String> diff(Report baseline, Report current, double tolerance) {
+        List<String> differences = new ArrayList<>();
+        if (baseline.frames.size() != current.frames.size()) {
+            differences.add("Frame count changed from " + baseline.frames.size() + " to " + current.frames.size());
+        }
+        int frames = Math.min(baseline.frames.size(), current.frames.size());
+        for (int i = 0; i < frames; i++) {
+            FrameResult before = baseline.frames.get(i);
+            FrameResult after = current.frames.get(i);
+            if (before.targetCount != after.targetCount) {
+                differences.add(String.format("Frame %d: %d targets, was %d", i, after.targetCount, before.targetCount));
+            } else if (before.targetCount > 0 && (Math.abs(before.pitch - after.pitch) > tolerance
+                    || Math.abs(before.yaw - after.yaw) > tolerance || Math.abs(before.area - after.area) > tolerance)) {
+                differences.add(String.format("Frame %d: best target at pitch %.3f yaw %.3f area %.3f, was pitch %.3f yaw %.3f area %.3f",
+                        i, after.pitch, after.yaw, after.area, before.pitch, before.yaw, before.area));
+            }
+        }
+        return differences;
+    }
+
+    public static class FrameResult {
+        public int frame;
+        public long recordedTimestamp;
+        public long processNanos;
+        public int targetCount;
+        // of the best target, 0 when there is none
+        public double pitch;
+        public double yaw;
+        public double area;
+
+        public FrameResult() {
+        }
+
+        FrameResult(int frame, long recordedTimestamp, long processNanos, CVPipelineResult result) {
+            this.frame = frame;
+            this.recordedTimestamp = recordedTimestamp;
+            this.processNanos = processNanos;
+            if (result instanceof StandardCVPipeline.StandardCVPipelineResult && result.hasTarget) {
+                var targets = ((StandardCVPipeline.StandardCVPipelineResult) result).targets;
+                targetCount = targets.size();
+                pitch = targets.get(0).pitch;
+                yaw = targets.get(0).yaw;
+                area = targets.get(0).area;
+            }
+        }
+    }
+
+    /**
+     * Everything a replay found, plain fields so it can be saved and loaded as a JSON baseline.
+     */
+    public static class Report {
+        public List<FrameResult> frames = new ArrayList<>();
+        public long wallNanos;
+        public double averageProcessMs;
+        public double p95ProcessMs;
+        public double maxProcessMs;
+
+        void summarize() {
+            if (frames.isEmpty()) return;
+            long[] times = new long[frames.size()];
+            long total = 0;
+            for (int i = 0; i < times.length; i++) {
+                times[i] = frames.get(i).processNanos;
+                total += times[i];
+            }
+            Arrays.sort(times);
+            averageProcessMs = total / (double) times.length / 1000000.0;
+            p95ProcessMs = times[(int) Math.ceil(times.length * 0.95) - 1] / 1000000.0;
+            maxProcessMs = times[times.length - 1] / 1000000.0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d frames in %.1fms, per frame: average %.3fms, 95th percentile %.3fms, max %.3fms",
+                    frames.size(), wallNanos / 1000000.0, averageProcessMs, p95ProcessMs, maxProcessMs);
+        }
+    }
+}
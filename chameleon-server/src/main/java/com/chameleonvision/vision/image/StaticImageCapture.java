@@ -15,6 +15,7 @@ import java.util.List;
 public class StaticImageCapture implements CameraCapture {
 
     private Mat image = new Mat();
+    private Mat frameBuffer = new Mat();
     private final VideoMode fakeVideoMode;
     private final com.chameleonvision.vision.image.CaptureProperties properties;
 
@@ -38,7 +39,9 @@ public class StaticImageCapture implements CameraCapture {
 
     @Override
     public Pair<Mat, Long> getFrame() {
-        return Pair.of(image, System.nanoTime());
+        // pipelines work on the frame in place, so hand out a copy to keep the loaded image intact
+        image.copyTo(frameBuffer);
+        return Pair.of(frameBuffer, System.nanoTime());
     }
 
     @Override
@@ -1,16 +1,37 @@
 package com.chameleonvision.vision.pipeline;
 
+import com.chameleonvision.util.MatArena;
 import com.chameleonvision.vision.camera.CameraCapture;
+import com.chameleonvision.vision.trace.FrameTrace;
 import org.opencv.core.Mat;
 
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
 /**
  *
  * @param <R> Pipeline result type
  */
 public abstract class CVPipeline<R extends CVPipelineResult, S extends CVPipelineSettings> {
-    protected Mat outputMat = new Mat();
+    // longer than a camera takes to time out, see USBCameraCapture, so only a thread that stopped looping misses it
+    private static final long RUNNING_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(2);
+    private static final long RUNNING_CHECK_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    protected final MatArena matArena = new MatArena();
+    protected Mat outputMat = matArena.persistent(new Mat());
     protected CameraCapture cameraCapture;
-    public S settings;
+    protected FrameTrace frameTrace = new FrameTrace();
+    protected boolean renderOutput = true;
+    protected Consumer<CVPipelineResult> targetsListener;
+    // replaced rather than modified while the pipeline runs, see updateSettings
+    public volatile S settings;
+    private final Object settingsLock = new Object();
+    private volatile boolean active = false;
+    private volatile long lastFrameBoundaryNanos = 0;
 
     protected CVPipeline(S settings) {
         this.settings = settings;
@@ -29,4 +50,141 @@ public abstract class CVPipeline<R extends CVPipelineResult, S extends CVPipelin
         cameraCapture.setGain((int) settings.gain);
     }
     abstract public R runPipeline(Mat inputMat);
+
+    /**
+     * First stage of the staged executor: thresholding and contour finding.
+     * Pipelines that are not split into stages run entirely here, and the other stages pass their frame along.
+     */
+    public void runThresholdStage(FrameSlot slot) {
+        setRenderOutput(slot.render);
+        slot.setResult(runPipeline(slot.inputMat));
+    }
+
+    /**
+     * Second stage of the staged executor: grouping, sorting and pose estimation of targets.
+     */
+    public void runTargetStage(FrameSlot slot) {}
+
+    /**
+     * Last stage of the staged executor: drawing on the output frame.
+     */
+    public void runDrawStage(FrameSlot slot) {}
+
+    /**
+     * Sets the trace {@link #runPipeline(Mat)} marks each pipe of the next frame on.
+     */
+    public void setFrameTrace(FrameTrace frameTrace) {
+        this.frameTrace = frameTrace;
+    }
+
+    /**
+     * Sets whether {@link #runPipeline(Mat)} draws the output frame. Without it only targets are found, and the
+     * result's output Mat is left empty.
+     */
+    public void setRenderOutput(boolean renderOutput) {
+        this.renderOutput = renderOutput;
+    }
+
+    /**
+     * Sets who {@link #runPipeline(Mat)} hands its result to as soon as the targets are known, before the output frame
+     * is drawn. Pipelines without a separate drawing step may not call it, the result is returned either way.
+     */
+    public void setTargetsListener(Consumer<CVPipelineResult> targetsListener) {
+        this.targetsListener = targetsListener;
+    }
+
+    public MatArena getMatArena() {
+        return matArena;
+    }
+
+    /**
+     * Marks this pipeline as the one its camera runs, or not. While it is, settings changes wait for its thread.
+     */
+    public void setActive(boolean active) {
+        this.active = active;
+    }
+
+    /**
+     * @return whether this is the pipeline its camera runs, and its thread got to a frame recently
+     */
+    private boolean isRunning() {
+        return active && System.nanoTime() - lastFrameBoundaryNanos < RUNNING_TIMEOUT_NANOS;
+    }
+
+    /**
+     * Hands settings changes to the thread running this pipeline, which applies them together between two frames, see
+     * {@link #applyPendingSettings()}. Waits until they are applied, so the settings can be saved or sent right after.
+     * If the pipeline isn't the one running, or its thread stopped getting to frames, they are applied on the calling
+     * thread instead.
+     */
+    public void updateSettings(List<SettingsBinder.SettingsUpdate> updates) {
+        PendingSettings pending = new PendingSettings(updates, Thread.currentThread());
+        if (!isRunning()) {
+            applySettings(pending);
+            return;
+        }
+        pendingSettings.offer(pending);
+
+        while (!pending.applied) {
+            if (!isRunning() && pending.claimed.compareAndSet(false, true)) {
+                pendingSettings.remove(pending);
+                applySettings(pending);
+                return;
+            }
+            // woken as soon as the pipeline's thread applied them
+            LockSupport.parkNanos(RUNNING_CHECK_NANOS);
+        }
+    }
+
+    /**
+     * Applies the settings changes handed over by {@link #updateSettings(List)}. Called by whoever runs the pipeline
+     * once per frame, before starting on it, even when the camera has no frame to give.
+     */
+    public void applyPendingSettings() {
+        lastFrameBoundaryNanos = System.nanoTime();
+        PendingSettings pending;
+        while ((pending = pendingSettings.poll()) != null) {
+            if (pending.claimed.compareAndSet(false, true)) {
+                try {
+                    applySettings(pending);
+                } finally {
+                    LockSupport.unpark(pending.waiter);
+                }
+            }
+        }
+    }
+
+    /**
+     * Applies changes to a copy of the settings and then swaps it in, so a frame that already started keeps seeing
+     * the settings it started with, see {@link FrameSlot#settings}.
+     */
+    @SuppressWarnings("unchecked")
+    private void applySettings(PendingSettings pending) {
+        try {
+            synchronized (settingsLock) {
+                S next = (S) settings.copy();
+                for (SettingsBinder.SettingsUpdate update : pending.updates) {
+                    update.apply(next);
+                }
+                settings = next;
+            }
+        } finally {
+            pending.applied = true;
+        }
+    }
+
+    private final ConcurrentLinkedQueue<PendingSettings> pendingSettings = new ConcurrentLinkedQueue<>();
+
+    private static class PendingSettings {
+        final List<SettingsBinder.SettingsUpdate> updates;
+        final Thread waiter;
+        // whichever thread claims the changes applies them, the pipeline's or the waiter once the pipeline stopped running
+        final AtomicBoolean claimed = new AtomicBoolean(false);
+        volatile boolean applied = false;
+
+        PendingSettings(List<SettingsBinder.SettingsUpdate> updates, Thread waiter) {
+            this.updates = updates;
+            this.waiter = waiter;
+        }
+    }
 }
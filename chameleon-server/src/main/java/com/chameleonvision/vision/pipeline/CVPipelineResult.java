@@ -5,21 +5,51 @@ import org.opencv.core.Mat;
 import java.util.List;
 
 public abstract class CVPipelineResult<T> {
-    public final List<T> targets;
-    public final boolean hasTarget;
-    public final Mat outputMat = new Mat();
-    public final long processTime;
+    public List<T> targets;
+    public boolean hasTarget;
+    public Mat outputMat;
+    protected final Mat ownedOutputMat = new Mat();
+    public long processTime;
     public long imageTimestamp = 0;
 
     public CVPipelineResult(List<T> targets, Mat outputMat, long processTime) {
         this.targets = targets;
         hasTarget = targets != null && !targets.isEmpty();
 //        this.outputMat = outputMat;
-        outputMat.copyTo(this.outputMat);
+        this.outputMat = ownedOutputMat;
+        outputMat.copyTo(ownedOutputMat);
         outputMat.release();
         this.processTime = processTime;
     }
 
+    /**
+     * Refills this result in place, so a pipeline can hand back the same result object every frame.
+     * Unlike the constructor the source Mat is not released, as it is owned by the pipe that produced it.
+     */
+    public void update(List<T> targets, Mat outputMat, long processTime) {
+        updateTargets(targets, processTime);
+        this.outputMat = ownedOutputMat;
+        outputMat.copyTo(ownedOutputMat);
+    }
+
+    /**
+     * Refills this result in place without copying the output Mat, the result refers to the pipe's own buffer instead.
+     * Only for results that are used up on the thread that ran the pipeline, before it runs again.
+     */
+    public void share(List<T> targets, Mat outputMat, long processTime) {
+        updateTargets(targets, processTime);
+        this.outputMat = outputMat;
+    }
+
+    /**
+     * Refills everything but the output Mat, for when the targets are known before the frame is drawn.
+     */
+    public void updateTargets(List<T> targets, long processTime) {
+        this.targets = targets;
+        hasTarget = targets != null && !targets.isEmpty();
+        this.processTime = processTime;
+    }
+
     public void setTimestamp(long timestamp) {
         imageTimestamp = timestamp;
     }
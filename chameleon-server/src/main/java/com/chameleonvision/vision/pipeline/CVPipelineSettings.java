@@ -5,7 +5,7 @@ import com.chameleonvision.vision.enums.ImageRotationMode;
 import com.chameleonvision.vision.enums.StreamDivisor;
 
 @SuppressWarnings("ALL")
-public class CVPipelineSettings {
+public class CVPipelineSettings implements Cloneable {
     public int index = 0;
     public ImageFlipMode flipMode = ImageFlipMode.NONE;
     public ImageRotationMode rotationMode = ImageRotationMode.DEG_0;
@@ -15,4 +15,22 @@ public class CVPipelineSettings {
     public double gain = 0;
     public int videoModeIndex = 0;
     public StreamDivisor streamDivisor = StreamDivisor.NONE;
+    // most frames per second to process while this pipeline is active, 0 for as many as the camera delivers
+    public int maxFps = 0;
+    // percent of one core this camera may spend processing while this pipeline is active, 0 for no limit
+    public int cpuBudget = 0;
+
+    /**
+     * Settings a pipeline runs with are never changed in place, {@link CVPipeline#updateSettings} changes a copy and
+     * swaps it in, so a changed reference is all that tells the pipes to configure themselves again.
+     *
+     * @return a shallow copy, lists are shared with this one and have to be replaced rather than modified
+     */
+    public CVPipelineSettings copy() {
+        try {
+            return (CVPipelineSettings) clone();
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
 }
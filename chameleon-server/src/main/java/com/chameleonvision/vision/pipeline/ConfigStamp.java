@@ -0,0 +1,35 @@
+package com.chameleonvision.vision.pipeline;
+
+/**
+ * Remembers what a group of pipes was last configured from, so they are only configured again when it changes.
+ * Everything is compared by reference, since the settings, the camera's properties, calibration and tilt are all
+ * replaced rather than modified when they change, see {@link CVPipelineSettings#copy()}.
+ */
+public class ConfigStamp {
+    private CVPipelineSettings settings;
+    private Object camProps;
+    private Object calibration;
+    private Object tilt;
+
+    /**
+     * @return whether anything changed since the last call, in which case it is remembered as configured
+     */
+    public boolean changed(CVPipelineSettings settings, Object camProps, Object calibration, Object tilt) {
+        if (settings == this.settings && camProps == this.camProps
+                && calibration == this.calibration && tilt == this.tilt) {
+            return false;
+        }
+        this.settings = settings;
+        this.camProps = camProps;
+        this.calibration = calibration;
+        this.tilt = tilt;
+        return true;
+    }
+
+    /**
+     * Makes the next {@link #changed} return true, for when the pipes were recreated.
+     */
+    public void invalidate() {
+        settings = null;
+    }
+}
@@ -0,0 +1,140 @@
+package com.chameleonvision.vision.pipeline;
+
+import org.opencv.core.CvType;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.MatOfPoint2f;
+import org.opencv.core.Point;
+import org.opencv.core.Rect;
+import org.opencv.core.RotatedRect;
+import org.opencv.imgproc.Imgproc;
+import org.opencv.imgproc.Moments;
+
+/**
+ * A contour together with the measurements the contour pipes make of it.
+ * Every measurement is computed the first time it is asked for and then cached, so a contour that is rejected early
+ * never pays for the rest, and one that makes it through filtering, speckle rejection and grouping is only measured once.
+ * Instances are pooled by the pipe that creates them and reset every frame.
+ */
+public class ContourFeatures {
+
+    private MatOfPoint contour;
+    // only used when this is a copy that has to outlive the contour it was made from
+    private MatOfPoint ownedContour;
+    private final MatOfPoint2f contour2f = new MatOfPoint2f();
+
+    private boolean hasArea;
+    private boolean hasContour2f;
+    private double area;
+    private RotatedRect minAreaRect;
+    private Rect boundingRect;
+    private Moments moments;
+
+    /**
+     * Points this at a new contour and forgets everything measured about the old one.
+     */
+    public void set(MatOfPoint contour) {
+        this.contour = contour;
+        hasArea = false;
+        hasContour2f = false;
+        minAreaRect = null;
+        boundingRect = null;
+        moments = null;
+    }
+
+    public MatOfPoint getContour() {
+        return contour;
+    }
+
+    public boolean isEmpty() {
+        return contour.rows() == 0 || contour.cols() == 0;
+    }
+
+    public double getArea() {
+        if (!hasArea) {
+            area = Imgproc.contourArea(contour);
+            hasArea = true;
+        }
+        return area;
+    }
+
+    /**
+     * @return the contour as floating point, which minAreaRect and fitEllipse need
+     */
+    public MatOfPoint2f getContour2f() {
+        if (!hasContour2f) {
+            contour.convertTo(contour2f, CvType.CV_32F);
+            hasContour2f = true;
+        }
+        return contour2f;
+    }
+
+    public RotatedRect getMinAreaRect() {
+        if (minAreaRect == null) {
+            minAreaRect = Imgproc.minAreaRect(getContour2f());
+        }
+        return minAreaRect;
+    }
+
+    public Rect getBoundingRect() {
+        if (boundingRect == null) {
+            boundingRect = Imgproc.boundingRect(contour);
+        }
+        return boundingRect;
+    }
+
+    public Moments getMoments() {
+        if (moments == null) {
+            moments = Imgproc.moments(contour);
+        }
+        return moments;
+    }
+
+    public Point getCentroid() {
+        Moments m = getMoments();
+        return new Point(m.get_m10() / m.get_m00(), m.get_m01() / m.get_m00());
+    }
+
+    /**
+     * @return how much of its minimum area rectangle the contour fills, in percent, 0 for a degenerate rectangle
+     */
+    public double getExtent() {
+        double rectArea = getMinAreaRect().size.area();
+        return rectArea > 0 ? getArea() / rectArea * 100 : 0;
+    }
+
+    /**
+     * @return width over height of the upright bounding rectangle
+     */
+    public double getAspectRatio() {
+        Rect rect = getBoundingRect();
+        return (double) rect.width / rect.height;
+    }
+
+    /**
+     * Copies the contour and everything measured so far, the contour is deep copied so the copy outlives this frame.
+     */
+    public void copyTo(ContourFeatures other) {
+        if (other.ownedContour == null) {
+            other.ownedContour = new MatOfPoint();
+        }
+        contour.copyTo(other.ownedContour);
+        other.set(other.ownedContour);
+
+        other.hasArea = hasArea;
+        other.area = area;
+        if (hasContour2f) {
+            contour2f.copyTo(other.contour2f);
+            other.hasContour2f = true;
+        }
+        other.minAreaRect = minAreaRect;
+        other.boundingRect = boundingRect;
+        other.moments = moments;
+    }
+
+    public void release() {
+        contour2f.release();
+        if (ownedContour != null) {
+            ownedContour.release();
+        }
+    }
+}
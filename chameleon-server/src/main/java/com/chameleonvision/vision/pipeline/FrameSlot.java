@@ -0,0 +1,136 @@
+package com.chameleonvision.vision.pipeline;
+
+import com.chameleonvision.vision.camera.CaptureStaticProperties;
+import com.chameleonvision.vision.pipeline.impl.DriverVisionPipeline.DriverPipelineResult;
+import com.chameleonvision.vision.pipeline.impl.StandardCVPipeline.StandardCVPipelineResult;
+import com.chameleonvision.vision.pipeline.impl.StandardCVPipeline.TrackedTarget;
+import com.chameleonvision.vision.trace.FrameTrace;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One frame's worth of buffers travelling through the staged vision executor.
+ * Slots are allocated up front and recycled. Every stage copies what the next stage needs out of the pipes' own
+ * buffers and into the slot, so a stage can start on the next frame while the stages after it still work on this one.
+ */
+public class FrameSlot {
+
+    public final Mat inputMat = new Mat();
+    public final Mat rawMat = new Mat();
+    public final Mat thresholdMat = new Mat();
+    // the untouched camera frame, only copied while recording to a frame log ring
+    public final Mat recordMat = new Mat();
+
+    public final List<ContourFeatures> contours = new ArrayList<>();
+    public final List<TrackedTarget> targets = new ArrayList<>();
+    public final List<TrackedTarget> poseTargets = new ArrayList<>();
+
+    public final StandardCVPipelineResult standardResult = new StandardCVPipelineResult(new ArrayList<>(), new Mat(), 0);
+    public final DriverPipelineResult driverResult = new DriverPipelineResult(null, new Mat(), 0);
+
+    public final FrameTrace trace = new FrameTrace();
+
+    public CVPipeline pipeline;
+    // the pipeline's settings when the frame was captured, every stage reads these rather than the pipeline's own
+    public CVPipelineSettings settings;
+    public CVPipelineResult result;
+    public CaptureStaticProperties camProps;
+    // the window the threshold stage processed, null for the whole frame
+    public Rect roi;
+    public long imageTimestamp;
+    public long processTimeNanos;
+    public boolean failed;
+    // whether anyone is watching the stream, the output frame is only drawn if so
+    public boolean render;
+    public boolean record;
+
+    private final List<ContourFeatures> contourPool = new ArrayList<>();
+    private final List<TrackedTarget> targetPool = new ArrayList<>();
+
+    /**
+     * Readies the slot for a new frame, keeping all of its buffers.
+     */
+    public void begin(CVPipeline pipeline, long imageTimestamp) {
+        this.pipeline = pipeline;
+        this.settings = pipeline.settings;
+        this.imageTimestamp = imageTimestamp;
+        trace.begin(imageTimestamp);
+        result = null;
+        camProps = null;
+        roi = null;
+        processTimeNanos = 0;
+        failed = false;
+        render = true;
+        record = false;
+        contours.clear();
+        targets.clear();
+        poseTargets.clear();
+    }
+
+    public void setContours(List<ContourFeatures> source) {
+        contours.clear();
+        for (int i = 0; i < source.size(); i++) {
+            if (i == contourPool.size()) {
+                contourPool.add(new ContourFeatures());
+            }
+            ContourFeatures contour = contourPool.get(i);
+            source.get(i).copyTo(contour);
+            contours.add(contour);
+        }
+    }
+
+    /**
+     * @param source      the targets found this frame
+     * @param poseSource  the subset of the targets solvePNP found a pose for
+     */
+    public void setTargets(List<TrackedTarget> source, List<TrackedTarget> poseSource) {
+        targets.clear();
+        poseTargets.clear();
+        for (int i = 0; i < source.size(); i++) {
+            if (i == targetPool.size()) {
+                targetPool.add(new TrackedTarget());
+            }
+            TrackedTarget target = targetPool.get(i);
+            source.get(i).copyTo(target);
+            targets.add(target);
+
+            for (int j = 0; j < poseSource.size(); j++) {
+                if (poseSource.get(j) == source.get(i)) {
+                    poseTargets.add(target);
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Frees the slot's buffers, once no stage will use it again.
+     */
+    public void release() {
+        inputMat.release();
+        rawMat.release();
+        thresholdMat.release();
+        recordMat.release();
+        standardResult.ownedOutputMat.release();
+        driverResult.ownedOutputMat.release();
+    }
+
+    /**
+     * Copies the result of a pipeline that ran in one go into the slot.
+     */
+    public void setResult(CVPipelineResult pipelineResult) {
+        if (pipelineResult instanceof StandardCVPipelineResult) {
+            //noinspection unchecked
+            setTargets((List<TrackedTarget>) pipelineResult.targets, List.of());
+            standardResult.update(targets, pipelineResult.outputMat, pipelineResult.processTime);
+            result = standardResult;
+        } else {
+            driverResult.update(null, pipelineResult.outputMat, pipelineResult.processTime);
+            result = driverResult;
+        }
+        processTimeNanos = pipelineResult.processTime;
+    }
+}
@@ -47,7 +47,10 @@ public class PipelineManager {
     private void reassignIndexes() {
         pipelines.sort(IndexComparator);
         for (int i = 0; i < pipelines.size(); i++) {
-            pipelines.get(i).settings.index = i;
+            CVPipeline pipeline = pipelines.get(i);
+            if (pipeline.settings.index != i) {
+                pipeline.updateSettings(List.of(SettingsBinder.of(pipeline.settings.getClass()).bind("index", i)));
+            }
         }
     }
 
@@ -67,9 +70,6 @@ public class PipelineManager {
         getConfig().pipelineConfig.delete(setting);
     }
 
-    private void renamePipelineConfig(CVPipelineSettings setting, String newName) {
-        getConfig().pipelineConfig.rename(setting, newName);
-    }
 
     public void saveAllPipelines() {
         pipelines.parallelStream().map(pipeline -> pipeline.settings).forEach(this::savePipelineConfig);
@@ -142,6 +142,10 @@ public class PipelineManager {
                 }
         }
         if (newPipeline != null) {
+            if (currentPipelineIndex < pipelines.size()) {
+                getCurrentPipeline().setActive(false);
+            }
+            newPipeline.setActive(true);
             lastPipelineIndex = currentPipelineIndex;
             currentPipelineIndex = index;
             getCurrentPipeline().initPipeline(parentProcess.getCamera());
@@ -153,7 +157,7 @@ public class PipelineManager {
                 pipeChange.put("currentPipeline", currentPipelineIndex);
                 SocketHandler.broadcastMessage(pipeChange);
                 try {
-                    SocketHandler.sendFullSettings();
+                    SocketHandler.publishSettings();
                 } catch (Exception e) {
                     // avoid NullPointerException when run before threads start
                 }
@@ -204,8 +208,10 @@ public class PipelineManager {
     }
 
     public void renameCurrentPipeline(String newName) {
-        CVPipelineSettings settings = getCurrentPipeline().settings;
-        renamePipelineConfig(settings, newName);
+        CVPipeline pipeline = getCurrentPipeline();
+        CVPipelineSettings oldSettings = pipeline.settings;
+        pipeline.updateSettings(List.of(SettingsBinder.of(oldSettings.getClass()).bind("nickname", newName)));
+        getConfig().pipelineConfig.rename(oldSettings, pipeline.settings);
     }
 
     public void deleteCurrentPipeline() {
@@ -216,9 +222,20 @@ public class PipelineManager {
         if (index == currentPipelineIndex) {
             currentPipelineIndex -= 1;
         }
-        deletePipelineConfig(getPipeline(index).settings);
+        CVPipeline pipeline = getPipeline(index);
+        deletePipelineConfig(pipeline.settings);
         pipelines.remove(index);
         reassignIndexes();
+        parentProcess.releasePipeline(pipeline);
+    }
+
+    /**
+     * Frees the buffers of every pipeline of this camera, once its vision threads are stopped.
+     */
+    public void releaseAllPipelines() {
+        pipelines.forEach(pipeline -> pipeline.getMatArena().releaseAll());
+        driverModePipeline.getMatArena().releaseAll();
+        calib3dPipe.getMatArena().releaseAll();
     }
 
     public void saveDriverModeConfig() {
@@ -0,0 +1,174 @@
+package com.chameleonvision.vision.pipeline;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Sets the fields of a settings class by name, as the UI sends them.
+ * The setters are looked up once per class, as method handles, together with how to turn a value from the UI into the
+ * field's type: numbers are widened or narrowed as long as nothing is lost, enums are sent as their ordinal and lists
+ * are copied, so the settings never share a list with the message they came from. Anything else is rejected with an
+ * {@link IllegalArgumentException} before the settings are touched.
+ */
+public class SettingsBinder {
+
+    private static final Map<Class<?>, SettingsBinder> binders = new ConcurrentHashMap<>();
+
+    private final Class<?> settingsClass;
+    private final Map<String, Binding> bindings = new HashMap<>();
+
+    private SettingsBinder(Class<?> settingsClass) {
+        this.settingsClass = settingsClass;
+        MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+        for (Field field : settingsClass.getFields()) {
+            if (Modifier.isStatic(field.getModifiers()) || Modifier.isFinal(field.getModifiers())) continue;
+            try {
+                MethodHandle setter = lookup.unreflectSetter(field)
+                        .asType(MethodType.methodType(void.class, Object.class, Object.class));
+                bindings.put(field.getName(), new Binding(field, setter));
+            } catch (IllegalAccessException e) {
+                System.err.println("Can't bind setting " + field.getName() + " of " + settingsClass.getSimpleName());
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * @return the binder for a settings class, made the first time it's asked for
+     */
+    public static SettingsBinder of(Class<? extends CVPipelineSettings> settingsClass) {
+        return binders.computeIfAbsent(settingsClass, SettingsBinder::new);
+    }
+
+    /**
+     * Checks a value and turns it into the field's type, without setting anything yet.
+     *
+     * @throws IllegalArgumentException if there is no such field, or the value can't be given to it
+     */
+    public SettingsUpdate bind(String fieldName, Object value) {
+        Binding binding = bindings.get(fieldName);
+        if (binding == null) {
+            throw new IllegalArgumentException(settingsClass.getSimpleName() + " has no setting " + fieldName);
+        }
+        return new SettingsUpdate(binding, fieldName, binding.coerce(fieldName, value));
+    }
+
+    public boolean has(String fieldName) {
+        return bindings.containsKey(fieldName);
+    }
+
+    private static class Binding {
+        private final Class<?> type;
+        // for lists, whether the elements have to be numbers
+        private final boolean numberList;
+        private final MethodHandle setter;
+
+        Binding(Field field, MethodHandle setter) {
+            this.type = field.getType();
+            this.setter = setter;
+            Type genericType = field.getGenericType();
+            numberList = List.class.isAssignableFrom(type) && genericType instanceof ParameterizedType
+                    && ((ParameterizedType) genericType).getActualTypeArguments()[0] == Number.class;
+        }
+
+        Object coerce(String name, Object value) {
+            if (value == null) throw mismatch(name, null);
+            if (type == boolean.class || type == Boolean.class) {
+                if (value instanceof Boolean) return value;
+            } else if (type == int.class || type == Integer.class) {
+                if (value instanceof Number && isInt((Number) value)) return ((Number) value).intValue();
+            } else if (type == long.class || type == Long.class) {
+                if (value instanceof Number && isIntegral((Number) value)) return ((Number) value).longValue();
+            } else if (type == double.class || type == Double.class) {
+                if (value instanceof Number) return ((Number) value).doubleValue();
+            } else if (type == Number.class) {
+                if (value instanceof Number) return value;
+            } else if (type == String.class) {
+                if (value instanceof String) return value;
+            } else if (type.isEnum()) {
+                Object[] constants = type.getEnumConstants();
+                if (value instanceof Number && isInt((Number) value)) {
+                    int ordinal = ((Number) value).intValue();
+                    if (ordinal >= 0 && ordinal < constants.length) return constants[ordinal];
+                } else if (value instanceof String) {
+                    for (Object constant : constants) {
+                        if (((Enum<?>) constant).name().equals(value)) return constant;
+                    }
+                }
+            } else if (List.class.isAssignableFrom(type)) {
+                if (value instanceof List) {
+                    List<?> list = (List<?>) value;
+                    if (numberList) {
+                        for (Object element : list) {
+                            if (!(element instanceof Number)) throw mismatch(name, value);
+                        }
+                    }
+                    return new ArrayList<>(list);
+                }
+            }
+            throw mismatch(name, value);
+        }
+
+        private static boolean isIntegral(Number number) {
+            if (number instanceof Integer || number instanceof Long || number instanceof Short || number instanceof Byte) {
+                return true;
+            }
+            double d = number.doubleValue();
+            return d == Math.rint(d) && !Double.isInfinite(d);
+        }
+
+        /**
+         * Whole and in range, so intValue() neither rounds nor wraps it.
+         */
+        private static boolean isInt(Number number) {
+            double d = number.doubleValue();
+            return isIntegral(number) && d >= Integer.MIN_VALUE && d <= Integer.MAX_VALUE;
+        }
+
+        private IllegalArgumentException mismatch(String name, Object value) {
+            return new IllegalArgumentException("Can't set " + name + " (" + type.getSimpleName() + ") to " + value);
+        }
+    }
+
+    /**
+     * A checked value for one setting, set on a settings object by {@link #apply(CVPipelineSettings)}.
+     */
+    public static class SettingsUpdate {
+        private final Binding binding;
+        private final String fieldName;
+        private final Object value;
+
+        private SettingsUpdate(Binding binding, String fieldName, Object value) {
+            this.binding = binding;
+            this.fieldName = fieldName;
+            this.value = value;
+        }
+
+        public void apply(CVPipelineSettings settings) {
+            try {
+                binding.setter.invokeExact((Object) settings, value);
+            } catch (Throwable t) {
+                // the value was already checked, this only happens if the settings are of another class
+                throw new IllegalStateException("Failed to set " + fieldName, t);
+            }
+        }
+
+        public String getFieldName() {
+            return fieldName;
+        }
+
+        public Object getValue() {
+            return value;
+        }
+    }
+}
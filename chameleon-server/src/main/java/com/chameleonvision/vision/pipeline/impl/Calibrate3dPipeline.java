@@ -42,6 +42,8 @@ public class Calibrate3dPipeline extends CVPipeline<DriverVisionPipeline.DriverP
     private boolean wantsSnapshot = false;
     private double squareSizeInches;
 
+    private final DriverVisionPipeline.DriverPipelineResult resultCache = new DriverVisionPipeline.DriverPipelineResult(null, new Mat(), 0);
+
     public Calibrate3dPipeline(StandardCVPipelineSettings settings) {
         super(settings);
 
@@ -84,7 +86,8 @@ public class Calibrate3dPipeline extends CVPipeline<DriverVisionPipeline.DriverP
         if(!checkerboardFound) {
             Imgproc.cvtColor(inputMat, inputMat, Imgproc.COLOR_GRAY2BGR);
 
-            return new DriverVisionPipeline.DriverPipelineResult(null, inputMat, 0);
+            resultCache.update(null, inputMat, 0);
+            return resultCache;
         }
 
 //        System.out.println("[SolvePNP] checkerboard found!!");
@@ -111,7 +114,8 @@ public class Calibrate3dPipeline extends CVPipeline<DriverVisionPipeline.DriverP
 
         imageSize = new Size(inputMat.width(), inputMat.height());
 
-        return new DriverVisionPipeline.DriverPipelineResult(null, inputMat, 0);
+        resultCache.update(null, inputMat, 0);
+        return resultCache;
     }
 
     @Override
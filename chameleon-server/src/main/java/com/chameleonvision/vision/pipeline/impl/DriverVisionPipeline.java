@@ -1,6 +1,5 @@
 package com.chameleonvision.vision.pipeline.impl;
 
-import com.chameleonvision.util.MemoryManager;
 import com.chameleonvision.vision.camera.CameraCapture;
 import com.chameleonvision.vision.enums.CalibrationMode;
 import com.chameleonvision.vision.pipeline.CVPipeline;
@@ -22,7 +21,7 @@ public class DriverVisionPipeline extends CVPipeline<DriverPipelineResult, CVPip
     private Draw2dCrosshairPipe drawCrosshairPipe;
     private Draw2dCrosshairPipe.Draw2dCrosshairPipeSettings crosshairPipeSettings = new Draw2dCrosshairPipe.Draw2dCrosshairPipeSettings();
 
-    private final MemoryManager memoryManager = new MemoryManager(200, 20000);
+    private final DriverPipelineResult resultCache = new DriverPipelineResult(null, new Mat(), 0);
 
     public DriverVisionPipeline(CVPipelineSettings settings) {
         super(settings);
@@ -39,14 +38,24 @@ public class DriverVisionPipeline extends CVPipeline<DriverPipelineResult, CVPip
 
     @Override
     public DriverPipelineResult runPipeline(Mat inputMat) {
+        if (!renderOutput) {
+            // driver mode only makes a picture, there is nothing to do when nobody is watching
+            resultCache.share(null, outputMat, 0);
+            return resultCache;
+        }
 
         rotateFlipPipe.setConfig(settings.rotationMode, settings.flipMode);
 
         Pair<Mat, Long> rotateFlipResult = rotateFlipPipe.run(inputMat);
         Pair<Mat, Long> draw2dCrosshairResult = drawCrosshairPipe.run(Pair.of(rotateFlipResult.getLeft(),null));
-        memoryManager.run();
 
-        return new DriverPipelineResult(null, draw2dCrosshairResult.getLeft(), 0);
+        resultCache.share(null, draw2dCrosshairResult.getLeft(), 0);
+
+        matArena.persistent(resultCache.outputMat);
+        matArena.persistent(rotateFlipResult.getLeft());
+        matArena.endFrame();
+
+        return resultCache;
     }
 
     public static class DriverPipelineResult extends CVPipelineResult<Void> {
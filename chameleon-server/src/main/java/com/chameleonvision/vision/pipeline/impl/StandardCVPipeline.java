@@ -1,12 +1,18 @@
 package com.chameleonvision.vision.pipeline.impl;
 
 import com.chameleonvision.Main;
-import com.chameleonvision.util.MemoryManager;
 import com.chameleonvision.vision.camera.CameraCapture;
 import com.chameleonvision.vision.camera.CaptureStaticProperties;
+import com.chameleonvision.vision.enums.ThresholdMode;
 import com.chameleonvision.vision.pipeline.CVPipeline;
 import com.chameleonvision.vision.pipeline.CVPipelineResult;
+import com.chameleonvision.vision.pipeline.ConfigStamp;
+import com.chameleonvision.vision.pipeline.ContourFeatures;
+import com.chameleonvision.vision.pipeline.FrameSlot;
+import com.chameleonvision.vision.pipeline.Pipe;
 import com.chameleonvision.vision.pipeline.pipes.*;
+import com.chameleonvision.vision.trace.FrameTrace;
+import com.chameleonvision.vision.trace.TracePoint;
 import edu.wpi.first.wpilibj.geometry.Pose2d;
 import org.apache.commons.lang3.tuple.Pair;
 import org.opencv.core.*;
@@ -18,17 +24,20 @@ import static com.chameleonvision.vision.pipeline.impl.StandardCVPipeline.*;
 @SuppressWarnings("WeakerAccess")
 public class StandardCVPipeline extends CVPipeline<StandardCVPipelineResult, StandardCVPipelineSettings> {
 
-    private Mat rawCameraMat = new Mat();
+    private Mat rawCameraMat = matArena.persistent(new Mat());
 
     private RotateFlipPipe rotateFlipPipe;
+    private RegionOfInterestPipe regionOfInterestPipe;
     private BlurPipe blurPipe;
     private ErodeDilatePipe erodeDilatePipe;
     private HsvPipe hsvPipe;
+    private LutThresholdPipe lutThresholdPipe;
     private FindContoursPipe findContoursPipe;
     private FilterContoursPipe filterContoursPipe;
     private SpeckleRejectPipe speckleRejectPipe;
     private GroupContoursPipe groupContoursPipe;
     private SortContoursPipe sortContoursPipe;
+    private TrackTargetsPipe trackTargetsPipe;
     private Collect2dTargetsPipe collect2dTargetsPipe;
     private Draw2dContoursPipe.Draw2dContoursSettings draw2dContoursSettings;
     private Draw2dContoursPipe draw2dContoursPipe;
@@ -40,7 +49,12 @@ public class StandardCVPipeline extends CVPipeline<StandardCVPipelineResult, Sta
 
     private String pipelineTimeString = "";
     private CaptureStaticProperties camProps;
-    private Scalar hsvLower, hsvUpper;
+    private final Scalar hsvLower = new Scalar(0, 0, 0);
+    private final Scalar hsvUpper = new Scalar(0, 0, 0);
+    // each group of pipes is configured by the stage that runs it, and only when its settings changed
+    private final ConfigStamp thresholdConfig = new ConfigStamp();
+    private final ConfigStamp targetConfig = new ConfigStamp();
+    private final ConfigStamp drawConfig = new ConfigStamp();
 
     public StandardCVPipeline() {
         super(new StandardCVPipelineSettings());
@@ -59,18 +73,21 @@ public class StandardCVPipeline extends CVPipeline<StandardCVPipelineResult, Sta
         super.initPipeline(process);
 
         camProps = cameraCapture.getProperties().getStaticProperties();
-        hsvLower = new Scalar(settings.hue.get(0).intValue(), settings.saturation.get(0).intValue(), settings.value.get(0).intValue());
-        hsvUpper = new Scalar(settings.hue.get(1).intValue(), settings.saturation.get(1).intValue(), settings.value.get(1).intValue());
+        updateHsvBounds(settings);
 
         rotateFlipPipe = new RotateFlipPipe(settings.rotationMode, settings.flipMode);
+        regionOfInterestPipe = new RegionOfInterestPipe(settings.roiEnabled, settings.roiPadding.doubleValue(), settings.roiFullFrameInterval);
         blurPipe = new BlurPipe(5);
-        erodeDilatePipe = new ErodeDilatePipe(settings.erode, settings.dilate, 7);
-        hsvPipe = new HsvPipe(hsvLower, hsvUpper);
-        findContoursPipe = new FindContoursPipe();
+        erodeDilatePipe = new ErodeDilatePipe(settings.erode, settings.dilate, 7, settings.parallelStripes);
+        hsvPipe = new HsvPipe(hsvLower, hsvUpper, settings.parallelStripes);
+        lutThresholdPipe = new LutThresholdPipe(hsvLower, hsvUpper, settings.thresholdMode == ThresholdMode.ExactLut);
+        findContoursPipe = new FindContoursPipe(matArena);
         filterContoursPipe = new FilterContoursPipe(settings.area, settings.ratio, settings.extent, camProps);
         speckleRejectPipe = new SpeckleRejectPipe(settings.speckle.doubleValue());
         groupContoursPipe = new GroupContoursPipe(settings.targetGroup, settings.targetIntersection);
         sortContoursPipe = new SortContoursPipe(settings.sortMode, camProps, 5);
+        trackTargetsPipe = new TrackTargetsPipe(settings.trackTargets, settings.trackCoastFrames, settings.trackGate,
+                settings.trackProcessNoise, settings.trackMeasurementNoise, camProps);
         collect2dTargetsPipe = new Collect2dTargetsPipe(settings.calibrationMode,settings.point,settings.dualTargetCalibrationM,settings.dualTargetCalibrationB, camProps);
         draw2dContoursSettings = new Draw2dContoursPipe.Draw2dContoursSettings();
         draw2dCrosshairPipeSettings = new Draw2dCrosshairPipe.Draw2dCrosshairPipeSettings();
@@ -85,19 +102,28 @@ public class StandardCVPipeline extends CVPipeline<StandardCVPipelineResult, Sta
         draw2dContoursPipe = new Draw2dContoursPipe(draw2dContoursSettings, camProps);
         draw2dCrosshairPipe=new Draw2dCrosshairPipe(draw2dCrosshairPipeSettings,settings.calibrationMode,settings.point,settings.dualTargetCalibrationM,settings.dualTargetCalibrationB);
         outputMatPipe = new OutputMatPipe(settings.isBinary);
-    }
 
-    private final MemoryManager memManager = new MemoryManager(120, 20000);
+        matArena.persistent(resultCache.outputMat);
+        // registered here rather than by the draw stage, the arena belongs to the threshold stage's thread
+        matArena.persistent(outputMatPipe.getOutputMat());
 
-    private StandardCVPipelineResult resultCache = new StandardCVPipelineResult(List.of(), new Mat(), 0L);
+        thresholdConfig.invalidate();
+        targetConfig.invalidate();
+        drawConfig.invalidate();
+    }
 
-    @Override
-    public StandardCVPipelineResult runPipeline(Mat inputMat) {
-        long totalPipelineTimeNanos = 0;
-        long pipelineStartTimeNanos = System.nanoTime();
+    private final StandardCVPipelineResult resultCache = new StandardCVPipelineResult(List.of(), new Mat(), 0L);
 
-        resultCache.release();
+    private void updateHsvBounds(StandardCVPipelineSettings settings) {
+        hsvLower.val[0] = settings.hue.get(0).intValue();
+        hsvLower.val[1] = settings.saturation.get(0).intValue();
+        hsvLower.val[2] = settings.value.get(0).intValue();
+        hsvUpper.val[0] = settings.hue.get(1).intValue();
+        hsvUpper.val[1] = settings.saturation.get(1).intValue();
+        hsvUpper.val[2] = settings.value.get(1).intValue();
+    }
 
+    private void checkReady(StandardCVPipelineSettings settings, Mat inputMat) {
         if (cameraCapture == null) {
             throw new RuntimeException("Pipeline was not initialized before being run!");
         }
@@ -109,101 +135,185 @@ public class StandardCVPipeline extends CVPipeline<StandardCVPipelineResult, Sta
         if (inputMat.cols() <= 1) {
             throw new RuntimeException("Input Mat is empty!");
         }
+    }
 
-        pipelineTimeString = "";
-
-        // prepare pipes
-        camProps = cameraCapture.getProperties().getStaticProperties();
-        hsvLower = new Scalar(settings.hue.get(0).intValue(), settings.saturation.get(0).intValue(), settings.value.get(0).intValue());
-        hsvUpper = new Scalar(settings.hue.get(1).intValue(), settings.saturation.get(1).intValue(), settings.value.get(1).intValue());
+    private void configureThresholdPipes(StandardCVPipelineSettings settings, CaptureStaticProperties camProps) {
+        if (!thresholdConfig.changed(settings, camProps, null, null)) return;
+        updateHsvBounds(settings);
         rotateFlipPipe.setConfig(settings.rotationMode, settings.flipMode);
+        regionOfInterestPipe.setConfig(settings.roiEnabled, settings.roiPadding.doubleValue(), settings.roiFullFrameInterval);
         blurPipe.setConfig(0);
-        erodeDilatePipe.setConfig(settings.erode, settings.dilate, 7);
-        hsvPipe.setConfig(hsvLower, hsvUpper);
+        erodeDilatePipe.setConfig(settings.erode, settings.dilate, 7, settings.parallelStripes);
+        hsvPipe.setConfig(hsvLower, hsvUpper, settings.parallelStripes);
+        lutThresholdPipe.setConfig(hsvLower, hsvUpper, settings.thresholdMode == ThresholdMode.ExactLut);
         filterContoursPipe.setConfig(settings.area, settings.ratio, settings.extent, camProps);
         speckleRejectPipe.setConfig(settings.speckle.doubleValue());
+    }
+
+    private void configureTargetPipes(StandardCVPipelineSettings settings, CaptureStaticProperties camProps) {
+        if (!targetConfig.changed(settings, camProps, cameraCapture.getCurrentCalibrationData(), cameraCapture.getProperties().getTilt())) return;
         groupContoursPipe.setConfig(settings.targetGroup, settings.targetIntersection);
         sortContoursPipe.setConfig(settings.sortMode, camProps, 5);
-        collect2dTargetsPipe = new Collect2dTargetsPipe(settings.calibrationMode,settings.point,settings.dualTargetCalibrationM,settings.dualTargetCalibrationB, camProps);
+        trackTargetsPipe.setConfig(settings.trackTargets, settings.trackCoastFrames, settings.trackGate,
+                settings.trackProcessNoise, settings.trackMeasurementNoise, camProps);
+        collect2dTargetsPipe.setConfig(settings.calibrationMode,settings.point,settings.dualTargetCalibrationM,settings.dualTargetCalibrationB, camProps);
+
+        if(settings.is3D) {
+            if(solvePNPPipe == null) solvePNPPipe = new SolvePNPPipe(settings, cameraCapture.getCurrentCalibrationData(), cameraCapture.getProperties().getTilt());
+            solvePNPPipe.setConfig(settings, cameraCapture.getCurrentCalibrationData(), cameraCapture.getProperties().getTilt());
+        }
+    }
+
+    private void configureDrawPipes(StandardCVPipelineSettings settings, CaptureStaticProperties camProps) {
+        if (!drawConfig.changed(settings, camProps, cameraCapture.getCurrentCalibrationData(), null)) return;
         draw2dContoursPipe.setConfig(settings.multiple, camProps);
         draw2dCrosshairPipe.setConfig(draw2dCrosshairPipeSettings,settings.calibrationMode,settings.point,settings.dualTargetCalibrationM,settings.dualTargetCalibrationB);
         outputMatPipe.setConfig(settings.isBinary);
 
         if(settings.is3D) {
-            if(solvePNPPipe == null) solvePNPPipe = new SolvePNPPipe(settings, cameraCapture.getCurrentCalibrationData(), cameraCapture.getProperties().getTilt());
             if(drawSolvePNPPipe == null) drawSolvePNPPipe = new DrawSolvePNPPipe(cameraCapture.getCurrentCalibrationData());
-
-            solvePNPPipe.setConfig(settings, cameraCapture.getCurrentCalibrationData(), cameraCapture.getProperties().getTilt());
             drawSolvePNPPipe.setConfig(cameraCapture.getCurrentCalibrationData());
-
         }
+    }
+
+    /**
+     * @return when the frame was grabbed, or now if whoever runs the pipeline didn't say
+     */
+    private static long frameTimestamp(FrameTrace trace) {
+        long grabNanos = trace.getGrabNanos();
+        return grabNanos > 0 ? grabNanos : System.nanoTime();
+    }
+
+    private Pipe<Mat, Mat> thresholdPipe(StandardCVPipelineSettings settings) {
+        return settings.thresholdMode == null || settings.thresholdMode == ThresholdMode.Hsv ? hsvPipe : lutThresholdPipe;
+    }
+
+    @Override
+    public StandardCVPipelineResult runPipeline(Mat inputMat) {
+        long totalPipelineTimeNanos = 0;
+        long pipelineStartTimeNanos = System.nanoTime();
+        // the same settings for the whole frame, even if they are replaced meanwhile
+        StandardCVPipelineSettings settings = this.settings;
+
+        checkReady(settings, inputMat);
+
+        pipelineTimeString = "";
+
+        // prepare pipes
+        camProps = cameraCapture.getProperties().getStaticProperties();
+        configureThresholdPipes(settings, camProps);
+        configureTargetPipes(settings, camProps);
+        configureDrawPipes(settings, camProps);
 
         long pipeInitTimeNanos = System.nanoTime() - pipelineStartTimeNanos;
 
+        FrameTrace trace = frameTrace;
+
         // run pipes
         Pair<Mat, Long> rotateFlipResult = rotateFlipPipe.run(inputMat);
         totalPipelineTimeNanos += rotateFlipResult.getRight();
+        trace.mark(TracePoint.RotateFlip);
+
+        if (renderOutput) {
+            inputMat.copyTo(rawCameraMat);
+        }
 
-        inputMat.copyTo(rawCameraMat);
+        Pair<Mat, Long> roiResult = regionOfInterestPipe.run(rotateFlipResult.getLeft());
+        totalPipelineTimeNanos += roiResult.getRight();
+        findContoursPipe.setConfig(regionOfInterestPipe.getOffset());
 
-//        Pair<Mat, Long> blurResult = blurPipe.run(rotateFlipResult.getLeft());
+//        Pair<Mat, Long> blurResult = blurPipe.run(roiResult.getLeft());
 //        totalPipelineTimeNanos += blurResult.getRight();
 
-        Pair<Mat, Long> erodeDilateResult = erodeDilatePipe.run(rotateFlipResult.getLeft());
+        Pair<Mat, Long> erodeDilateResult = erodeDilatePipe.run(roiResult.getLeft());
         totalPipelineTimeNanos += erodeDilateResult.getRight();
+        trace.mark(TracePoint.ErodeDilate);
 
-        Pair<Mat, Long> hsvResult = hsvPipe.run(erodeDilateResult.getLeft());
+        Pair<Mat, Long> hsvResult = thresholdPipe(settings).run(erodeDilateResult.getLeft());
         totalPipelineTimeNanos += hsvResult.getRight();
+        trace.mark(TracePoint.Hsv);
 
         Pair<List<MatOfPoint>, Long> findContoursResult = findContoursPipe.run(hsvResult.getLeft());
         totalPipelineTimeNanos += findContoursResult.getRight();
+        trace.mark(TracePoint.FindContours);
 
-        Pair<List<MatOfPoint>, Long> filterContoursResult = filterContoursPipe.run(findContoursResult.getLeft());
+        Pair<List<ContourFeatures>, Long> filterContoursResult = filterContoursPipe.run(findContoursResult.getLeft());
         totalPipelineTimeNanos += filterContoursResult.getRight();
+        trace.mark(TracePoint.FilterContours);
 
-        Pair<List<MatOfPoint>, Long> speckleRejectResult = speckleRejectPipe.run(filterContoursResult.getLeft());
+        Pair<List<ContourFeatures>, Long> speckleRejectResult = speckleRejectPipe.run(filterContoursResult.getLeft());
         totalPipelineTimeNanos += speckleRejectResult.getRight();
+        trace.mark(TracePoint.SpeckleReject);
 
         Pair<List<TrackedTarget>, Long> groupContoursResult = groupContoursPipe.run(speckleRejectResult.getLeft());
         totalPipelineTimeNanos += groupContoursResult.getRight();
+        trace.mark(TracePoint.GroupContours);
 
         Pair<List<TrackedTarget>, Long> sortContoursResult = sortContoursPipe.run(groupContoursResult.getLeft());
         totalPipelineTimeNanos += sortContoursResult.getRight();
+        trace.mark(TracePoint.SortContours);
 
-        Pair<List<TrackedTarget>, Long> collect2dTargetsResult = collect2dTargetsPipe.run(Pair.of(sortContoursResult.getLeft(), camProps));
-        totalPipelineTimeNanos += collect2dTargetsResult.getRight();
-
-        // takes pair of (Mat of original camera image (8UC3), Mat of HSV thresholded image(8UC1))
-        Pair<Mat, Long> outputMatResult = outputMatPipe.run(Pair.of(rawCameraMat, hsvResult.getLeft()));
-        totalPipelineTimeNanos += outputMatResult.getRight();
-
-        Pair<Mat, Long> result;
+        Pair<List<TrackedTarget>, Long> trackTargetsResult = trackTargetsPipe.run(Pair.of(sortContoursResult.getLeft(), frameTimestamp(trace)));
+        totalPipelineTimeNanos += trackTargetsResult.getRight();
+        trace.mark(TracePoint.TrackTargets);
 
-        if(!settings.is3D) {
-            // takes pair of (Mat to draw on, List<RotatedRect> of sorted contours)
-            result = draw2dContoursPipe.run(Pair.of(outputMatResult.getLeft(), sortContoursResult.getLeft()));
-            totalPipelineTimeNanos += result.getRight();
-        } else {
-            result = outputMatResult;
-        }
-
-        // takes pair of (Mat to draw on, List<RotatedRect> of sorted contours)
-        Pair<Mat, Long> draw2dCrosshairResult = draw2dCrosshairPipe.run(Pair.of(result.getLeft(),collect2dTargetsResult.getLeft()));
-        totalPipelineTimeNanos += draw2dCrosshairResult.getRight();
+        Pair<List<TrackedTarget>, Long> collect2dTargetsResult = collect2dTargetsPipe.run(Pair.of(trackTargetsResult.getLeft(), camProps));
+        totalPipelineTimeNanos += collect2dTargetsResult.getRight();
+        trace.mark(TracePoint.Collect2dTargets);
 
-        Mat outputMat;
+        regionOfInterestPipe.update(collect2dTargetsResult.getLeft(), regionOfInterestPipe.getLastRoi());
 
-        if(settings.is3D) {
+        Pair<List<TrackedTarget>, Long> solvePNPResult = null;
+        if (settings.is3D) {
             // once we've sorted our targets, perform solvePNP. The number of "best targets" is limited by the above pipe
-            Pair<List<TrackedTarget>, Long> solvePNPResult = solvePNPPipe.run(collect2dTargetsResult.getLeft());
+            solvePNPResult = solvePNPPipe.run(collect2dTargetsResult.getLeft());
             totalPipelineTimeNanos += solvePNPResult.getRight();
+            trace.mark(TracePoint.SolvePNP);
+            trackTargetsPipe.rememberPoses();
+        }
+
+        if (targetsListener != null) {
+            resultCache.updateTargets(collect2dTargetsResult.getLeft(), totalPipelineTimeNanos);
+            targetsListener.accept(resultCache);
+        }
 
-            Pair<Mat, Long> draw3dContoursResult = drawSolvePNPPipe.run(Pair.of(outputMatResult.getLeft(), solvePNPResult.getLeft()));
-            totalPipelineTimeNanos += draw3dContoursResult.getRight();
+        // with nobody watching the stream there is nothing to draw on
+        Pair<Mat, Long> skippedResult = Pair.of(this.outputMat, 0L);
+        Pair<Mat, Long> outputMatResult = skippedResult;
+        Pair<Mat, Long> result = skippedResult;
+        Pair<Mat, Long> draw2dCrosshairResult = skippedResult;
+        Mat outputMat = this.outputMat;
+
+        if (renderOutput) {
+            // takes pair of (Mat of original camera image (8UC3), Mat of HSV thresholded image(8UC1))
+            Mat thresholdMat = regionOfInterestPipe.toFullFrame(hsvResult.getLeft());
+            outputMatResult = outputMatPipe.run(Pair.of(rawCameraMat, thresholdMat));
+            totalPipelineTimeNanos += outputMatResult.getRight();
+            trace.mark(TracePoint.OutputMat);
+
+            if (!settings.is3D) {
+                // takes pair of (Mat to draw on, List<RotatedRect> of sorted contours)
+                result = draw2dContoursPipe.run(Pair.of(outputMatResult.getLeft(), collect2dTargetsResult.getLeft()));
+                totalPipelineTimeNanos += result.getRight();
+                trace.mark(TracePoint.Draw2dContours);
+            } else {
+                result = outputMatResult;
+            }
 
-            outputMat = draw3dContoursResult.getLeft();
-        } else {
-            outputMat = draw2dCrosshairResult.getLeft();
+            // takes pair of (Mat to draw on, List<RotatedRect> of sorted contours)
+            draw2dCrosshairResult = draw2dCrosshairPipe.run(Pair.of(result.getLeft(), collect2dTargetsResult.getLeft()));
+            totalPipelineTimeNanos += draw2dCrosshairResult.getRight();
+            trace.mark(TracePoint.Draw2dCrosshair);
+
+            if (settings.is3D) {
+                Pair<Mat, Long> draw3dContoursResult = drawSolvePNPPipe.run(Pair.of(outputMatResult.getLeft(), solvePNPResult.getLeft()));
+                totalPipelineTimeNanos += draw3dContoursResult.getRight();
+                trace.mark(TracePoint.DrawSolvePNP);
+
+                outputMat = draw3dContoursResult.getLeft();
+            } else {
+                outputMat = draw2dCrosshairResult.getLeft();
+            }
         }
 
         if (Main.testMode) {
@@ -231,12 +341,150 @@ public class StandardCVPipeline extends CVPipeline<StandardCVPipelineResult, Sta
             System.out.printf("full pipeline run time was %.3fms (%.2fFPS)\n", truePipelineTimeMillis, truePipelineFPS);
         }
 
-        memManager.run();
+        resultCache.share(collect2dTargetsResult.getLeft(), outputMat, totalPipelineTimeNanos);
+
+        // the Mats handed back by the pipes are their own buffers, reused every frame
+        matArena.persistent(rotateFlipResult.getLeft());
+        matArena.persistent(erodeDilateResult.getLeft());
+        matArena.persistent(hsvResult.getLeft());
+        matArena.endFrame();
 
-        resultCache = new StandardCVPipelineResult(collect2dTargetsResult.getLeft(), outputMat, totalPipelineTimeNanos);
         return resultCache;
     }
 
+    @Override
+    public void runThresholdStage(FrameSlot slot) {
+        StandardCVPipelineSettings settings = (StandardCVPipelineSettings) slot.settings;
+        checkReady(settings, slot.inputMat);
+        FrameTrace trace = slot.trace;
+        slot.camProps = cameraCapture.getProperties().getStaticProperties();
+        configureThresholdPipes(settings, slot.camProps);
+
+        long stageTimeNanos = 0;
+
+        Pair<Mat, Long> rotateFlipResult = rotateFlipPipe.run(slot.inputMat);
+        stageTimeNanos += rotateFlipResult.getRight();
+        trace.mark(TracePoint.RotateFlip);
+
+        // erode/dilate may work in place, keep the unprocessed frame for the draw stage
+        if (slot.render) {
+            slot.inputMat.copyTo(slot.rawMat);
+        }
+
+        Pair<Mat, Long> roiResult = regionOfInterestPipe.run(slot.inputMat);
+        stageTimeNanos += roiResult.getRight();
+        findContoursPipe.setConfig(regionOfInterestPipe.getOffset());
+        slot.roi = regionOfInterestPipe.getLastRoi();
+
+        Pair<Mat, Long> erodeDilateResult = erodeDilatePipe.run(roiResult.getLeft());
+        stageTimeNanos += erodeDilateResult.getRight();
+        trace.mark(TracePoint.ErodeDilate);
+
+        Pair<Mat, Long> hsvResult = thresholdPipe(settings).run(erodeDilateResult.getLeft());
+        stageTimeNanos += hsvResult.getRight();
+        trace.mark(TracePoint.Hsv);
+        if (slot.render) {
+            regionOfInterestPipe.toFullFrame(hsvResult.getLeft()).copyTo(slot.thresholdMat);
+        }
+
+        Pair<List<MatOfPoint>, Long> findContoursResult = findContoursPipe.run(hsvResult.getLeft());
+        stageTimeNanos += findContoursResult.getRight();
+        trace.mark(TracePoint.FindContours);
+
+        Pair<List<ContourFeatures>, Long> filterContoursResult = filterContoursPipe.run(findContoursResult.getLeft());
+        stageTimeNanos += filterContoursResult.getRight();
+        trace.mark(TracePoint.FilterContours);
+
+        Pair<List<ContourFeatures>, Long> speckleRejectResult = speckleRejectPipe.run(filterContoursResult.getLeft());
+        stageTimeNanos += speckleRejectResult.getRight();
+        trace.mark(TracePoint.SpeckleReject);
+
+        // the found contours are released when the frame ends, the next stage works on the slot's copies
+        slot.setContours(speckleRejectResult.getLeft());
+        slot.processTimeNanos += stageTimeNanos;
+
+        matArena.persistent(hsvResult.getLeft());
+        matArena.endFrame();
+    }
+
+    @Override
+    public void runTargetStage(FrameSlot slot) {
+        StandardCVPipelineSettings settings = (StandardCVPipelineSettings) slot.settings;
+        configureTargetPipes(settings, slot.camProps);
+        FrameTrace trace = slot.trace;
+
+        long stageTimeNanos = 0;
+
+        Pair<List<TrackedTarget>, Long> groupContoursResult = groupContoursPipe.run(slot.contours);
+        stageTimeNanos += groupContoursResult.getRight();
+        trace.mark(TracePoint.GroupContours);
+
+        Pair<List<TrackedTarget>, Long> sortContoursResult = sortContoursPipe.run(groupContoursResult.getLeft());
+        stageTimeNanos += sortContoursResult.getRight();
+        trace.mark(TracePoint.SortContours);
+
+        Pair<List<TrackedTarget>, Long> trackTargetsResult = trackTargetsPipe.run(Pair.of(sortContoursResult.getLeft(), slot.imageTimestamp));
+        stageTimeNanos += trackTargetsResult.getRight();
+        trace.mark(TracePoint.TrackTargets);
+
+        Pair<List<TrackedTarget>, Long> collect2dTargetsResult = collect2dTargetsPipe.run(Pair.of(trackTargetsResult.getLeft(), slot.camProps));
+        stageTimeNanos += collect2dTargetsResult.getRight();
+        trace.mark(TracePoint.Collect2dTargets);
+
+        List<TrackedTarget> poseTargets = List.of();
+        if (settings.is3D) {
+            Pair<List<TrackedTarget>, Long> solvePNPResult = solvePNPPipe.run(collect2dTargetsResult.getLeft());
+            stageTimeNanos += solvePNPResult.getRight();
+            trace.mark(TracePoint.SolvePNP);
+            trackTargetsPipe.rememberPoses();
+            poseTargets = solvePNPResult.getLeft();
+        }
+
+        regionOfInterestPipe.update(collect2dTargetsResult.getLeft(), slot.roi);
+
+        slot.setTargets(collect2dTargetsResult.getLeft(), poseTargets);
+        slot.processTimeNanos += stageTimeNanos;
+        slot.standardResult.updateTargets(slot.targets, slot.processTimeNanos);
+        slot.result = slot.standardResult;
+    }
+
+    @Override
+    public void runDrawStage(FrameSlot slot) {
+        if (!slot.render) {
+            return;
+        }
+        StandardCVPipelineSettings settings = (StandardCVPipelineSettings) slot.settings;
+        configureDrawPipes(settings, slot.camProps);
+        FrameTrace trace = slot.trace;
+
+        long stageTimeNanos = 0;
+
+        Pair<Mat, Long> outputMatResult = outputMatPipe.run(Pair.of(slot.rawMat, slot.thresholdMat));
+        stageTimeNanos += outputMatResult.getRight();
+        trace.mark(TracePoint.OutputMat);
+
+        if (!settings.is3D) {
+            stageTimeNanos += draw2dContoursPipe.run(Pair.of(outputMatResult.getLeft(), slot.targets)).getRight();
+            trace.mark(TracePoint.Draw2dContours);
+        }
+
+        stageTimeNanos += draw2dCrosshairPipe.run(Pair.of(outputMatResult.getLeft(), slot.targets)).getRight();
+        trace.mark(TracePoint.Draw2dCrosshair);
+
+        if (settings.is3D) {
+            stageTimeNanos += drawSolvePNPPipe.run(Pair.of(outputMatResult.getLeft(), slot.poseTargets)).getRight();
+            trace.mark(TracePoint.DrawSolvePNP);
+        }
+
+        slot.processTimeNanos += stageTimeNanos;
+        // streamed by this same thread before the draw stage runs again
+        slot.standardResult.share(slot.targets, outputMatResult.getLeft(), slot.processTimeNanos);
+    }
+
+    public RegionOfInterestPipe getRegionOfInterestPipe() {
+        return regionOfInterestPipe;
+    }
+
     public static class StandardCVPipelineResult extends CVPipelineResult<TrackedTarget> {
         public StandardCVPipelineResult(List<TrackedTarget> targets, Mat outputMat, long processTimeNanos) {
             super(targets, outputMat, processTimeNanos);
@@ -244,11 +492,13 @@ public class StandardCVPipeline extends CVPipeline<StandardCVPipelineResult, Sta
 
         public void release() {
             targets.forEach(TrackedTarget::release);
-            outputMat.release();
+            ownedOutputMat.release();
         }
     }
 
     public static class TrackedTarget {
+        private static final Pose2d EMPTY_POSE = new Pose2d();
+
         public double calibratedX = 0.0;
         public double calibratedY = 0.0;
         public double pitch = 0.0;
@@ -256,6 +506,17 @@ public class StandardCVPipeline extends CVPipeline<StandardCVPipelineResult, Sta
         public double area = 0.0;
         public RotatedRect minAreaRect;
 
+        // set by TrackTargetsPipe, -1 if the target isn't tracked
+        public int trackId = -1;
+        // in pixels per second
+        public double velocityX = 0.0;
+        public double velocityY = 0.0;
+        // in degrees per second
+        public double pitchVelocity = 0.0;
+        public double yawVelocity = 0.0;
+        // the target wasn't seen this frame, this is where its track predicts it is
+        public boolean predicted = false;
+
         // 3d stuff
         public Pose2d cameraRelativePose = new Pose2d();
         public Mat rVector = new Mat();
@@ -264,6 +525,52 @@ public class StandardCVPipeline extends CVPipeline<StandardCVPipelineResult, Sta
         public Pair<Rect, Rect> leftRightDualTargetPair = null;
         public Pair<RotatedRect, RotatedRect> leftRightRotatedRect = null;
 
+        /**
+         * Clears the per-frame values so a pooled target can be handed out again.
+         * The Mats are kept, they get overwritten by the pipes that fill them.
+         */
+        public void reset() {
+            calibratedX = 0.0;
+            calibratedY = 0.0;
+            pitch = 0.0;
+            yaw = 0.0;
+            area = 0.0;
+            minAreaRect = null;
+            trackId = -1;
+            velocityX = 0.0;
+            velocityY = 0.0;
+            pitchVelocity = 0.0;
+            yawVelocity = 0.0;
+            predicted = false;
+            cameraRelativePose = EMPTY_POSE;
+            leftRightDualTargetPair = null;
+            leftRightRotatedRect = null;
+        }
+
+        /**
+         * Copies this target into another one, the Mats are deep copied so the copy outlives this frame's pipe buffers.
+         */
+        public void copyTo(TrackedTarget other) {
+            other.calibratedX = calibratedX;
+            other.calibratedY = calibratedY;
+            other.pitch = pitch;
+            other.yaw = yaw;
+            other.area = area;
+            other.minAreaRect = minAreaRect;
+            other.trackId = trackId;
+            other.velocityX = velocityX;
+            other.velocityY = velocityY;
+            other.pitchVelocity = pitchVelocity;
+            other.yawVelocity = yawVelocity;
+            other.predicted = predicted;
+            other.cameraRelativePose = cameraRelativePose;
+            rVector.copyTo(other.rVector);
+            tVector.copyTo(other.tVector);
+            imageCornerPoints.copyTo(other.imageCornerPoints);
+            other.leftRightDualTargetPair = leftRightDualTargetPair;
+            other.leftRightRotatedRect = leftRightRotatedRect;
+        }
+
         public void release() {
             rVector.release();
             tVector.release();
@@ -4,6 +4,7 @@ import com.chameleonvision.vision.enums.CalibrationMode;
 import com.chameleonvision.vision.enums.SortMode;
 import com.chameleonvision.vision.enums.TargetGroup;
 import com.chameleonvision.vision.enums.TargetIntersection;
+import com.chameleonvision.vision.enums.ThresholdMode;
 import com.chameleonvision.vision.pipeline.CVPipelineSettings;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import edu.wpi.first.wpilibj.util.Units;
@@ -19,8 +20,11 @@ public class StandardCVPipelineSettings extends CVPipelineSettings {
     public List<Number> hue = Arrays.asList(50, 180);
     public List<Number> saturation = Arrays.asList(50, 255);
     public List<Number> value = Arrays.asList(50, 255);
+    public ThresholdMode thresholdMode = ThresholdMode.Hsv;
     public boolean erode = false;
     public boolean dilate = false;
+    // how many horizontal stripes HSV thresholding and erode/dilate are split into and run in parallel, 1 to not split
+    public int parallelStripes = 1;
     public List<Number> area = Arrays.asList(0.0, 100.0);
     public List<Number> ratio = Arrays.asList(0.0, 20.0);
     public List<Number> extent = Arrays.asList(0, 100);
@@ -35,6 +39,21 @@ public class StandardCVPipelineSettings extends CVPipelineSettings {
     public double dualTargetCalibrationM = 1;
     public double dualTargetCalibrationB = 0;
 
+    // only threshold a window around the last targets, see RegionOfInterestPipe
+    public boolean roiEnabled = false;
+    public Number roiPadding = 50;
+    public int roiFullFrameInterval = 30;
+
+    // follow targets across frames, smoothing them and carrying them through short dropouts, see TrackTargetsPipe
+    public boolean trackTargets = false;
+    public int trackCoastFrames = 5;
+    // fraction of the image width
+    public double trackGate = 0.1;
+    // pixels per second squared
+    public double trackProcessNoise = 2000;
+    // pixels
+    public double trackMeasurementNoise = 2;
+
     // 3d stuff
     public double targetWidth = 15.5, targetHeight = 6.0;
 
@@ -64,6 +64,9 @@ public class Collect2dTargetsPipe implements Pipe<Pair<List<StandardCVPipeline.T
                 t.pitch = calculatePitch(t.minAreaRect.center.y, t.calibratedY);
                 t.yaw = calculateYaw(t.minAreaRect.center.x, t.calibratedX);
                 t.area = t.minAreaRect.size.area() / imageArea;
+                // the tracker's velocity is in pixels per second, turn it into how fast the angles change right here
+                t.pitchVelocity = calculatePitchVelocity(t.minAreaRect.center.y, t.calibratedY, t.velocityY);
+                t.yawVelocity = calculateYawVelocity(t.minAreaRect.center.x, t.calibratedX, t.velocityX);
 
                 targets.add(t);
             }
@@ -81,4 +84,22 @@ public class Collect2dTargetsPipe implements Pipe<Pair<List<StandardCVPipeline.T
     private double calculateYaw(double pixelX, double centerX) {
         return FastMath.toDegrees(FastMath.atan((pixelX - centerX) / camProps.horizontalFocalLength));
     }
+
+    /**
+     * @return the derivative of {@link #calculatePitch} at pixelY, times the velocity, in degrees per second
+     */
+    private double calculatePitchVelocity(double pixelY, double centerY, double velocityY) {
+        return -angularVelocity(pixelY - centerY, velocityY, camProps.verticalFocalLength);
+    }
+
+    private double calculateYawVelocity(double pixelX, double centerX, double velocityX) {
+        return angularVelocity(pixelX - centerX, velocityX, camProps.horizontalFocalLength);
+    }
+
+    /**
+     * d/dt atan(offset / focalLength) = focalLength / (focalLength^2 + offset^2) * d(offset)/dt
+     */
+    private static double angularVelocity(double offset, double velocity, double focalLength) {
+        return FastMath.toDegrees(velocity * focalLength / (focalLength * focalLength + offset * offset));
+    }
 }
@@ -1,51 +1,104 @@
 package com.chameleonvision.vision.pipeline.pipes;
 
+import com.chameleonvision.util.ParallelStripes;
 import com.chameleonvision.vision.pipeline.Pipe;
 import org.apache.commons.lang3.tuple.Pair;
 import org.opencv.core.Mat;
 import org.opencv.core.Size;
 import org.opencv.imgproc.Imgproc;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public class ErodeDilatePipe implements Pipe<Mat, Mat> {
 
     private boolean erode;
     private boolean dilate;
+    private int kernelSize;
     private Mat kernel;
+    private int stripeCount;
 
-    public ErodeDilatePipe(boolean erode, boolean dilate, int kernelSize) {
-        this.erode = erode;
-        this.dilate = dilate;
-        kernel = Imgproc.getStructuringElement(Imgproc.MORPH_RECT, new Size(kernelSize, kernelSize));
+    private Mat outputMat = new Mat();
+    private List<Mat> stripeBuffers = new ArrayList<>();
+
+    public ErodeDilatePipe(boolean erode, boolean dilate, int kernelSize, int stripeCount) {
+        setConfig(erode, dilate, kernelSize, stripeCount);
     }
 
-    public void setConfig(boolean erode, boolean dilate, int kernelSize) {
+    /**
+     * @param stripeCount how many horizontal stripes of the image to process in parallel, 1 to work in place on the calling thread
+     */
+    public void setConfig(boolean erode, boolean dilate, int kernelSize, int stripeCount) {
         this.erode = erode;
         this.dilate = dilate;
-        kernel = Imgproc.getStructuringElement(Imgproc.MORPH_RECT, new Size(kernelSize, kernelSize));
+        this.stripeCount = stripeCount;
+        if (kernel == null || this.kernelSize != kernelSize) {
+            this.kernelSize = kernelSize;
+            kernel = Imgproc.getStructuringElement(Imgproc.MORPH_RECT, new Size(kernelSize, kernelSize));
+        }
     }
 
     @Override
     public Pair<Mat, Long> run(Mat input) {
         long processStartNanos = System.nanoTime();
 
+        Mat output = input;
         if (erode || dilate) {
-//            input.copyTo(processBuffer);
+            if (stripeCount <= 1 || input.rows() < stripeCount) {
+                if (erode) {
+                    Imgproc.erode(input, input, kernel);
+                }
 
-            if (erode) {
-                Imgproc.erode(input, input, kernel);
+                if (dilate) {
+                    Imgproc.dilate(input, input, kernel);
+                }
+            } else {
+                runStriped(input);
+                output = outputMat;
             }
+        }
 
-            if (dilate) {
-                Imgproc.dilate(input, input, kernel);
-            }
+        long processTime = System.nanoTime() - processStartNanos;
+        return Pair.of(output, processTime);
+    }
+
+    /**
+     * Every stripe is processed together with the rows around it that the kernel reaches into, then only its own rows
+     * are copied to the output. The input is not modified, since other stripes still read their overlap from it.
+     */
+    private void runStriped(Mat input) {
+        int rows = input.rows();
+        int cols = input.cols();
+        int overlap = (kernelSize / 2) * ((erode ? 1 : 0) + (dilate ? 1 : 0));
 
-//            processBuffer.copyTo(outputMat);
-//            processBuffer.release();
-        } else {
-//            input.copyTo(outputMat);
+        outputMat.create(rows, cols, input.type());
+        while (stripeBuffers.size() < stripeCount) {
+            stripeBuffers.add(new Mat());
         }
 
-        long processTime = System.nanoTime() - processStartNanos;
-        return Pair.of(input, processTime);
+        ParallelStripes.forEach(stripeCount, stripe -> {
+            int top = ParallelStripes.stripeStart(rows, stripeCount, stripe);
+            int bottom = ParallelStripes.stripeStart(rows, stripeCount, stripe + 1);
+            int paddedTop = Math.max(0, top - overlap);
+            int paddedBottom = Math.min(rows, bottom + overlap);
+
+            Mat buffer = stripeBuffers.get(stripe);
+            Mat inputStripe = input.submat(paddedTop, paddedBottom, 0, cols);
+            if (erode) {
+                Imgproc.erode(inputStripe, buffer, kernel);
+            } else {
+                inputStripe.copyTo(buffer);
+            }
+            if (dilate) {
+                Imgproc.dilate(buffer, buffer, kernel);
+            }
+
+            Mat processedRows = buffer.rowRange(top - paddedTop, bottom - paddedTop);
+            Mat outputStripe = outputMat.submat(top, bottom, 0, cols);
+            processedRows.copyTo(outputStripe);
+            inputStripe.release();
+            processedRows.release();
+            outputStripe.release();
+        });
     }
 }
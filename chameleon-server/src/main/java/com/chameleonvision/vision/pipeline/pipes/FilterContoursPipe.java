@@ -2,24 +2,23 @@ package com.chameleonvision.vision.pipeline.pipes;
 
 import com.chameleonvision.vision.camera.CaptureStaticProperties;
 import com.chameleonvision.util.MathHandler;
+import com.chameleonvision.vision.pipeline.ContourFeatures;
 import com.chameleonvision.vision.pipeline.Pipe;
 import org.apache.commons.lang3.tuple.Pair;
 import org.opencv.core.MatOfPoint;
-import org.opencv.core.MatOfPoint2f;
-import org.opencv.core.Rect;
-import org.opencv.imgproc.Imgproc;
 
 import java.util.ArrayList;
 import java.util.List;
 
-public class FilterContoursPipe implements Pipe<List<MatOfPoint>, List<MatOfPoint>> {
+public class FilterContoursPipe implements Pipe<List<MatOfPoint>, List<ContourFeatures>> {
 
     private List<Number> area;
     private List<Number> ratio;
     private List<Number> extent;
     private CaptureStaticProperties camProps;
 
-    private List<MatOfPoint> filteredContours = new ArrayList<>();
+    private List<ContourFeatures> filteredContours = new ArrayList<>();
+    private List<ContourFeatures> featuresPool = new ArrayList<>();
 
     public FilterContoursPipe(List<Number> area, List<Number> ratio, List<Number> extent, CaptureStaticProperties camProps) {
         this.area = area;
@@ -36,33 +35,41 @@ public class FilterContoursPipe implements Pipe<List<MatOfPoint>, List<MatOfPoin
     }
 
     @Override
-    public Pair<List<MatOfPoint>, Long> run(List<MatOfPoint> input) {
+    public Pair<List<ContourFeatures>, Long> run(List<MatOfPoint> input) {
         long processStartNanos = System.nanoTime();
 
         filteredContours.clear();
 
         if (input.size() > 0) {
-            for (MatOfPoint Contour : input) {
+            double minArea = (MathHandler.sigmoid(area.get(0)));
+            double maxArea = (MathHandler.sigmoid(area.get(1)));
+            double minExtent = extent.get(0).doubleValue();
+            double maxExtent = extent.get(1).doubleValue();
+            double minRatio = ratio.get(0).doubleValue();
+            double maxRatio = ratio.get(1).doubleValue();
+
+            while (featuresPool.size() < input.size()) {
+                featuresPool.add(new ContourFeatures());
+            }
+
+            // cheapest checks first, the features only measure what they are asked for
+            for (int i = 0; i < input.size(); i++) {
+                ContourFeatures features = featuresPool.get(i);
+                features.set(input.get(i));
                 try {
-                    double contourArea = Imgproc.contourArea(Contour);
-                    double AreaRatio = (contourArea / camProps.imageArea) * 100;
-                    double minArea = (MathHandler.sigmoid(area.get(0)));
-                    double maxArea = (MathHandler.sigmoid(area.get(1)));
+                    double AreaRatio = (features.getArea() / camProps.imageArea) * 100;
                     if (AreaRatio < minArea || AreaRatio > maxArea) {
                         continue;
                     }
-                    var rect = Imgproc.minAreaRect(new MatOfPoint2f(Contour.toArray()));
-                    double minExtent = (extent.get(0).doubleValue() * rect.size.area()) / 100;
-                    double maxExtent = (extent.get(1).doubleValue() * rect.size.area()) / 100;
-                    if (contourArea <= minExtent || contourArea >= maxExtent) {
+                    double contourExtent = features.getExtent();
+                    if (contourExtent <= minExtent || contourExtent >= maxExtent) {
                         continue;
                     }
-                    Rect bb = Imgproc.boundingRect(Contour);
-                    double aspectRatio = ((double)bb.width / bb.height);
-                    if (aspectRatio < ratio.get(0).doubleValue() || aspectRatio > ratio.get(1).doubleValue()) {
+                    double aspectRatio = features.getAspectRatio();
+                    if (aspectRatio < minRatio || aspectRatio > maxRatio) {
                         continue;
                     }
-                    filteredContours.add(Contour);
+                    filteredContours.add(features);
                 } catch (Exception e) {
                     System.err.println("Error while filtering contours");
                     e.printStackTrace();
@@ -1,9 +1,11 @@
 package com.chameleonvision.vision.pipeline.pipes;
 
+import com.chameleonvision.util.MatArena;
 import com.chameleonvision.vision.pipeline.Pipe;
 import org.apache.commons.lang3.tuple.Pair;
 import org.opencv.core.Mat;
 import org.opencv.core.MatOfPoint;
+import org.opencv.core.Point;
 import org.opencv.imgproc.Imgproc;
 
 import java.util.ArrayList;
@@ -12,16 +14,50 @@ import java.util.List;
 public class FindContoursPipe implements Pipe<Mat, List<MatOfPoint>> {
 
     private List<MatOfPoint> foundContours = new ArrayList<>();
+    private Mat hierarchy = new Mat();
+    private Point offset = new Point(0, 0);
 
-    public FindContoursPipe() {}
+    private final MatArena contourArena;
+    private final boolean ownsArena;
+
+    /**
+     * The found contours are released by this pipe at the start of the next run.
+     */
+    public FindContoursPipe() {
+        contourArena = new MatArena();
+        ownsArena = true;
+    }
+
+    /**
+     * The found contours are registered as frame Mats in the pipeline's arena, and released when the frame ends.
+     */
+    public FindContoursPipe(MatArena arena) {
+        contourArena = arena;
+        ownsArena = false;
+        contourArena.persistent(hierarchy);
+    }
+
+    /**
+     * @param offset added to every contour point, for finding contours in a window of a larger frame
+     */
+    public void setConfig(Point offset) {
+        this.offset = offset;
+    }
 
     @Override
     public Pair<List<MatOfPoint>, Long> run(Mat input) {
         long processStartNanos = System.nanoTime();
 
+        if (ownsArena) {
+            contourArena.endFrame();
+        }
         foundContours.clear();
 
-        Imgproc.findContours(input, foundContours, new Mat(), Imgproc.RETR_EXTERNAL, Imgproc.CHAIN_APPROX_TC89_L1);
+        Imgproc.findContours(input, foundContours, hierarchy, Imgproc.RETR_EXTERNAL, Imgproc.CHAIN_APPROX_TC89_L1, offset);
+
+        for (int i = 0; i < foundContours.size(); i++) {
+            contourArena.frame(foundContours.get(i));
+        }
 
         long processTime = System.nanoTime() - processStartNanos;
         return Pair.of(foundContours, processTime);
@@ -3,29 +3,28 @@ package com.chameleonvision.vision.pipeline.pipes;
 import com.chameleonvision.util.MathHandler;
 import com.chameleonvision.vision.enums.TargetGroup;
 import com.chameleonvision.vision.enums.TargetIntersection;
+import com.chameleonvision.vision.pipeline.ContourFeatures;
 import com.chameleonvision.vision.pipeline.Pipe;
 import com.chameleonvision.vision.pipeline.impl.StandardCVPipeline;
 import org.apache.commons.lang3.tuple.Pair;
 import org.opencv.core.*;
 import org.opencv.imgproc.Imgproc;
-import org.opencv.imgproc.Moments;
 
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.List;
 
-public class GroupContoursPipe implements Pipe<List<MatOfPoint>, List<StandardCVPipeline.TrackedTarget>> {
-
-    private static final Comparator<MatOfPoint> sortByMomentsX =
-            Comparator.comparingDouble(GroupContoursPipe::calcMomentsX);
+public class GroupContoursPipe implements Pipe<List<ContourFeatures>, List<StandardCVPipeline.TrackedTarget>> {
 
     private TargetGroup group;
     private TargetIntersection intersection;
 
     private List<StandardCVPipeline.TrackedTarget> groupedContours = new ArrayList<>();
-    private MatOfPoint2f intersectMatA = new MatOfPoint2f();
-    private MatOfPoint2f intersectMatB = new MatOfPoint2f();
+    private List<StandardCVPipeline.TrackedTarget> targetPool = new ArrayList<>();
+    private int targetPoolIndex = 0;
+
+    private MatOfPoint2f contourBuffer = new MatOfPoint2f();
+    private MatOfPoint combinedContour = new MatOfPoint();
+    private List<Mat> contourPair = new ArrayList<>(List.of(new Mat(), new Mat()));
 
     public GroupContoursPipe(TargetGroup group, TargetIntersection intersection) {
         this.group = group;
@@ -38,81 +37,54 @@ public class GroupContoursPipe implements Pipe<List<MatOfPoint>, List<StandardCV
     }
 
     @Override
-    public Pair<List<StandardCVPipeline.TrackedTarget>, Long> run(List<MatOfPoint> input) {
+    public Pair<List<StandardCVPipeline.TrackedTarget>, Long> run(List<ContourFeatures> input) {
         long processStartNanos = System.nanoTime();
 
-        groupedContours.forEach(StandardCVPipeline.TrackedTarget::release);
         groupedContours.clear();
+        targetPoolIndex = 0;
 
         if (input.size() > (group.equals(TargetGroup.Single) ? 0 : 1)) {
-
-            List<MatOfPoint> sorted = new ArrayList<>(input);
-            sorted.sort(sortByMomentsX);
-
-            Collections.reverse(sorted);
-
             switch (group) {
                 case Single: {
-                    input.forEach(c -> {
-                        MatOfPoint2f contour = new MatOfPoint2f();
-                        contour.fromArray(c.toArray());
-                        if (contour.cols() != 0 && contour.rows() != 0) {
-                            RotatedRect rect = Imgproc.minAreaRect(contour);
-                            var target = new StandardCVPipeline.TrackedTarget();
-                            target.minAreaRect = rect;
+                    for (ContourFeatures c : input) {
+                        if (!c.isEmpty()) {
+                            var target = nextPooledTarget();
+                            target.minAreaRect = c.getMinAreaRect();
                             groupedContours.add(target);
                         }
-                    });
+                    }
                     break;
                 }
                 case Dual: {
-                    for (var i = 0; i < input.size(); i++) {
-                        List<Point> finalContourList = new ArrayList<>(input.get(i).toList());
-
-                        try {
-                            MatOfPoint firstContour = input.get(i);
-                            MatOfPoint secondContour = input.get(i + 1);
-
-                            if (isIntersecting(firstContour, secondContour)) {
-                                finalContourList.addAll(secondContour.toList());
-                            } else {
-                                finalContourList.clear();
-                                continue;
-                            }
-
-                            intersectMatA.release();
-                            intersectMatB.release();
-
-                            MatOfPoint2f contour = new MatOfPoint2f();
-                            contour.fromList(finalContourList);
-
-                            if (contour.cols() != 0 && contour.rows() != 0) {
-                                RotatedRect rect = Imgproc.minAreaRect(contour);
-                                var target = new StandardCVPipeline.TrackedTarget();
-                                target.minAreaRect = rect;
-
-                                target.leftRightDualTargetPair =
-                                        Pair.of(Imgproc.boundingRect(firstContour),
-                                                Imgproc.boundingRect(secondContour));
-
-                                tempRectMat.fromArray(firstContour.toArray());
-                                var minAreaRect1 = Imgproc.minAreaRect(tempRectMat);
-                                tempRectMat.fromArray(secondContour.toArray());
-                                var minAreaRect2 = Imgproc.minAreaRect(tempRectMat);
-
-                                target.leftRightRotatedRect =
-                                        Pair.of(minAreaRect1, minAreaRect2);
-                                
-                                groupedContours.add(target);
-
-                                firstContour.release();
-                                secondContour.release();
-
-                                // skip the next contour because it's been grouped already
-                                i += 1;
-                            }
-                        } catch (IndexOutOfBoundsException e) {
-                            finalContourList.clear();
+                    for (var i = 0; i < input.size() - 1; i++) {
+                        ContourFeatures firstContour = input.get(i);
+                        ContourFeatures secondContour = input.get(i + 1);
+
+                        if (!isIntersecting(firstContour, secondContour)) {
+                            continue;
+                        }
+
+                        contourPair.set(0, firstContour.getContour());
+                        contourPair.set(1, secondContour.getContour());
+                        Core.vconcat(contourPair, combinedContour);
+                        combinedContour.convertTo(contourBuffer, CvType.CV_32F);
+
+                        if (contourBuffer.cols() != 0 && contourBuffer.rows() != 0) {
+                            RotatedRect rect = Imgproc.minAreaRect(contourBuffer);
+                            var target = nextPooledTarget();
+                            target.minAreaRect = rect;
+
+                            target.leftRightDualTargetPair =
+                                    Pair.of(firstContour.getBoundingRect(),
+                                            secondContour.getBoundingRect());
+
+                            target.leftRightRotatedRect =
+                                    Pair.of(firstContour.getMinAreaRect(), secondContour.getMinAreaRect());
+
+                            groupedContours.add(target);
+
+                            // skip the next contour because it's been grouped already
+                            i += 1;
                         }
                     }
                     break;
@@ -124,23 +96,26 @@ public class GroupContoursPipe implements Pipe<List<MatOfPoint>, List<StandardCV
         return Pair.of(groupedContours, processTime);
     }
 
-    MatOfPoint2f tempRectMat = new MatOfPoint2f();
-
-    private static double calcMomentsX(MatOfPoint c) {
-        Moments m = Imgproc.moments(c);
-        return (m.get_m10() / m.get_m00());
+    /**
+     * Targets are handed out from a pool that grows to the largest target count seen, and are reused every frame after that.
+     */
+    private StandardCVPipeline.TrackedTarget nextPooledTarget() {
+        if (targetPoolIndex == targetPool.size()) {
+            targetPool.add(new StandardCVPipeline.TrackedTarget());
+        }
+        var target = targetPool.get(targetPoolIndex++);
+        target.reset();
+        return target;
     }
 
-    private boolean isIntersecting(MatOfPoint contourOne, MatOfPoint contourTwo) {
+    private boolean isIntersecting(ContourFeatures contourOne, ContourFeatures contourTwo) {
         if (intersection.equals(TargetIntersection.None)) {
             return true;
         }
 
         try {
-            intersectMatA.fromArray(contourOne.toArray());
-            intersectMatB.fromArray(contourTwo.toArray());
-            RotatedRect a = Imgproc.fitEllipse(intersectMatA);
-            RotatedRect b = Imgproc.fitEllipse(intersectMatB);
+            RotatedRect a = Imgproc.fitEllipse(contourOne.getContour2f());
+            RotatedRect b = Imgproc.fitEllipse(contourTwo.getContour2f());
             double mA = MathHandler.toSlope(a.angle);
             double mB = MathHandler.toSlope(b.angle);
             double x0A = a.center.x;
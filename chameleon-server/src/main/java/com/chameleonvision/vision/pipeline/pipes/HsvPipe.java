@@ -1,9 +1,11 @@
 package com.chameleonvision.vision.pipeline.pipes;
 
+import com.chameleonvision.util.ParallelStripes;
 import com.chameleonvision.vision.pipeline.Pipe;
 import org.apache.commons.lang3.tuple.Pair;
 import org.opencv.core.Core;
 import org.opencv.core.CvException;
+import org.opencv.core.CvType;
 import org.opencv.core.Mat;
 import org.opencv.core.Scalar;
 import org.opencv.imgproc.Imgproc;
@@ -12,35 +14,61 @@ public class HsvPipe implements Pipe<Mat, Mat> {
 
     private Scalar hsvLower;
     private Scalar hsvUpper;
+    private int stripeCount;
 
     private Mat processBuffer = new Mat();
     private Mat outputMat = new Mat();
 
-    public HsvPipe(Scalar hsvLower, Scalar hsvUpper) {
+    public HsvPipe(Scalar hsvLower, Scalar hsvUpper, int stripeCount) {
         this.hsvLower = hsvLower;
         this.hsvUpper = hsvUpper;
+        this.stripeCount = stripeCount;
     }
 
-    public void setConfig(Scalar hsvLower, Scalar hsvUpper) {
+    /**
+     * @param stripeCount how many horizontal stripes of the image to threshold in parallel, 1 to run on the calling thread
+     */
+    public void setConfig(Scalar hsvLower, Scalar hsvUpper, int stripeCount) {
         this.hsvLower = hsvLower;
         this.hsvUpper = hsvUpper;
+        this.stripeCount = stripeCount;
     }
 
     @Override
     public Pair<Mat, Long> run(Mat input) {
         long processStartNanos = System.nanoTime();
 
-        input.copyTo(outputMat);
+        if (stripeCount <= 1 || input.rows() < stripeCount) {
+            threshold(input, processBuffer, outputMat);
+        } else {
+            processBuffer.create(input.rows(), input.cols(), CvType.CV_8UC3);
+            outputMat.create(input.rows(), input.cols(), CvType.CV_8UC1);
 
-        try {
-            Imgproc.cvtColor(outputMat, outputMat, Imgproc.COLOR_BGR2HSV, 3);
-            Core.inRange(outputMat, hsvLower, hsvUpper, outputMat);
-        } catch (CvException e) {
-            System.err.println("(HsvPipe) Exception thrown by OpenCV: \n" + e.getMessage());
+            ParallelStripes.forEach(stripeCount, stripe -> {
+                int top = ParallelStripes.stripeStart(input.rows(), stripeCount, stripe);
+                int bottom = ParallelStripes.stripeStart(input.rows(), stripeCount, stripe + 1);
+
+                // views into the full size buffers, so the stripes are written straight into the output
+                Mat inputStripe = input.submat(top, bottom, 0, input.cols());
+                Mat hsvStripe = processBuffer.submat(top, bottom, 0, input.cols());
+                Mat outputStripe = outputMat.submat(top, bottom, 0, input.cols());
+                threshold(inputStripe, hsvStripe, outputStripe);
+                inputStripe.release();
+                hsvStripe.release();
+                outputStripe.release();
+            });
         }
 
         long processTime = System.nanoTime() - processStartNanos;
         return Pair.of(outputMat, processTime);
     }
-}
 
+    private void threshold(Mat input, Mat hsvBuffer, Mat output) {
+        try {
+            Imgproc.cvtColor(input, hsvBuffer, Imgproc.COLOR_BGR2HSV, 3);
+            Core.inRange(hsvBuffer, hsvLower, hsvUpper, output);
+        } catch (CvException e) {
+            System.err.println("(HsvPipe) Exception thrown by OpenCV: \n" + e.getMessage());
+        }
+    }
+}
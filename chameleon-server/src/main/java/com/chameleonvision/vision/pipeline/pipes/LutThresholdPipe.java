@@ -0,0 +1,263 @@
+package com.chameleonvision.vision.pipeline.pipes;
+
+import com.chameleonvision.vision.pipeline.Pipe;
+import org.apache.commons.lang3.tuple.Pair;
+import org.opencv.core.Core;
+import org.opencv.core.CvException;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Scalar;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Thresholds a BGR frame on an HSV range in a single pass, by looking every pixel up in a table of which BGR colors
+ * fall inside the range. The input is left untouched.
+ * Building the exact table takes hundreds of milliseconds on a coprocessor, so tables are built on a background
+ * thread whenever the range changes and swapped in once done. Until the table for the current range is ready, frames
+ * are thresholded the way HsvPipe does it, which gives the same mask, just slower.
+ */
+public class LutThresholdPipe implements Pipe<Mat, Mat> {
+
+    // same fixed point arithmetic as OpenCV's 8 bit BGR2HSV, so the exact table matches HsvPipe
+    private static final int HSV_SHIFT = 12;
+    private static final int[] SATURATION_DIVISORS = new int[256];
+    private static final int[] HUE_DIVISORS = new int[256];
+
+    static {
+        for (int i = 1; i < 256; i++) {
+            SATURATION_DIVISORS[i] = (int) Math.rint((255 << HSV_SHIFT) / (double) i);
+            HUE_DIVISORS[i] = (int) Math.rint((180 << HSV_SHIFT) / (6.0 * i));
+        }
+    }
+
+    private static final int QUANTIZE_SHIFT = 3;
+    private static final int QUANTIZED_LEVELS = 256 >> QUANTIZE_SHIFT;
+
+    // one thread for every pipe's tables, slider moves only ever leave one build waiting per pipe
+    private static final ExecutorService tableBuilder = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable);
+        thread.setName("LUT Builder Thread");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+
+    // vision thread only
+    private TableConfig config;
+    private LookupTable tableInUse;
+    private final Scalar fallbackLower = new Scalar(0, 0, 0);
+    private final Scalar fallbackUpper = new Scalar(0, 0, 0);
+    private final Mat hsvBuffer = new Mat();
+
+    // the newest config asked for, and the newest table built
+    private volatile TableConfig wantedConfig;
+    private volatile LookupTable table;
+    private final AtomicBoolean buildQueued = new AtomicBoolean(false);
+    // an exact table the vision thread is done with, for the next build to overwrite
+    private final AtomicReference<long[]> spareExactTable = new AtomicReference<>();
+
+    private byte[] pixelBuffer = new byte[0];
+    private byte[] maskBuffer = new byte[0];
+    private Mat outputMat = new Mat();
+
+    public LutThresholdPipe(Scalar hsvLower, Scalar hsvUpper, boolean exact) {
+        setConfig(hsvLower, hsvUpper, exact);
+    }
+
+    public void setConfig(Scalar hsvLower, Scalar hsvUpper, boolean exact) {
+        TableConfig newConfig = new TableConfig(hsvLower, hsvUpper, exact);
+        if (newConfig.equals(config)) return;
+        config = newConfig;
+        fallbackLower.set(newConfig.lower);
+        fallbackUpper.set(newConfig.upper);
+
+        wantedConfig = newConfig;
+        if (buildQueued.compareAndSet(false, true)) {
+            tableBuilder.execute(this::buildWantedTable);
+        }
+    }
+
+    /**
+     * @return whether frames are looked up in a table for the current range, rather than thresholded the slow way
+     */
+    public boolean isTableReady() {
+        LookupTable current = table;
+        return current != null && current.config.equals(wantedConfig);
+    }
+
+    /**
+     * @param input BGR image (8UC3)
+     * @return the thresholded mask (8UC1)
+     */
+    @Override
+    public Pair<Mat, Long> run(Mat input) {
+        long processStartNanos = System.nanoTime();
+
+        LookupTable current = table;
+        if (current != tableInUse) {
+            // the builder may write over the old table from now on, this thread is done with it
+            if (tableInUse != null && tableInUse.exactTable != null) {
+                spareExactTable.set(tableInUse.exactTable);
+            }
+            tableInUse = current;
+        }
+        if (current == null || !current.config.equals(config)) {
+            thresholdHsv(input);
+            return Pair.of(outputMat, System.nanoTime() - processStartNanos);
+        }
+
+        int pixelCount = (int) input.total();
+        if (pixelBuffer.length != pixelCount * 3) {
+            pixelBuffer = new byte[pixelCount * 3];
+            maskBuffer = new byte[pixelCount];
+        }
+        input.get(0, 0, pixelBuffer);
+
+        byte[] pixels = pixelBuffer;
+        byte[] mask = maskBuffer;
+        if (current.exactTable != null) {
+            long[] table = current.exactTable;
+            for (int i = 0, p = 0; i < pixelCount; i++, p += 3) {
+                int color = ((pixels[p] & 0xFF) << 16) | ((pixels[p + 1] & 0xFF) << 8) | (pixels[p + 2] & 0xFF);
+                mask[i] = (byte) -((table[color >>> 6] >>> color) & 1);
+            }
+        } else {
+            byte[] table = current.quantizedTable;
+            for (int i = 0, p = 0; i < pixelCount; i++, p += 3) {
+                mask[i] = table[((pixels[p] & 0xF8) << 7) | ((pixels[p + 1] & 0xF8) << 2) | ((pixels[p + 2] & 0xFF) >>> 3)];
+            }
+        }
+
+        outputMat.create(input.rows(), input.cols(), CvType.CV_8UC1);
+        outputMat.put(0, 0, mask);
+
+        long processTime = System.nanoTime() - processStartNanos;
+        return Pair.of(outputMat, processTime);
+    }
+
+    private void thresholdHsv(Mat input) {
+        try {
+            Imgproc.cvtColor(input, hsvBuffer, Imgproc.COLOR_BGR2HSV, 3);
+            Core.inRange(hsvBuffer, fallbackLower, fallbackUpper, outputMat);
+        } catch (CvException e) {
+            System.err.println("(LutThresholdPipe) Exception thrown by OpenCV: \n" + e.getMessage());
+        }
+    }
+
+    /**
+     * Builds a table for the newest config asked for, on the builder thread.
+     */
+    private void buildWantedTable() {
+        // a config asked for from here on queues another build
+        buildQueued.set(false);
+        TableConfig wanted = wantedConfig;
+        LookupTable current = table;
+        if (current != null && current.config.equals(wanted)) return;
+        try {
+            table = buildTable(wanted);
+        } catch (Throwable t) {
+            System.err.println("Failed to build HSV lookup table!");
+            t.printStackTrace();
+        }
+    }
+
+    private LookupTable buildTable(TableConfig config) {
+        if (config.exact) {
+            long[] exactTable = spareExactTable.getAndSet(null);
+            if (exactTable == null) exactTable = new long[(1 << 24) >>> 6];
+            for (int b = 0; b < 256; b++) {
+                for (int g = 0; g < 256; g++) {
+                    int rowStart = (b << 16) | (g << 8);
+                    for (int r = 0; r < 256; r++) {
+                        int color = rowStart | r;
+                        if (config.inRange(b, g, r)) {
+                            exactTable[color >>> 6] |= 1L << color;
+                        } else {
+                            exactTable[color >>> 6] &= ~(1L << color);
+                        }
+                    }
+                }
+            }
+            return new LookupTable(config, exactTable, null);
+        } else {
+            byte[] quantizedTable = new byte[QUANTIZED_LEVELS * QUANTIZED_LEVELS * QUANTIZED_LEVELS];
+            // classify each cell by the color in its middle
+            int half = 1 << (QUANTIZE_SHIFT - 1);
+            for (int b = 0; b < QUANTIZED_LEVELS; b++) {
+                for (int g = 0; g < QUANTIZED_LEVELS; g++) {
+                    for (int r = 0; r < QUANTIZED_LEVELS; r++) {
+                        boolean in = config.inRange((b << QUANTIZE_SHIFT) | half, (g << QUANTIZE_SHIFT) | half, (r << QUANTIZE_SHIFT) | half);
+                        quantizedTable[(b * QUANTIZED_LEVELS + g) * QUANTIZED_LEVELS + r] = (byte) (in ? -1 : 0);
+                    }
+                }
+            }
+            return new LookupTable(config, null, quantizedTable);
+        }
+    }
+
+    private static class TableConfig {
+        final double[] lower = new double[3];
+        final double[] upper = new double[3];
+        final boolean exact;
+
+        TableConfig(Scalar hsvLower, Scalar hsvUpper, boolean exact) {
+            System.arraycopy(hsvLower.val, 0, lower, 0, 3);
+            System.arraycopy(hsvUpper.val, 0, upper, 0, 3);
+            this.exact = exact;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof TableConfig)) return false;
+            TableConfig other = (TableConfig) o;
+            return exact == other.exact && Arrays.equals(lower, other.lower) && Arrays.equals(upper, other.upper);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(exact, Arrays.hashCode(lower), Arrays.hashCode(upper));
+        }
+
+        boolean inRange(int b, int g, int r) {
+            int v = Math.max(b, Math.max(g, r));
+            if (v < lower[2] || v > upper[2]) return false;
+
+            int diff = v - Math.min(b, Math.min(g, r));
+            int s = (diff * SATURATION_DIVISORS[v] + (1 << (HSV_SHIFT - 1))) >> HSV_SHIFT;
+            if (s < lower[1] || s > upper[1]) return false;
+
+            int h;
+            if (v == r) {
+                h = g - b;
+            } else if (v == g) {
+                h = b - r + 2 * diff;
+            } else {
+                h = r - g + 4 * diff;
+            }
+            h = (h * HUE_DIVISORS[diff] + (1 << (HSV_SHIFT - 1))) >> HSV_SHIFT;
+            if (h < 0) h += 180;
+            return h >= lower[0] && h <= upper[0];
+        }
+    }
+
+    private static class LookupTable {
+        final TableConfig config;
+        // one bit per 24-bit BGR color
+        final long[] exactTable;
+        // 0 or -1 (255) per 5-bit BGR color
+        final byte[] quantizedTable;
+
+        LookupTable(TableConfig config, long[] exactTable, byte[] quantizedTable) {
+            this.config = config;
+            this.exactTable = exactTable;
+            this.quantizedTable = quantizedTable;
+        }
+    }
+}
@@ -11,7 +11,7 @@ public class OutputMatPipe implements Pipe<Pair<Mat, Mat>, Mat> {
     private boolean showThresholded;
 
     private Mat processBuffer = new Mat();
-    private Mat outputMat = new Mat();
+    private final Mat outputMat = new Mat();
 
     public OutputMatPipe(boolean showThresholded) {
         this.showThresholded = showThresholded;
@@ -21,6 +21,13 @@ public class OutputMatPipe implements Pipe<Pair<Mat, Mat>, Mat> {
         this.showThresholded = showThresholded;
     }
 
+    /**
+     * @return the buffer {@link #run(Pair)} draws into and hands back, the same one every frame
+     */
+    public Mat getOutputMat() {
+        return outputMat;
+    }
+
     /**
      *
      * @param input Input object for pipe
@@ -0,0 +1,209 @@
+package com.chameleonvision.vision.pipeline.pipes;
+
+import com.chameleonvision.vision.pipeline.Pipe;
+import com.chameleonvision.vision.pipeline.impl.StandardCVPipeline;
+import org.apache.commons.lang3.tuple.Pair;
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Rect;
+import org.opencv.core.Scalar;
+
+import java.util.List;
+
+/**
+ * Narrows the frame down to a padded window around the targets found in the previous frame, so thresholding and
+ * contour finding only touch the part of the image the target can be in.
+ * The whole frame is searched again when the target is lost, and every {@code fullFrameInterval} frames so new targets
+ * are picked up.
+ *
+ * {@link #run(Mat)} and {@link #update(List, Rect)} may be called from different threads when the pipeline is staged.
+ */
+public class RegionOfInterestPipe implements Pipe<Mat, Mat> {
+
+    private static final Point NO_OFFSET = new Point(0, 0);
+
+    private boolean enabled;
+    private double padding;
+    private int fullFrameInterval;
+
+    // written by update, read by run, which may be on another thread
+    private volatile Rect nextRoi = null;
+    private int framesSinceFullFrame = 0;
+    private volatile int frameWidth = 0;
+    private volatile int frameHeight = 0;
+
+    private Rect lastRoi = null;
+    private Mat roiView = new Mat();
+    private Mat fullFrameMask = new Mat();
+    private final Point offset = new Point();
+
+    private volatile long totalFrames = 0;
+    private volatile long roiFrames = 0;
+    private volatile long roiHits = 0;
+    private volatile long totalPixels = 0;
+    private volatile long lastPixels = 0;
+
+    /**
+     * @param padding           how far to grow the window past the targets on every side, in percent of the targets' size
+     * @param fullFrameInterval how many frames in a row may be cropped before the whole frame is searched again
+     */
+    public RegionOfInterestPipe(boolean enabled, double padding, int fullFrameInterval) {
+        setConfig(enabled, padding, fullFrameInterval);
+    }
+
+    public void setConfig(boolean enabled, double padding, int fullFrameInterval) {
+        this.enabled = enabled;
+        this.padding = padding;
+        this.fullFrameInterval = fullFrameInterval;
+        if (!enabled) {
+            nextRoi = null;
+        }
+    }
+
+    /**
+     * @param input the full frame
+     * @return a view of the window to process, or the input itself when searching the whole frame
+     */
+    @Override
+    public Pair<Mat, Long> run(Mat input) {
+        long processStartNanos = System.nanoTime();
+
+        frameWidth = input.cols();
+        frameHeight = input.rows();
+        roiView.release();
+
+        Rect roi = nextRoi;
+        if (!enabled || roi == null || framesSinceFullFrame >= fullFrameInterval
+                || roi.x + roi.width > frameWidth || roi.y + roi.height > frameHeight) {
+            roi = null;
+        }
+
+        Mat output;
+        long pixels;
+        if (roi != null) {
+            roiView = input.submat(roi);
+            output = roiView;
+            pixels = (long) roi.width * roi.height;
+            offset.x = roi.x;
+            offset.y = roi.y;
+            framesSinceFullFrame++;
+            roiFrames++;
+        } else {
+            output = input;
+            pixels = (long) frameWidth * frameHeight;
+            offset.x = 0;
+            offset.y = 0;
+            framesSinceFullFrame = 0;
+        }
+        lastRoi = roi;
+
+        totalFrames++;
+        totalPixels += pixels;
+        lastPixels = pixels;
+
+        long processTime = System.nanoTime() - processStartNanos;
+        return Pair.of(output, processTime);
+    }
+
+    /**
+     * @return the window used by the last {@link #run(Mat)}, or null if the whole frame was processed
+     */
+    public Rect getLastRoi() {
+        return lastRoi;
+    }
+
+    /**
+     * @return where the window used by the last {@link #run(Mat)} starts in the full frame
+     */
+    public Point getOffset() {
+        return lastRoi != null ? offset : NO_OFFSET;
+    }
+
+    /**
+     * Puts a mask of the last window back into a mask of the whole frame, for the output and the draw stage.
+     *
+     * @return the full frame mask, or the input itself if the whole frame was processed
+     */
+    public Mat toFullFrame(Mat roiMask) {
+        if (lastRoi == null) {
+            return roiMask;
+        }
+
+        fullFrameMask.create(frameHeight, frameWidth, roiMask.type());
+        fullFrameMask.setTo(Scalar.all(0));
+        Mat maskView = fullFrameMask.submat(lastRoi);
+        roiMask.copyTo(maskView);
+        maskView.release();
+        return fullFrameMask;
+    }
+
+    /**
+     * Picks the window for the next frame from the targets found in this one. Targets a tracker only predicted, with
+     * no measurement behind them this frame, neither steer the window nor count as hits.
+     *
+     * @param targets the targets found this frame, in full frame coordinates
+     * @param usedRoi the window this frame was processed in, or null for the whole frame
+     */
+    public void update(List<StandardCVPipeline.TrackedTarget> targets, Rect usedRoi) {
+        double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE;
+        double maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+        boolean measured = false;
+        for (int i = 0; i < targets.size(); i++) {
+            var target = targets.get(i);
+            if (target.predicted) continue;
+            measured = true;
+            if (target.minAreaRect == null) continue;
+            Rect box = target.minAreaRect.boundingRect();
+            minX = Math.min(minX, box.x);
+            minY = Math.min(minY, box.y);
+            maxX = Math.max(maxX, box.x + box.width);
+            maxY = Math.max(maxY, box.y + box.height);
+        }
+
+        if (usedRoi != null && measured) {
+            roiHits++;
+        }
+
+        if (!enabled || minX > maxX) {
+            nextRoi = null;
+            return;
+        }
+
+        double pad = Math.max(maxX - minX, maxY - minY) * padding / 100.0;
+        int x = (int) Math.max(0, Math.floor(minX - pad));
+        int y = (int) Math.max(0, Math.floor(minY - pad));
+        int right = (int) Math.min(frameWidth, Math.ceil(maxX + pad));
+        int bottom = (int) Math.min(frameHeight, Math.ceil(maxY + pad));
+
+        nextRoi = right > x && bottom > y ? new Rect(x, y, right - x, bottom - y) : null;
+    }
+
+    /**
+     * @return the fraction of cropped frames that still found a target inside the window
+     */
+    public double getHitRate() {
+        long frames = roiFrames;
+        return frames == 0 ? 0 : (double) roiHits / frames;
+    }
+
+    /**
+     * @return the fraction of frames that were cropped
+     */
+    public double getRoiFrameRate() {
+        long frames = totalFrames;
+        return frames == 0 ? 0 : (double) roiFrames / frames;
+    }
+
+    public long getLastPixels() {
+        return lastPixels;
+    }
+
+    public double getAveragePixels() {
+        long frames = totalFrames;
+        return frames == 0 ? 0 : (double) totalPixels / frames;
+    }
+
+    public long getTotalFrames() {
+        return totalFrames;
+    }
+}
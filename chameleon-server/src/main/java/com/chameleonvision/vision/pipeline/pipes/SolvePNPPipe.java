@@ -37,6 +37,10 @@ public class SolvePNPPipe implements Pipe<List<StandardCVPipeline.TrackedTarget>
     Comparator<Point> verticalComparator = Comparator.comparingDouble(point -> point.y);
     private double distanceDivisor = 1.0;
     Mat scaledTvec = new Mat();
+    // what the camera matrix and object points were last made from
+    private CameraCalibrationConfig calibration;
+    private double targetWidth;
+    private double targetHeight;
 
     public SolvePNPPipe(StandardCVPipelineSettings settings, CameraCalibrationConfig calibration, Rotation2d tilt) {
         super();
@@ -46,6 +50,8 @@ public class SolvePNPPipe implements Pipe<List<StandardCVPipeline.TrackedTarget>
     }
 
     public void setTarget(double targetWidth, double targetHeight) {
+        this.targetWidth = targetWidth;
+        this.targetHeight = targetHeight;
         // order is left top, left bottom, right bottom, right top
 
         List<Point3> corners = List.of(
@@ -64,12 +70,17 @@ public class SolvePNPPipe implements Pipe<List<StandardCVPipeline.TrackedTarget>
     }
 
     public void setConfig(StandardCVPipelineSettings settings, CameraCalibrationConfig camConfig, Rotation2d tilt) {
-        setCameraCoeffs(camConfig);
-        setTarget(settings.targetWidth, settings.targetHeight);
+        if (camConfig != calibration) {
+            setCameraCoeffs(camConfig);
+        }
+        if (settings.targetWidth != targetWidth || settings.targetHeight != targetHeight) {
+            setTarget(settings.targetWidth, settings.targetHeight);
+        }
         tilt_angle = tilt.getRadians();
     }
 
     private void setCameraCoeffs(CameraCalibrationConfig settings) {
+        calibration = settings;
         if(settings == null) {
             System.err.println("SolvePNP can only run on a calibrated resolution, and this one is not! Please calibrate to use solvePNP.");
             return;
@@ -90,6 +101,8 @@ public class SolvePNPPipe implements Pipe<List<StandardCVPipeline.TrackedTarget>
         long processStartNanos = System.nanoTime();
         poseList.clear();
         for(var target: targets) {
+            // a predicted target has no contour to fit, it keeps the pose its track last had
+            if (target.predicted) continue;
             var corners = (target.leftRightDualTargetPair != null) ? findCorner2019(target) : findBoundingBoxCorners(target);
             var pose = calculatePose(corners, target);
             if(pose != null) poseList.add(pose);
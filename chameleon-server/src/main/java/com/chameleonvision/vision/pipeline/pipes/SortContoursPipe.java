@@ -30,6 +30,7 @@ public class SortContoursPipe implements Pipe<List<StandardCVPipeline.TrackedTar
     private int maxTargets;
 
     private List<StandardCVPipeline.TrackedTarget> sortedContours = new ArrayList<>();
+    private List<StandardCVPipeline.TrackedTarget> limitedContours = new ArrayList<>();
 
     public SortContoursPipe(SortMode sort, CaptureStaticProperties camProps, int maxTargets) {
         this.sort = sort;
@@ -50,7 +51,9 @@ public class SortContoursPipe implements Pipe<List<StandardCVPipeline.TrackedTar
         sortedContours.clear();
 
         if (input.size() > 0) {
-            sortedContours.addAll(input);
+            for (var target : input) {
+                sortedContours.add(target);
+            }
 
             switch (sort) {
                 case Largest:
@@ -79,13 +82,14 @@ public class SortContoursPipe implements Pipe<List<StandardCVPipeline.TrackedTar
             }
         }
 
-        var sublistedContors = new ArrayList<>(sortedContours.subList(0, Math.min(input.size(), maxTargets - 1)));
-        sortedContours.subList(Math.min(input.size(), maxTargets - 1), sortedContours.size()).forEach(StandardCVPipeline.TrackedTarget::release);
-        sortedContours.clear();
-        sortedContours = new ArrayList<>();
+        // targets past the limit are left alone, GroupContoursPipe owns and reuses them
+        limitedContours.clear();
+        for (int i = 0; i < Math.min(input.size(), maxTargets - 1); i++) {
+            limitedContours.add(sortedContours.get(i));
+        }
 
         long processTime = System.nanoTime() - processStartNanos;
-        return Pair.of(sublistedContors, processTime);
+        return Pair.of(limitedContours, processTime);
     }
 
     private double calcSquareCenterDistance(StandardCVPipeline.TrackedTarget rect) {
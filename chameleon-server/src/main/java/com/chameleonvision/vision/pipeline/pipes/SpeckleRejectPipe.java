@@ -1,20 +1,17 @@
 package com.chameleonvision.vision.pipeline.pipes;
 
+import com.chameleonvision.vision.pipeline.ContourFeatures;
 import com.chameleonvision.vision.pipeline.Pipe;
 import org.apache.commons.lang3.tuple.Pair;
-import org.opencv.core.Mat;
-import org.opencv.core.MatOfPoint;
-import org.opencv.core.MatOfPoint2f;
-import org.opencv.imgproc.Imgproc;
 
 import java.util.ArrayList;
 import java.util.List;
 
-public class SpeckleRejectPipe implements Pipe<List<MatOfPoint>, List<MatOfPoint>> {
+public class SpeckleRejectPipe implements Pipe<List<ContourFeatures>, List<ContourFeatures>> {
 
     private double minPercentOfAvg;
 
-    private List<MatOfPoint> despeckledContours = new ArrayList<>();
+    private List<ContourFeatures> despeckledContours = new ArrayList<>();
 
     public SpeckleRejectPipe(double minPercentOfAvg) {
         this.minPercentOfAvg = minPercentOfAvg;
@@ -25,27 +22,25 @@ public class SpeckleRejectPipe implements Pipe<List<MatOfPoint>, List<MatOfPoint
     }
 
     @Override
-    public Pair<List<MatOfPoint>, Long> run(List<MatOfPoint> input) {
+    public Pair<List<ContourFeatures>, Long> run(List<ContourFeatures> input) {
         long processStartNanos = System.nanoTime();
 
-        despeckledContours.forEach(MatOfPoint::release);
         despeckledContours.clear();
-        despeckledContours = new ArrayList<>();
 
         if (input.size() > 0) {
             double averageArea = 0.0;
 
-            for (MatOfPoint c : input) {
-                averageArea += Imgproc.contourArea(c);
+            for (int i = 0; i < input.size(); i++) {
+                averageArea += input.get(i).getArea();
             }
 
             averageArea /= input.size();
 
             double minAllowedArea = minPercentOfAvg / 100.0 * averageArea;
 
-            for (MatOfPoint c : input) {
-                if (Imgproc.contourArea(c) >= minAllowedArea) {
-                    despeckledContours.add(c);
+            for (int i = 0; i < input.size(); i++) {
+                if (input.get(i).getArea() >= minAllowedArea) {
+                    despeckledContours.add(input.get(i));
                 }
             }
         }
@@ -0,0 +1,253 @@
+package com.chameleonvision.vision.pipeline.pipes;
+
+import com.chameleonvision.util.ConstantVelocityKalmanFilter;
+import com.chameleonvision.vision.camera.CaptureStaticProperties;
+import com.chameleonvision.vision.pipeline.Pipe;
+import com.chameleonvision.vision.pipeline.impl.StandardCVPipeline.TrackedTarget;
+import edu.wpi.first.wpilibj.geometry.Pose2d;
+import org.apache.commons.lang3.tuple.Pair;
+import org.opencv.core.RotatedRect;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Follows targets from frame to frame, so their values don't jump around with the noise in the contours and don't
+ * disappear when a target is missed for a frame or two.
+ *
+ * Every track runs a constant velocity Kalman filter on the center of the target's minimum area rectangle. Each frame
+ * the tracks are moved forward to the frame's timestamp and paired with the targets closest to where they are
+ * predicted to be, closest pairs first, within a gate. A paired target gets the filtered center and the track's
+ * velocity and id, and a target nobody is paired with starts a new track. A track that isn't paired keeps going as a
+ * predicted target, in the place it had in the list, for up to {@code coastFrames} frames.
+ * Pitch and yaw are worked out from the filtered center afterwards by {@link Collect2dTargetsPipe}. A predicted target
+ * keeps the last pose solvePNP found for its track, see {@link #rememberPoses()}.
+ *
+ * The tracks are preallocated and reused, only a coasting track's predicted box is a new object, since the previous
+ * one may still be drawn by the staged executor.
+ */
+public class TrackTargetsPipe implements Pipe<Pair<List<TrackedTarget>, Long>, List<TrackedTarget>> {
+
+    public static final int MAX_TRACKS = 8;
+    // a new track could be moving this fast in either direction, in pixels per second
+    private static final double INITIAL_VELOCITY_DEVIATION = 500;
+    // after a gap this long, from the camera stalling or another pipeline running, the tracks are too stale to keep
+    private static final double MAX_FRAME_GAP_SECONDS = 0.5;
+
+    private boolean enabled;
+    private int coastFrames;
+    private double gate;
+    private double processNoise;
+    private double measurementNoise;
+    private CaptureStaticProperties camProps;
+
+    private final Track[] tracks = new Track[MAX_TRACKS];
+    private final List<TrackedTarget> trackedTargets = new ArrayList<>(MAX_TRACKS * 2);
+    private int[] targetTracks = new int[MAX_TRACKS];
+    private long lastTimestampNanos = 0;
+    private int nextTrackId = 0;
+
+    /**
+     * @param gate             how far a target may be from where a track predicted it, as a fraction of the image width
+     * @param processNoise     how quickly targets change speed, in pixels per second squared
+     * @param measurementNoise how far a contour's center is off from the real one, in pixels
+     */
+    public TrackTargetsPipe(boolean enabled, int coastFrames, double gate, double processNoise, double measurementNoise, CaptureStaticProperties camProps) {
+        for (int i = 0; i < MAX_TRACKS; i++) {
+            tracks[i] = new Track();
+        }
+        setConfig(enabled, coastFrames, gate, processNoise, measurementNoise, camProps);
+    }
+
+    public void setConfig(boolean enabled, int coastFrames, double gate, double processNoise, double measurementNoise, CaptureStaticProperties camProps) {
+        this.enabled = enabled;
+        this.coastFrames = coastFrames;
+        this.gate = gate;
+        this.processNoise = processNoise;
+        this.measurementNoise = measurementNoise;
+        this.camProps = camProps;
+    }
+
+    /**
+     * @param input the sorted targets, and the time the frame was grabbed at
+     */
+    @Override
+    public Pair<List<TrackedTarget>, Long> run(Pair<List<TrackedTarget>, Long> input) {
+        long processStartNanos = System.nanoTime();
+
+        List<TrackedTarget> targets = input.getLeft();
+        long timestampNanos = input.getRight();
+        if (!enabled) {
+            reset();
+            return Pair.of(targets, System.nanoTime() - processStartNanos);
+        }
+
+        double dtSeconds = lastTimestampNanos > 0 ? (timestampNanos - lastTimestampNanos) / 1e9 : 0;
+        if (dtSeconds > MAX_FRAME_GAP_SECONDS) {
+            reset();
+            dtSeconds = 0;
+        }
+        lastTimestampNanos = timestampNanos;
+        for (Track track : tracks) {
+            track.paired = false;
+            if (track.active) {
+                track.x.setNoise(processNoise, measurementNoise);
+                track.y.setNoise(processNoise, measurementNoise);
+                track.x.predict(dtSeconds);
+                track.y.predict(dtSeconds);
+            }
+        }
+
+        pair(targets);
+
+        trackedTargets.clear();
+        for (int i = 0; i < targets.size(); i++) {
+            TrackedTarget target = targets.get(i);
+            Track track;
+            if (targetTracks[i] >= 0) {
+                track = tracks[targetTracks[i]];
+                track.x.update(target.minAreaRect.center.x);
+                track.y.update(target.minAreaRect.center.y);
+            } else {
+                track = startTrack(target);
+                if (track == null) {
+                    // more targets than tracks, pass it through as it is
+                    trackedTargets.add(target);
+                    continue;
+                }
+            }
+            track.paired = true;
+            track.missedFrames = 0;
+
+            target.minAreaRect.center.x = track.x.getPosition();
+            target.minAreaRect.center.y = track.y.getPosition();
+            setTrackValues(target, track, false);
+            track.lastSeen = target;
+            track.lastRect = target.minAreaRect;
+            track.lastIndex = trackedTargets.size();
+            trackedTargets.add(target);
+        }
+
+        for (Track track : tracks) {
+            if (!track.active || track.paired) continue;
+            if (++track.missedFrames > coastFrames) {
+                track.active = false;
+                continue;
+            }
+
+            TrackedTarget predicted = track.predictedTarget;
+            predicted.reset();
+            predicted.minAreaRect = new RotatedRect();
+            predicted.minAreaRect.center.x = track.x.getPosition();
+            predicted.minAreaRect.center.y = track.y.getPosition();
+            predicted.minAreaRect.size.width = track.lastRect.size.width;
+            predicted.minAreaRect.size.height = track.lastRect.size.height;
+            predicted.minAreaRect.angle = track.lastRect.angle;
+            predicted.cameraRelativePose = track.lastPose;
+            setTrackValues(predicted, track, true);
+            trackedTargets.add(Math.min(track.lastIndex, trackedTargets.size()), predicted);
+        }
+
+        long processTime = System.nanoTime() - processStartNanos;
+        return Pair.of(trackedTargets, processTime);
+    }
+
+    /**
+     * Pairs targets with tracks, always taking the closest remaining pair inside the gate. There are only ever a
+     * handful of each, so this is as good as an optimal assignment in practice and far cheaper.
+     */
+    private void pair(List<TrackedTarget> targets) {
+        if (targetTracks.length < targets.size()) {
+            targetTracks = new int[targets.size() * 2];
+        }
+        for (int i = 0; i < targets.size(); i++) {
+            targetTracks[i] = -1;
+        }
+
+        double gatePixels = gate * camProps.imageWidth;
+        while (true) {
+            double bestDistanceSquared = gatePixels * gatePixels;
+            int bestTarget = -1;
+            int bestTrack = -1;
+            for (int i = 0; i < targets.size(); i++) {
+                if (targetTracks[i] >= 0) continue;
+                var center = targets.get(i).minAreaRect.center;
+                for (int j = 0; j < MAX_TRACKS; j++) {
+                    Track track = tracks[j];
+                    if (!track.active || track.paired) continue;
+                    double dx = center.x - track.x.getPosition();
+                    double dy = center.y - track.y.getPosition();
+                    double distanceSquared = dx * dx + dy * dy;
+                    if (distanceSquared < bestDistanceSquared) {
+                        bestDistanceSquared = distanceSquared;
+                        bestTarget = i;
+                        bestTrack = j;
+                    }
+                }
+            }
+            if (bestTarget < 0) break;
+            targetTracks[bestTarget] = bestTrack;
+            tracks[bestTrack].paired = true;
+        }
+    }
+
+    /**
+     * Keeps the poses solvePNP just found, for the tracks to hand out when they coast. Called after solvePNP, since
+     * the targets it ran on are reused by the next frame.
+     */
+    public void rememberPoses() {
+        for (Track track : tracks) {
+            if (track.active && track.missedFrames == 0 && track.lastSeen != null) {
+                track.lastPose = track.lastSeen.cameraRelativePose;
+                track.lastSeen = null;
+            }
+        }
+    }
+
+    private Track startTrack(TrackedTarget target) {
+        for (Track track : tracks) {
+            if (track.active) continue;
+            track.active = true;
+            track.id = nextTrackId++;
+            track.lastPose = new Pose2d();
+            track.x.setNoise(processNoise, measurementNoise);
+            track.y.setNoise(processNoise, measurementNoise);
+            track.x.reset(target.minAreaRect.center.x, INITIAL_VELOCITY_DEVIATION);
+            track.y.reset(target.minAreaRect.center.y, INITIAL_VELOCITY_DEVIATION);
+            return track;
+        }
+        return null;
+    }
+
+    private static void setTrackValues(TrackedTarget target, Track track, boolean predicted) {
+        target.trackId = track.id;
+        target.velocityX = track.x.getVelocity();
+        target.velocityY = track.y.getVelocity();
+        target.predicted = predicted;
+    }
+
+    /**
+     * Forgets every track, for when tracking is turned off or the camera changes.
+     */
+    public void reset() {
+        for (Track track : tracks) {
+            track.active = false;
+        }
+        lastTimestampNanos = 0;
+    }
+
+    private static class Track {
+        final ConstantVelocityKalmanFilter x = new ConstantVelocityKalmanFilter(0, 0);
+        final ConstantVelocityKalmanFilter y = new ConstantVelocityKalmanFilter(0, 0);
+        // handed out in place of the target while the track coasts
+        final TrackedTarget predictedTarget = new TrackedTarget();
+        TrackedTarget lastSeen;
+        RotatedRect lastRect;
+        Pose2d lastPose;
+        boolean active;
+        boolean paired;
+        int id;
+        int missedFrames;
+        int lastIndex;
+    }
+}
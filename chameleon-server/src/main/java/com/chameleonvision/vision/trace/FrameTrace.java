@@ -0,0 +1,46 @@
+package com.chameleonvision.vision.trace;
+
+import java.util.Arrays;
+
+/**
+ * Monotonic ({@link System#nanoTime()}) timestamps of one frame as it moves from the camera to NetworkTables and the stream.
+ * Every mark also stores the time since the previous mark, which is how long that step took.
+ * A trace is reused for every frame, and may be marked from several threads as long as they hand the frame to each other.
+ */
+public class FrameTrace {
+
+    final long[] timestamps = new long[TracePoint.all.length];
+    final long[] durations = new long[TracePoint.all.length];
+    private long lastMarkNanos;
+
+    /**
+     * Starts a new frame.
+     *
+     * @param grabNanos the {@link System#nanoTime()} the frame was grabbed at
+     */
+    public void begin(long grabNanos) {
+        Arrays.fill(timestamps, 0);
+        Arrays.fill(durations, 0);
+        timestamps[TracePoint.Grab.ordinal()] = grabNanos;
+        lastMarkNanos = grabNanos;
+    }
+
+    public void mark(TracePoint point) {
+        long now = System.nanoTime();
+        timestamps[point.ordinal()] = now;
+        durations[point.ordinal()] = now - lastMarkNanos;
+        lastMarkNanos = now;
+    }
+
+    public long getGrabNanos() {
+        return timestamps[TracePoint.Grab.ordinal()];
+    }
+
+    /**
+     * @return nanoseconds from the frame being grabbed to the point, or 0 if the point was not reached this frame
+     */
+    public long sinceGrab(TracePoint point) {
+        long timestamp = timestamps[point.ordinal()];
+        return timestamp == 0 ? 0 : timestamp - getGrabNanos();
+    }
+}
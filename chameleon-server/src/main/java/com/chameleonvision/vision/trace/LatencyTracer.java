@@ -0,0 +1,106 @@
+package com.chameleonvision.vision.trace;
+
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Keeps the traces of the last N frames of a camera in a preallocated ring.
+ * One thread records finished frames, any thread can compute percentiles. Recording never blocks or allocates;
+ * each ring entry carries a sequence number so a reader skips entries that were being overwritten while it copied them.
+ */
+public class LatencyTracer {
+
+    private static final int POINT_COUNT = TracePoint.all.length;
+
+    private final int capacity;
+    private final long[][] timestamps;
+    private final long[][] durations;
+    // odd while an entry is being written
+    private final AtomicLongArray sequences;
+    private long recordedFrames = 0;
+
+    public LatencyTracer(int capacity) {
+        this.capacity = capacity;
+        timestamps = new long[capacity][POINT_COUNT];
+        durations = new long[capacity][POINT_COUNT];
+        sequences = new AtomicLongArray(capacity);
+    }
+
+    /**
+     * Copies a finished frame into the ring. Only one thread may record at a time.
+     */
+    public void record(FrameTrace trace) {
+        int index = (int) (recordedFrames % capacity);
+        long sequence = sequences.get(index);
+        sequences.set(index, sequence + 1);
+        VarHandle.storeStoreFence();
+        System.arraycopy(trace.timestamps, 0, timestamps[index], 0, POINT_COUNT);
+        System.arraycopy(trace.durations, 0, durations[index], 0, POINT_COUNT);
+        sequences.set(index, sequence + 2);
+        recordedFrames++;
+    }
+
+    /**
+     * @return for each point reached in the recorded frames, the p50/p95/p99 in milliseconds of the time spent getting
+     *         there from the previous point, plus the end to end capture-to-publish and capture-to-stream latencies
+     */
+    public Map<String, Object> getPercentiles() {
+        long[][] pointDurations = new long[POINT_COUNT][capacity];
+        int[] pointCounts = new int[POINT_COUNT];
+        long[] captureToPublish = new long[capacity];
+        long[] captureToStream = new long[capacity];
+        int publishCount = 0;
+        int streamCount = 0;
+
+        long[] entryTimestamps = new long[POINT_COUNT];
+        long[] entryDurations = new long[POINT_COUNT];
+        for (int i = 0; i < capacity; i++) {
+            long sequence = sequences.get(i);
+            if (sequence == 0 || sequence % 2 != 0) continue;
+            System.arraycopy(timestamps[i], 0, entryTimestamps, 0, POINT_COUNT);
+            System.arraycopy(durations[i], 0, entryDurations, 0, POINT_COUNT);
+            VarHandle.loadLoadFence();
+            if (sequences.get(i) != sequence) continue;
+
+            for (int p = 1; p < POINT_COUNT; p++) {
+                if (entryTimestamps[p] != 0) {
+                    pointDurations[p][pointCounts[p]++] = entryDurations[p];
+                }
+            }
+
+            long grab = entryTimestamps[TracePoint.Grab.ordinal()];
+            long publish = entryTimestamps[TracePoint.NetworkTablesPublish.ordinal()];
+            long stream = entryTimestamps[TracePoint.StreamPutFrame.ordinal()];
+            if (publish != 0) captureToPublish[publishCount++] = publish - grab;
+            if (stream != 0) captureToStream[streamCount++] = stream - grab;
+        }
+
+        Map<String, Object> stages = new LinkedHashMap<>();
+        for (int p = 1; p < POINT_COUNT; p++) {
+            if (pointCounts[p] > 0) {
+                stages.put(TracePoint.all[p].name(), percentiles(pointDurations[p], pointCounts[p]));
+            }
+        }
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("frames", publishCount);
+        result.put("captureToPublish", percentiles(captureToPublish, publishCount));
+        result.put("captureToStream", percentiles(captureToStream, streamCount));
+        result.put("stages", stages);
+        return result;
+    }
+
+    private static Map<String, Double> percentiles(long[] values, int count) {
+        Map<String, Double> result = new LinkedHashMap<>();
+        if (count == 0) return result;
+
+        Arrays.sort(values, 0, count);
+        result.put("p50", values[(int) Math.ceil(count * 0.50) - 1] / 1000000.0);
+        result.put("p95", values[(int) Math.ceil(count * 0.95) - 1] / 1000000.0);
+        result.put("p99", values[(int) Math.ceil(count * 0.99) - 1] / 1000000.0);
+        return result;
+    }
+}
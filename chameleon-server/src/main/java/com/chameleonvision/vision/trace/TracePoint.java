@@ -0,0 +1,29 @@
+package com.chameleonvision.vision.trace;
+
+/**
+ * The points in a frame's life that get a timestamp in its {@link FrameTrace}.
+ */
+public enum TracePoint {
+    Grab,
+    PipelineStart,
+    RotateFlip,
+    ErodeDilate,
+    Hsv,
+    FindContours,
+    FilterContours,
+    SpeckleReject,
+    GroupContours,
+    SortContours,
+    TrackTargets,
+    Collect2dTargets,
+    SolvePNP,
+    OutputMat,
+    Draw2dContours,
+    Draw2dCrosshair,
+    DrawSolvePNP,
+    PipelineEnd,
+    NetworkTablesPublish,
+    StreamPutFrame;
+
+    public static final TracePoint[] all = values();
+}
@@ -0,0 +1,65 @@
+package com.chameleonvision.web;
+
+import edu.wpi.first.wpilibj.geometry.Pose2d;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The targets the UI gets about 30 times a second, serialized to the same shape the client has always read:
+ * {@code {point: {fps, targets: [{pitch, yaw, area, pose}], rawPoint: [x, y]}}}.
+ * Updates are reused through {@link WebSocketFanout#obtainLiveUpdate()}, so filling one in allocates nothing once its
+ * targets have been created. Missing values are NaN, which the client shows the same way it showed nulls.
+ */
+public class LiveTargetUpdate {
+
+    private static final Pose2d NO_POSE = new Pose2d();
+
+    public final Point point = new Point();
+
+    private final List<Target> targetPool = new ArrayList<>();
+
+    /**
+     * Empties the target list, the targets themselves are kept for the next {@link #addTarget()}.
+     */
+    public void clearTargets() {
+        point.targets.clear();
+    }
+
+    public Target addTarget() {
+        int index = point.targets.size();
+        if (index == targetPool.size()) {
+            targetPool.add(new Target());
+        }
+        Target target = targetPool.get(index);
+        point.targets.add(target);
+        return target;
+    }
+
+    /**
+     * Sets the update to show no target at all.
+     */
+    public void setNoTarget() {
+        clearTargets();
+        Target target = addTarget();
+        target.pitch = Double.NaN;
+        target.yaw = Double.NaN;
+        target.area = Double.NaN;
+        target.pose = NO_POSE;
+        point.rawPoint[0] = Double.NaN;
+        point.rawPoint[1] = Double.NaN;
+    }
+
+    public static class Point {
+        public double fps;
+        public final List<Target> targets = new ArrayList<>();
+        public final double[] rawPoint = new double[2];
+    }
+
+    public static class Target {
+        public double pitch;
+        public double yaw;
+        public double area;
+        public Pose2d pose;
+    }
+}
@@ -2,12 +2,20 @@ package com.chameleonvision.web;
 
 import com.chameleonvision.Exceptions.DuplicatedKeyException;
 import com.chameleonvision.config.ConfigManager;
+import com.chameleonvision.config.ConfigPersistence;
 import com.chameleonvision.network.NetworkIPMode;
+import com.chameleonvision.vision.NetworkTablesPublisher;
+import com.chameleonvision.vision.FrameRecorder;
 import com.chameleonvision.vision.VisionManager;
+import com.chameleonvision.vision.VisionScheduler;
 import com.chameleonvision.vision.VisionProcess;
 import com.chameleonvision.vision.camera.USBCameraCapture;
+import com.chameleonvision.vision.enums.PipelineExecutionPolicy;
+import com.chameleonvision.vision.image.FrameLogRing;
+import com.chameleonvision.vision.pipeline.CVPipeline;
 import com.chameleonvision.vision.pipeline.CVPipelineSettings;
 import com.chameleonvision.vision.pipeline.PipelineManager;
+import com.chameleonvision.vision.pipeline.SettingsBinder;
 import com.chameleonvision.vision.pipeline.impl.Calibrate3dPipeline;
 import com.chameleonvision.vision.pipeline.impl.StandardCVPipeline;
 import com.chameleonvision.vision.pipeline.impl.StandardCVPipelineSettings;
@@ -20,6 +28,9 @@ import io.javalin.http.Context;
 import io.javalin.http.Handler;
 
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -41,8 +52,21 @@ public class RequestHandler {
             ConfigManager.settings.netmask = (String) map.get("netmask");
             ConfigManager.settings.gateway = (String) map.get("gateway");
             ConfigManager.settings.hostname = (String) map.get("hostname");
+            if (map.get("executionPolicy") instanceof String) {
+                PipelineExecutionPolicy policy;
+                try {
+                    policy = PipelineExecutionPolicy.valueOf((String) map.get("executionPolicy"));
+                } catch (IllegalArgumentException e) {
+                    ctx.status(400);
+                    return;
+                }
+                ConfigManager.settings.executionPolicy = policy;
+                for (VisionProcess process : VisionManager.getAllVisionProcesses()) {
+                    process.setExecutionPolicy(policy);
+                }
+            }
             ConfigManager.saveGeneralSettings();
-            SocketHandler.sendFullSettings();
+            SocketHandler.publishSettings();
             ctx.status(200);
         } catch (JsonProcessingException e) {
             ctx.status(500);
@@ -110,8 +134,12 @@ public class RequestHandler {
             }
             currentCamera.getProperties().setFOV(newFOV);
             currentCamera.getProperties().setTilt(Rotation2d.fromDegrees(tilt));
+            Object bandwidth = camSettings.get("streamBandwidthKbps");
+            if (bandwidth instanceof Number) {
+                currentVisionProcess.cameraStreamer.setBandwidthBudget(Math.max(0, ((Number) bandwidth).intValue()));
+            }
             VisionManager.saveCurrentCameraSettings();
-            SocketHandler.sendFullSettings();
+            SocketHandler.publishSettings();
             ctx.status(200);
         } catch (JsonProcessingException e) {
             e.printStackTrace();
@@ -132,7 +160,7 @@ public class RequestHandler {
         }
         // convert from mm to meters
         pipeManager.calib3dPipe.setSquareSize(squareSize);
-        VisionManager.getCurrentUIVisionProcess().pipelineManager.calib3dPipe.settings.videoModeIndex = resolutionIndex;
+        pipeManager.calib3dPipe.updateSettings(List.of(SettingsBinder.of(StandardCVPipelineSettings.class).bind("videoModeIndex", resolutionIndex)));
         VisionManager.getCurrentUIVisionProcess().pipelineManager.setCalibrationMode(true);
         VisionManager.getCurrentUIVisionProcess().getCamera().setVideoMode(resolutionIndex);
     }
@@ -175,6 +203,228 @@ public class RequestHandler {
         ctx.status(200);
     }
 
+    public static void onMemoryMetrics(Context ctx) {
+        List<HashMap<String, Object>> cameras = new ArrayList<>();
+        for (VisionProcess process : VisionManager.getAllVisionProcesses()) {
+            PipelineManager pipeManager = process.pipelineManager;
+            List<CVPipeline> allPipelines = new ArrayList<>(pipeManager.pipelines);
+            allPipelines.add(pipeManager.driverModePipeline);
+            allPipelines.add(pipeManager.calib3dPipe);
+
+            long nativeBytes = 0;
+            long peakFrameBytes = 0;
+            int trackedMats = 0;
+            for (CVPipeline pipeline : allPipelines) {
+                nativeBytes += pipeline.getMatArena().getNativeBytes();
+                peakFrameBytes = Math.max(peakFrameBytes, pipeline.getMatArena().getPeakFrameBytes());
+                trackedMats += pipeline.getMatArena().getTrackedMatCount();
+            }
+
+            HashMap<String, Object> camera = new HashMap<>();
+            camera.put("camera", process.getCamera().getProperties().getNickname());
+            camera.put("currentPipeline", pipeManager.getCurrentPipeline().settings.nickname);
+            camera.put("currentPipelineNativeBytes", pipeManager.getCurrentPipeline().getMatArena().getNativeBytes());
+            camera.put("nativeBytes", nativeBytes);
+            camera.put("peakFrameBytes", peakFrameBytes);
+            camera.put("trackedMats", trackedMats);
+            cameras.add(camera);
+        }
+
+        Runtime runtime = Runtime.getRuntime();
+        HashMap<String, Object> toSend = new HashMap<>();
+        toSend.put("cameras", cameras);
+        toSend.put("heapUsedBytes", runtime.totalMemory() - runtime.freeMemory());
+        toSend.put("heapMaxBytes", runtime.maxMemory());
+
+        ctx.json(toSend);
+        ctx.status(200);
+    }
+
+    public static void onCaptureMetrics(Context ctx) {
+        List<HashMap<String, Object>> cameras = new ArrayList<>();
+        for (VisionProcess process : VisionManager.getAllVisionProcesses()) {
+            USBCameraCapture capture = process.getCamera();
+
+            HashMap<String, Object> camera = new HashMap<>();
+            camera.put("camera", capture.getProperties().getNickname());
+            camera.put("fps", process.getFps());
+            camera.put("capturedFrames", capture.getCapturedFrameCount());
+            camera.put("captureDroppedFrames", capture.getDroppedFrameCount());
+            camera.put("captureTimedOutFrames", capture.getTimedOutFrameCount());
+            camera.put("pipelineDroppedFrames", process.getPipelineDroppedFrameCount());
+            camera.put("lastFrameAgeMs", capture.getLastFrameAgeNanos() / 1000000.0);
+            camera.put("averageFrameAgeMs", capture.getAverageFrameAgeNanos() / 1000000.0);
+            camera.put("stream", process.cameraStreamer.getStreamStats());
+            cameras.add(camera);
+        }
+
+        ctx.json(cameras);
+        ctx.status(200);
+    }
+
+    public static void onLatencyMetrics(Context ctx) {
+        List<HashMap<String, Object>> cameras = new ArrayList<>();
+        for (VisionProcess process : VisionManager.getAllVisionProcesses()) {
+            HashMap<String, Object> camera = new HashMap<>(process.getLatencyTracer().getPercentiles());
+            camera.put("camera", process.getCamera().getProperties().getNickname());
+            cameras.add(camera);
+        }
+
+        ctx.json(cameras);
+        ctx.status(200);
+    }
+
+    public static void onRoiMetrics(Context ctx) {
+        List<HashMap<String, Object>> cameras = new ArrayList<>();
+        for (VisionProcess process : VisionManager.getAllVisionProcesses()) {
+            var pipeline = process.pipelineManager.getCurrentPipeline();
+            if (!(pipeline instanceof StandardCVPipeline)) continue;
+            var roiPipe = ((StandardCVPipeline) pipeline).getRegionOfInterestPipe();
+            if (roiPipe == null) continue;
+
+            HashMap<String, Object> camera = new HashMap<>();
+            camera.put("camera", process.getCamera().getProperties().getNickname());
+            camera.put("pipeline", pipeline.settings.nickname);
+            camera.put("frames", roiPipe.getTotalFrames());
+            camera.put("roiFrameRate", roiPipe.getRoiFrameRate());
+            camera.put("hitRate", roiPipe.getHitRate());
+            camera.put("lastPixels", roiPipe.getLastPixels());
+            camera.put("averagePixels", roiPipe.getAveragePixels());
+            cameras.add(camera);
+        }
+
+        ctx.json(cameras);
+        ctx.status(200);
+    }
+
+    public static void onNetworkTablesMetrics(Context ctx) {
+        ctx.json(NetworkTablesPublisher.getMetrics());
+        ctx.status(200);
+    }
+
+    public static void onPersistenceMetrics(Context ctx) {
+        ctx.json(ConfigPersistence.getMetrics());
+        ctx.status(200);
+    }
+
+    public static void onWebSocketMetrics(Context ctx) {
+        ctx.json(WebSocketFanout.getMetrics());
+        ctx.status(200);
+    }
+
+    public static void onRecordingStart(Context ctx) {
+        VisionProcess process = VisionManager.getCurrentUIVisionProcess();
+        try {
+            Path path = process.startRecording(Boolean.parseBoolean(ctx.queryParam("lossless", "false")));
+            ctx.result(path.toString());
+            ctx.status(200);
+        } catch (IOException e) {
+            e.printStackTrace();
+            ctx.status(500);
+        }
+    }
+
+    public static void onRecordingStop(Context ctx) {
+        VisionManager.getCurrentUIVisionProcess().stopRecording();
+        ctx.status(200);
+    }
+
+    public static void onRecordingStatus(Context ctx) {
+        FrameRecorder recorder = VisionManager.getCurrentUIVisionProcess().getFrameRecorder();
+        HashMap<String, Object> status = new HashMap<>();
+        status.put("recording", recorder.isRecording());
+        status.put("recordedFrames", recorder.getRecordedFrames());
+        status.put("droppedFrames", recorder.getDroppedFrames());
+        status.put("bytesWritten", recorder.getBytesWritten());
+        ctx.json(status);
+        ctx.status(200);
+    }
+
+    public static void onRingRecordingStart(Context ctx) {
+        int segmentMegabytes;
+        int segmentCount;
+        try {
+            segmentMegabytes = Integer.parseInt(ctx.queryParam("segmentMegabytes", String.valueOf(FrameLogRing.DEFAULT_SEGMENT_MEGABYTES)));
+            segmentCount = Integer.parseInt(ctx.queryParam("segments", String.valueOf(FrameLogRing.DEFAULT_SEGMENT_COUNT)));
+        } catch (NumberFormatException e) {
+            ctx.status(400);
+            return;
+        }
+        // segments are mapped whole, which Java caps at 2GB
+        if (segmentMegabytes < 1 || segmentMegabytes > 2047) {
+            ctx.result("Segments must be between 1 and 2047 megabytes");
+            ctx.status(400);
+            return;
+        }
+
+        VisionProcess process = VisionManager.getCurrentUIVisionProcess();
+        try {
+            process.startRingRecording(segmentMegabytes, segmentCount);
+            ctx.result(process.getRingFolder().toString());
+            ctx.status(200);
+        } catch (IllegalArgumentException e) {
+            ctx.result(e.getMessage());
+            ctx.status(400);
+        } catch (IOException e) {
+            e.printStackTrace();
+            ctx.status(500);
+        }
+    }
+
+    public static void onRingRecordingStop(Context ctx) {
+        VisionManager.getCurrentUIVisionProcess().stopRingRecording();
+        ctx.status(200);
+    }
+
+    public static void onRingRecordingStatus(Context ctx) throws IOException {
+        VisionProcess process = VisionManager.getCurrentUIVisionProcess();
+        FrameLogRing ring = process.getFrameLogRing();
+        HashMap<String, Object> status = new HashMap<>();
+        status.put("recording", ring != null && ring.isRecording());
+        if (ring != null) {
+            status.put("recordedFrames", ring.getRecordedFrames());
+            status.put("droppedFrames", ring.getDroppedFrames());
+            status.put("finishedSegments", ring.getFinishedSegments());
+            status.put("segmentBytes", ring.getSegmentBytes());
+            status.put("segmentCount", ring.getSegmentCount());
+        }
+
+        List<HashMap<String, Object>> segments = new ArrayList<>();
+        for (Path path : FrameLogRing.listSegments(process.getRingFolder())) {
+            HashMap<String, Object> segment = new HashMap<>();
+            segment.put("name", path.getFileName().toString());
+            segment.put("bytes", Files.size(path));
+            segments.add(segment);
+        }
+        status.put("segments", segments);
+        ctx.json(status);
+        ctx.status(200);
+    }
+
+    /**
+     * Sends one segment of the current camera's frame log ring as it is on disk. The segment being recorded into is
+     * sent at its preallocated size, and reads back up to the last frame that was complete.
+     */
+    public static void onRingSegmentDownload(Context ctx) throws IOException {
+        String name = ctx.pathParam("segment");
+        // only hand out files that are in the listing, whatever the path parameter says
+        for (Path path : FrameLogRing.listSegments(VisionManager.getCurrentUIVisionProcess().getRingFolder())) {
+            if (path.getFileName().toString().equals(name)) {
+                ctx.contentType("application/octet-stream");
+                ctx.header("Content-Disposition", "attachment; filename=\"" + name + "\"");
+                ctx.result(Files.newInputStream(path));
+                ctx.status(200);
+                return;
+            }
+        }
+        ctx.status(404);
+    }
+
+    public static void onSchedulerMetrics(Context ctx) {
+        ctx.json(VisionScheduler.getMetrics());
+        ctx.status(200);
+    }
+
     public static void onPnpModel(Context ctx) throws JsonProcessingException {
         System.out.println(ctx.body());
         ObjectMapper objectMapper = kObjectMapper;
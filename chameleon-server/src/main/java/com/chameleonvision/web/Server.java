@@ -35,6 +35,21 @@ public class Server {
         app.post("/api/settings/snapshot", RequestHandler::onSnapshot);
         app.post("/api/settings/endCalibration", RequestHandler::onCalibrationEnding);
         app.post("/api/vision/pnpModel", RequestHandler::onPnpModel);
+        app.post("/api/recording/start", RequestHandler::onRecordingStart);
+        app.post("/api/recording/stop", RequestHandler::onRecordingStop);
+        app.get("/api/recording", RequestHandler::onRecordingStatus);
+        app.post("/api/recording/ring/start", RequestHandler::onRingRecordingStart);
+        app.post("/api/recording/ring/stop", RequestHandler::onRingRecordingStop);
+        app.get("/api/recording/ring", RequestHandler::onRingRecordingStatus);
+        app.get("/api/recording/ring/:segment", RequestHandler::onRingSegmentDownload);
+        app.get("/api/metrics/memory", RequestHandler::onMemoryMetrics);
+        app.get("/api/metrics/capture", RequestHandler::onCaptureMetrics);
+        app.get("/api/metrics/latency", RequestHandler::onLatencyMetrics);
+        app.get("/api/metrics/roi", RequestHandler::onRoiMetrics);
+        app.get("/api/metrics/networktables", RequestHandler::onNetworkTablesMetrics);
+        app.get("/api/metrics/scheduler", RequestHandler::onSchedulerMetrics);
+        app.get("/api/metrics/websocket", RequestHandler::onWebSocketMetrics);
+        app.get("/api/metrics/persistence", RequestHandler::onPersistenceMetrics);
         app.start(port);
     }
 }
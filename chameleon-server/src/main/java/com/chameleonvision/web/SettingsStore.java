@@ -0,0 +1,160 @@
+package com.chameleonvision.web;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.javalin.websocket.WsContext;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Keeps the last settings tree sent to the UI, so only what changed has to be sent again.
+ * {@link #publish()} rebuilds the tree and broadcasts a {@code settingsDelta} with the changes, tagged with the version
+ * it applies on top of and the version it makes. Settings sections like {@code pipeline} are diffed field by field,
+ * everything else is replaced as a whole. A client that connects, or whose version doesn't match a delta's base,
+ * gets the full tree with its version, serialized once per version.
+ */
+public class SettingsStore {
+    private SettingsStore() {
+    }
+
+    // sections of the tree that are sent field by field
+    private static final String[] MERGED_SECTIONS = {"settings", "cameraSettings", "pipeline"};
+
+    // turns the tree into plain maps, lists and values, which compare by value and don't change under us
+    private static final ObjectMapper plainMapper = new ObjectMapper();
+
+    private static long version = 0;
+    private static Map<String, Object> snapshot = null;
+    private static byte[] fullMessage = null;
+
+    private static volatile long deltaCount = 0;
+    private static volatile long fullCount = 0;
+
+    /**
+     * Sends every client what changed since the last publish, if anything did.
+     */
+    public static void publish() {
+        publish(null);
+    }
+
+    private static synchronized void publish(WsContext skip) {
+        if (!WebSocketFanout.hasClients()) {
+            // nobody to keep up to date, the next client to connect gets the whole tree anyway
+            snapshot = null;
+            fullMessage = null;
+            return;
+        }
+
+        Map<String, Object> current = build();
+        if (current == null) return;
+        if (snapshot == null) {
+            // the clients connected while there was no tree to send them, or missed the changes since, so they get
+            // the whole tree rather than a delta they have nothing to apply to
+            snapshot = current;
+            version++;
+            fullMessage = null;
+            byte[] full = getFullMessage();
+            if (full != null) {
+                fullCount++;
+                WebSocketFanout.broadcast(full, skip);
+            }
+            return;
+        }
+
+        Map<String, Object> replace = new HashMap<>();
+        Map<String, Object> merge = new HashMap<>();
+        for (Map.Entry<String, Object> entry : current.entrySet()) {
+            String key = entry.getKey();
+            Object value = entry.getValue();
+            Object oldValue = snapshot.get(key);
+            if (Objects.equals(value, oldValue)) continue;
+
+            if (isMergedSection(key) && value instanceof Map && oldValue instanceof Map
+                    && ((Map<?, ?>) value).keySet().equals(((Map<?, ?>) oldValue).keySet())) {
+                Map<String, Object> fields = new HashMap<>();
+                for (Map.Entry<?, ?> field : ((Map<?, ?>) value).entrySet()) {
+                    if (!Objects.equals(field.getValue(), ((Map<?, ?>) oldValue).get(field.getKey()))) {
+                        fields.put((String) field.getKey(), field.getValue());
+                    }
+                }
+                merge.put(key, fields);
+            } else {
+                replace.put(key, value);
+            }
+        }
+        if (replace.isEmpty() && merge.isEmpty()) return;
+
+        Map<String, Object> delta = new HashMap<>();
+        delta.put("baseVersion", version);
+        delta.put("version", ++version);
+        delta.put("replace", replace);
+        delta.put("merge", merge);
+        snapshot = current;
+        fullMessage = null;
+        deltaCount++;
+
+        Map<String, Object> message = new HashMap<>();
+        message.put("settingsDelta", delta);
+        WebSocketFanout.broadcast(message, skip);
+    }
+
+    /**
+     * Sends one client the whole tree, after bringing every other client up to date. The client must already be added
+     * to the {@link WebSocketFanout}.
+     */
+    static synchronized void sendFull(WsContext context) {
+        publish(context);
+        if (snapshot == null) return;
+        byte[] full = getFullMessage();
+        if (full == null) return;
+        fullCount++;
+        WebSocketFanout.send(full, context);
+    }
+
+    /**
+     * @return the snapshot with its version, serialized once per version, or null if it can't be serialized
+     */
+    private static byte[] getFullMessage() {
+        if (fullMessage == null) {
+            Map<String, Object> message = new HashMap<>(snapshot);
+            message.put("settingsVersion", version);
+            try {
+                fullMessage = WebSocketFanout.serialize(message);
+            } catch (IOException e) {
+                System.err.println("Failed to serialize settings!");
+                e.printStackTrace();
+            }
+        }
+        return fullMessage;
+    }
+
+    private static boolean isMergedSection(String key) {
+        for (String section : MERGED_SECTIONS) {
+            if (section.equals(key)) return true;
+        }
+        return false;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> build() {
+        Map<String, Object> tree = SocketHandler.getFullSettings();
+        if (tree == null) return null;
+        try {
+            return plainMapper.convertValue(tree, Map.class);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Failed to snapshot settings!");
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    public static synchronized HashMap<String, Object> getMetrics() {
+        HashMap<String, Object> metrics = new HashMap<>();
+        metrics.put("version", version);
+        metrics.put("deltas", deltaCount);
+        metrics.put("fullSyncs", fullCount);
+        return metrics;
+    }
+}
@@ -2,6 +2,7 @@ package com.chameleonvision.web;
 
 import com.chameleonvision.config.CameraCalibrationConfig;
 import com.chameleonvision.config.ConfigManager;
+import com.chameleonvision.config.ConfigPersistence;
 import com.chameleonvision.vision.VisionManager;
 import com.chameleonvision.vision.VisionProcess;
 import com.chameleonvision.vision.camera.CameraCapture;
@@ -12,7 +13,8 @@ import com.chameleonvision.vision.enums.StreamDivisor;
 import com.chameleonvision.vision.pipeline.CVPipeline;
 import com.chameleonvision.vision.pipeline.impl.StandardCVPipeline;
 import com.chameleonvision.vision.pipeline.CVPipelineSettings;
-import com.fasterxml.jackson.core.JsonProcessingException;
+import com.chameleonvision.vision.pipeline.SettingsBinder;
+import com.chameleonvision.vision.pipeline.impl.StandardCVPipelineSettings;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import edu.wpi.cscore.VideoMode;
@@ -24,31 +26,32 @@ import org.apache.commons.lang3.ArrayUtils;
 import org.msgpack.jackson.dataformat.MessagePackFactory;
 
 import java.lang.reflect.Field;
-import java.nio.ByteBuffer;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 
 public class SocketHandler {
 
-    private static List<WsContext> users;
     private static ObjectMapper objectMapper;
-
-    private static final Object broadcastLock = new Object();
+    // getFields() copies the array every time it's called
+    private static final Map<Class<?>, Field[]> pipelineFields = new ConcurrentHashMap<>();
 
     SocketHandler() {
-        users = new ArrayList<>();
         objectMapper = new ObjectMapper(new MessagePackFactory());
+        // look the setters up now rather than on the first slider move
+        SettingsBinder.of(CVPipelineSettings.class);
+        SettingsBinder.of(StandardCVPipelineSettings.class);
     }
 
     void onConnect(WsConnectContext context) {
-        users.add(context);
-        sendFullSettings();
+        WebSocketFanout.addClient(context);
+        SettingsStore.sendFull(context);
     }
 
     void onClose(WsCloseContext context) {
-        users.remove(context);
+        WebSocketFanout.removeClient(context);
     }
 
     @SuppressWarnings("unchecked")
@@ -56,6 +59,9 @@ public class SocketHandler {
         Map<String, Object> deserialized = objectMapper.readValue(ArrayUtils.toPrimitive(context.data()), new TypeReference<>() {
         });
         for (Map.Entry<String, Object> entry : deserialized.entrySet()) {
+            // applied settings reach every client, this one included, through the versioned deltas, so a value the
+            // server rejected is never shown. Only what isn't a setting is passed on as it came in
+            boolean isSetting = false;
             try {
                 VisionProcess currentProcess = VisionManager.getCurrentUIVisionProcess();
                 CameraCapture currentCamera = currentProcess.getCamera();
@@ -63,9 +69,15 @@ public class SocketHandler {
 //                System.out.println("entry.getKey()+entry.getValue()= " + entry.getKey() + entry.getValue());
                 switch (entry.getKey()) {
                     case "driverMode": {
+                        isSetting = true;
                         HashMap<String, Object> data = (HashMap<String, Object>) entry.getValue();
-                        currentProcess.getDriverModeSettings().exposure = (Integer) data.get("driverExposure");
-                        currentProcess.getDriverModeSettings().brightness = (Integer) data.get("driverBrightness");
+                        CVPipeline driverModePipeline = currentProcess.pipelineManager.driverModePipeline;
+                        SettingsBinder binder = SettingsBinder.of(driverModePipeline.settings.getClass());
+                        // checked before anything changes, a bad value throws and is skipped
+                        List<SettingsBinder.SettingsUpdate> updates = List.of(
+                                binder.bind("exposure", data.get("driverExposure")),
+                                binder.bind("brightness", data.get("driverBrightness")));
+                        driverModePipeline.updateSettings(updates);
                         currentProcess.setDriverMode((Boolean) data.get("isDriver"));
 
                         VisionManager.saveCurrentCameraDriverMode();
@@ -73,13 +85,13 @@ public class SocketHandler {
                     }
                     case "changeCameraName": {
                         currentProcess.setCameraNickname((String) entry.getValue());
-                        sendFullSettings();
+                        publishSettings();
                         VisionManager.saveCurrentCameraSettings();
                         break;
                     }
                     case "changePipelineName": {
                         currentProcess.pipelineManager.renameCurrentPipeline((String) entry.getValue());
-                        sendFullSettings();
+                        publishSettings();
                         VisionManager.saveCurrentCameraPipelines();
                         break;
                     }
@@ -88,7 +100,7 @@ public class SocketHandler {
                         String pipeName = (String) entry.getValue();
                         // TODO: add to UI selection for new 2d/3d
                         currentProcess.pipelineManager.addNewPipeline(pipeName);
-                        sendFullSettings();
+                        publishSettings();
                         VisionManager.saveCurrentCameraPipelines();
                         break;
                     }
@@ -96,12 +108,17 @@ public class SocketHandler {
                         switch ((String) entry.getValue()) {
                             case "deleteCurrentPipeline":
                                 currentProcess.pipelineManager.deleteCurrentPipeline();
-                                sendFullSettings();
+                                publishSettings();
                                 VisionManager.saveCurrentCameraPipelines();
                                 break;
+                            case "resyncSettings":
+                                SettingsStore.sendFull(context);
+                                break;
                             case "save":
                                 ConfigManager.saveGeneralSettings();
                                 VisionManager.saveAllCameras();
+                                // the user asked for it, so it's on disk before saying so
+                                ConfigPersistence.flush();
                                 System.out.println("Saved Settings");
                                 break;
                         }
@@ -110,16 +127,18 @@ public class SocketHandler {
                     }
                     case "currentCamera": {
                         VisionManager.setCurrentProcessByIndex((Integer) entry.getValue());
-                        sendFullSettings();
+                        publishSettings();
                         break;
                     }
                     case "is3D": {
+                        isSetting = true;
                         VisionManager.getCurrentUIVisionProcess().setIs3d((Boolean) entry.getValue());
+                        publishSettings();
                         break;
                     }
                     case "currentPipeline": {
                         currentProcess.pipelineManager.setCurrentPipeline((Integer) entry.getValue());
-                        sendFullSettings();
+                        publishSettings();
                         break;
                     }
                     case "isPNPCalibration": {
@@ -128,13 +147,20 @@ public class SocketHandler {
                     }
                     case "takeCalibrationSnapshot": {
                         currentProcess.pipelineManager.calib3dPipe.takeSnapshot();
+                        break;
                     }
                     default: {
+                        isSetting = true;
+                        CVPipeline changedPipeline = currentProcess.pipelineManager.getDriverMode()
+                                ? currentProcess.pipelineManager.driverModePipeline : currentPipeline;
+                        // checked before anything changes, a bad value throws and is skipped
+                        SettingsBinder.SettingsUpdate update = SettingsBinder.of(changedPipeline.settings.getClass())
+                                .bind(entry.getKey(), entry.getValue());
 
                         switch (entry.getKey()) {//Pre field value set
                             case "rotationMode": {//Create new CaptureStaticProperties with new width and height, reset crosshair calib
                                 ImageRotationMode oldRot = currentPipeline.settings.rotationMode;
-                                ImageRotationMode newRot = ImageRotationMode.class.getEnumConstants()[(Integer) entry.getValue()];
+                                ImageRotationMode newRot = (ImageRotationMode) update.getValue();
                                 CaptureStaticProperties prop = currentCamera.getProperties().getStaticProperties();
                                 int width, height;
                                 if (oldRot.isRotated() != newRot.isRotated()) {
@@ -147,82 +173,60 @@ public class SocketHandler {
                                 prop = currentCamera.getProperties().getStaticProperties();
                                 currentProcess.cameraStreamer.recalculateDivision();
                                 if (currentPipeline instanceof StandardCVPipeline)
-                                    ((StandardCVPipeline) currentPipeline).settings.point = Arrays.asList(prop.mode.width / 2, prop.mode.height / 2);//Reset Crosshair in single point calib
+                                    resetPoint(currentPipeline, Arrays.asList(prop.mode.width / 2, prop.mode.height / 2));//Reset Crosshair in single point calib
                                 break;
                             }
 
                         }
 
-
-                        if (currentProcess.pipelineManager.getDriverMode()) {
-                            setField(currentProcess.pipelineManager.driverModePipeline.settings, entry.getKey(), entry.getValue());
-                        } else {
-                            setField(currentPipeline.settings, entry.getKey(), entry.getValue());
-                        }
+                        // applied by the vision thread between two frames
+                        changedPipeline.updateSettings(List.of(update));
 
                         //Post field value set
                         switch (entry.getKey()) {
                             case "exposure": {
-                                currentCamera.setExposure((Integer) entry.getValue());
+                                currentCamera.setExposure(((Number) update.getValue()).intValue());
                                 break;
                             }
                             case "brightness": {
-                                currentCamera.setBrightness((Integer) entry.getValue());
+                                currentCamera.setBrightness(((Number) update.getValue()).intValue());
                                 break;
                             }
                             case "videoModeIndex": {
                                 if (currentPipeline instanceof StandardCVPipeline)
-                                    ((StandardCVPipeline) currentPipeline).settings.point = new ArrayList<>();//This will reset the calibration
-                                currentCamera.setVideoMode((Integer) entry.getValue());
+                                    resetPoint(currentPipeline, new ArrayList<>());//This will reset the calibration
+                                currentCamera.setVideoMode((Integer) update.getValue());
                                 currentProcess.cameraStreamer.recalculateDivision();
                                 break;
                             }
                             case "streamDivisor": {
-                                currentProcess.cameraStreamer.setDivisor(StreamDivisor.values()[(Integer) entry.getValue()], true);
+                                currentProcess.cameraStreamer.setDivisor((StreamDivisor) update.getValue(), true);
                                 break;
                             }
                         }
 
                         VisionManager.saveCurrentCameraPipelines();
+                        publishSettings();
                         break;
                     }
                 }
             } catch (Exception e) {
                 System.err.println(e.getMessage());
             }
-            broadcastMessage(deserialized, context);
+            if (!isSetting) {
+                HashMap<String, Object> message = new HashMap<>();
+                message.put(entry.getKey(), entry.getValue());
+                broadcastMessage(message, context);
+            }
         }
     }
 
-    private void setField(Object obj, String fieldName, Object value) {
-        try {
-            Field field = obj.getClass().getField(fieldName);
-            if (field.getType().isEnum())
-                field.set(obj, field.getType().getEnumConstants()[(Integer) value]);
-            else
-                field.set(obj, value);
-        } catch (NoSuchFieldException | IllegalAccessException ex) {
-            ex.printStackTrace();
-        }
+    private static void resetPoint(CVPipeline pipeline, List<Number> point) {
+        pipeline.updateSettings(List.of(SettingsBinder.of(StandardCVPipelineSettings.class).bind("point", point)));
     }
 
     private static void broadcastMessage(Object obj, WsContext userToSkip) {
-        synchronized (broadcastLock) {
-            if (users != null) {
-                var userList = users;
-                for (WsContext user : userList) {
-                    if (userToSkip != null && user.getSessionId().equals(userToSkip.getSessionId())) {
-                        continue;
-                    }
-                    try {
-                        ByteBuffer b = ByteBuffer.wrap(objectMapper.writeValueAsBytes(obj));
-                        user.send(b);
-                    } catch (JsonProcessingException e) {
-                        e.printStackTrace();
-                    }
-                }
-            }
-        }
+        WebSocketFanout.broadcast(obj, userToSkip);
     }
 
     public static void broadcastMessage(Object obj) {
@@ -231,7 +235,7 @@ public class SocketHandler {
 
     private static HashMap<String, Object> getOrdinalPipeline(Class cvClass) throws IllegalAccessException {
         HashMap<String, Object> tmp = new HashMap<>();
-        for (Field field : cvClass.getFields()) { // iterate over every field in CVPipelineSettings
+        for (Field field : pipelineFields.computeIfAbsent(cvClass, Class::getFields)) { // iterate over every field in CVPipelineSettings
             try {
                 if (!field.getType().isEnum()) { // if the field is not an enum, get it based on the current pipeline
                     tmp.put(field.getName(), field.get(VisionManager.getCurrentUIVisionProcess().pipelineManager.getCurrentPipeline().settings));
@@ -266,6 +270,7 @@ public class SocketHandler {
         tmp.put("streamDivisor", currentVisionProcess.cameraStreamer.getDivisor().ordinal());
         tmp.put("resolution", currentVisionProcess.getCamera().getProperties().getCurrentVideoModeIndex());
         tmp.put("tilt", currentVisionProcess.getCamera().getProperties().getTilt().getDegrees());
+        tmp.put("streamBandwidthKbps", currentVisionProcess.cameraStreamer.getBandwidthBudget());
         
         List<CameraCalibrationConfig.UICameraCalibrationConfig> calibrations = currentCamera.getAllCalibrationData().stream()
                 .map(CameraCalibrationConfig.UICameraCalibrationConfig::new).collect(Collectors.toList());
@@ -274,7 +279,10 @@ public class SocketHandler {
         return tmp;
     }
 
-    public static void sendFullSettings() {
+    /**
+     * @return every setting the UI shows, or null if there are none yet
+     */
+    static Map<String, Object> getFullSettings() {
         //General settings
         Map<String, Object> fullSettings = new HashMap<>();
 
@@ -293,7 +301,15 @@ public class SocketHandler {
             fullSettings.put("currentCameraIndex", VisionManager.getCurrentUIVisionProcessIndex());
         } catch (IllegalAccessException e) {
             System.err.println("No camera found!");
+            return null;
         }
-        broadcastMessage(fullSettings);
+        return fullSettings;
+    }
+
+    /**
+     * Sends every client the settings that changed, see {@link SettingsStore}.
+     */
+    public static void publishSettings() {
+        SettingsStore.publish();
     }
 }
@@ -0,0 +1,304 @@
+package com.chameleonvision.web;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.javalin.websocket.WsContext;
+import org.msgpack.jackson.dataformat.MessagePackFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Sends messages to every connected browser without letting a slow one hold up the others, or the vision threads.
+ * Every message is serialized once and the same bytes are queued for each client. Each client has its own bounded
+ * queue and its own sender thread, when a queue is full the oldest live target update in it is dropped, so a client
+ * that can't keep up sees fewer updates rather than older ones. Settings messages are only dropped if a queue holds
+ * nothing else.
+ * Vision threads hand live target updates to the fanout thread through {@link #publishLiveUpdate(LiveTargetUpdate)},
+ * which never blocks. The fanout thread serializes the newest update and queues it, updates published in between
+ * replace each other.
+ */
+public class WebSocketFanout {
+    private WebSocketFanout() {
+    }
+
+    // about a quarter of a second of live updates
+    public static final int CLIENT_QUEUE_CAPACITY = 8;
+
+    private static final ObjectMapper objectMapper = new ObjectMapper(new MessagePackFactory());
+    // reset() keeps the buffer, so serializing only allocates the bytes that are sent
+    private static final ByteArrayOutputStream serializeBuffer = new ByteArrayOutputStream(4096);
+
+    private static final Map<String, Client> clients = new ConcurrentHashMap<>();
+
+    private static final AtomicReference<LiveTargetUpdate> pendingUpdate = new AtomicReference<>();
+    private static final AtomicReference<LiveTargetUpdate> freeUpdate = new AtomicReference<>();
+    private static Thread fanoutThread;
+    private static volatile boolean signalled = false;
+
+    private static volatile long liveUpdates = 0;
+    private static volatile long coalescedUpdates = 0;
+    private static volatile double averageSerializeNanos = 0;
+
+    static synchronized void addClient(WsContext context) {
+        if (fanoutThread == null) {
+            fanoutThread = new Thread(WebSocketFanout::run);
+            fanoutThread.setName("WebSocket Fanout Thread");
+            fanoutThread.setDaemon(true);
+            fanoutThread.start();
+        }
+
+        Client client = new Client(context);
+        Client old = clients.put(context.getSessionId(), client);
+        if (old != null) old.close();
+        client.start();
+    }
+
+    static void removeClient(WsContext context) {
+        Client client = clients.remove(context.getSessionId());
+        if (client != null) client.close();
+    }
+
+    public static boolean hasClients() {
+        return !clients.isEmpty();
+    }
+
+    /**
+     * Sends a message to every client.
+     *
+     * @param skip the client not to send it to, usually the one that sent it, or null
+     */
+    static void broadcast(Object message, WsContext skip) {
+        if (clients.isEmpty()) return;
+        byte[] data;
+        try {
+            data = serialize(message);
+        } catch (IOException e) {
+            System.err.println("Failed to serialize websocket message!");
+            e.printStackTrace();
+            return;
+        }
+        enqueue(new Message(data, false), skip == null ? null : skip.getSessionId());
+    }
+
+    /**
+     * Sends an already serialized message to every client.
+     */
+    static void broadcast(byte[] data, WsContext skip) {
+        enqueue(new Message(data, false), skip == null ? null : skip.getSessionId());
+    }
+
+    /**
+     * Sends an already serialized message to one client.
+     */
+    static void send(byte[] data, WsContext context) {
+        Client client = clients.get(context.getSessionId());
+        if (client != null) client.offer(new Message(data, false));
+    }
+
+    /**
+     * @return an update to fill in and pass to {@link #publishLiveUpdate(LiveTargetUpdate)}, reused where possible
+     */
+    public static LiveTargetUpdate obtainLiveUpdate() {
+        LiveTargetUpdate update = freeUpdate.getAndSet(null);
+        return update != null ? update : new LiveTargetUpdate();
+    }
+
+    /**
+     * Hands a live update to the fanout thread. Never blocks.
+     */
+    public static void publishLiveUpdate(LiveTargetUpdate update) {
+        LiveTargetUpdate replaced = pendingUpdate.getAndSet(update);
+        if (replaced != null) {
+            coalescedUpdates++;
+            freeUpdate.set(replaced);
+        }
+        if (!signalled && fanoutThread != null) {
+            signalled = true;
+            LockSupport.unpark(fanoutThread);
+        }
+    }
+
+    private static void run() {
+        while (!Thread.interrupted()) {
+            while (!signalled) {
+                LockSupport.park();
+                if (Thread.interrupted()) return;
+            }
+            signalled = false;
+
+            LiveTargetUpdate update = pendingUpdate.getAndSet(null);
+            if (update == null) continue;
+            try {
+                long startNanos = System.nanoTime();
+                byte[] data = serialize(update);
+                averageSerializeNanos = averageSerializeNanos * 0.9 + (System.nanoTime() - startNanos) * 0.1;
+                liveUpdates++;
+                enqueue(new Message(data, true), null);
+            } catch (IOException e) {
+                System.err.println("Failed to serialize live target update!");
+                e.printStackTrace();
+            }
+            freeUpdate.set(update);
+        }
+    }
+
+    static byte[] serialize(Object message) throws IOException {
+        synchronized (serializeBuffer) {
+            serializeBuffer.reset();
+            objectMapper.writeValue(serializeBuffer, message);
+            return serializeBuffer.toByteArray();
+        }
+    }
+
+    private static void enqueue(Message message, String skipSessionId) {
+        for (Client client : clients.values()) {
+            if (client.sessionId.equals(skipSessionId)) continue;
+            client.offer(message);
+        }
+    }
+
+    public static HashMap<String, Object> getMetrics() {
+        HashMap<String, Object> metrics = new HashMap<>();
+        metrics.put("liveUpdates", liveUpdates);
+        metrics.put("coalescedUpdates", coalescedUpdates);
+        metrics.put("averageSerializeMs", averageSerializeNanos / 1000000.0);
+        metrics.put("settings", SettingsStore.getMetrics());
+
+        List<HashMap<String, Object>> clientMetrics = new ArrayList<>();
+        for (Client client : clients.values()) {
+            HashMap<String, Object> clientMetric = new HashMap<>();
+            clientMetric.put("sessionId", client.sessionId);
+            clientMetric.put("queued", client.getQueued());
+            clientMetric.put("sent", client.sentCount);
+            clientMetric.put("sentBytes", client.sentBytes);
+            clientMetric.put("dropped", client.droppedCount);
+            clientMetric.put("failed", client.failedCount);
+            clientMetric.put("lastLagMs", client.lastLagNanos / 1000000.0);
+            clientMetric.put("averageLagMs", client.averageLagNanos / 1000000.0);
+            clientMetric.put("maxLagMs", client.maxLagNanos / 1000000.0);
+            clientMetrics.add(clientMetric);
+        }
+        metrics.put("clients", clientMetrics);
+        return metrics;
+    }
+
+    private static class Message {
+        final byte[] data;
+        // live updates may be dropped for a newer one, settings may not
+        final boolean droppable;
+        final long createdNanos = System.nanoTime();
+
+        Message(byte[] data, boolean droppable) {
+            this.data = data;
+            this.droppable = droppable;
+        }
+    }
+
+    private static class Client {
+        final WsContext context;
+        final String sessionId;
+        private final ArrayDeque<Message> queue = new ArrayDeque<>(CLIENT_QUEUE_CAPACITY);
+        private final Thread senderThread;
+        private volatile boolean closed = false;
+
+        volatile long sentCount = 0;
+        volatile long sentBytes = 0;
+        volatile long droppedCount = 0;
+        volatile long failedCount = 0;
+        // from when a message was serialized to when it was written to this client's socket
+        volatile long lastLagNanos = 0;
+        volatile double averageLagNanos = 0;
+        volatile long maxLagNanos = 0;
+
+        Client(WsContext context) {
+            this.context = context;
+            this.sessionId = context.getSessionId();
+            senderThread = new Thread(this::run);
+            senderThread.setName("WebSocket Sender Thread " + sessionId);
+            senderThread.setDaemon(true);
+        }
+
+        void start() {
+            senderThread.start();
+        }
+
+        void close() {
+            closed = true;
+            LockSupport.unpark(senderThread);
+        }
+
+        void offer(Message message) {
+            synchronized (queue) {
+                if (queue.size() >= CLIENT_QUEUE_CAPACITY) {
+                    dropOldest();
+                }
+                queue.addLast(message);
+            }
+            LockSupport.unpark(senderThread);
+        }
+
+        private void dropOldest() {
+            Iterator<Message> iterator = queue.iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next().droppable) {
+                    iterator.remove();
+                    droppedCount++;
+                    return;
+                }
+            }
+            queue.removeFirst();
+            droppedCount++;
+        }
+
+        int getQueued() {
+            synchronized (queue) {
+                return queue.size();
+            }
+        }
+
+        private Message poll() {
+            synchronized (queue) {
+                return queue.pollFirst();
+            }
+        }
+
+        private void run() {
+            while (!closed) {
+                Message message = poll();
+                if (message == null) {
+                    LockSupport.park();
+                    continue;
+                }
+                try {
+                    // blocks while the client's connection is congested, which only ever holds up this client
+                    context.send(ByteBuffer.wrap(message.data));
+                    sentCount++;
+                    sentBytes += message.data.length;
+                } catch (Exception e) {
+                    failedCount++;
+                    if (context.session != null && !context.session.isOpen()) {
+                        closed = true;
+                        clients.remove(sessionId, this);
+                        return;
+                    }
+                    System.err.println("Failed to send websocket message to " + sessionId + ": " + e.getMessage());
+                }
+
+                long lagNanos = System.nanoTime() - message.createdNanos;
+                lastLagNanos = lagNanos;
+                averageLagNanos = averageLagNanos * 0.9 + lagNanos * 0.1;
+                if (lagNanos > maxLagNanos) maxLagNanos = lagNanos;
+            }
+        }
+    }
+}
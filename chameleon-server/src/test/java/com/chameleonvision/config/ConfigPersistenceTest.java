@@ -0,0 +1,105 @@
+package com.chameleonvision.config;
+
+import com.chameleonvision.util.JacksonHelper;
+import com.chameleonvision.vision.pipeline.CVPipelineSettings;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class ConfigPersistenceTest {
+
+    @Test
+    public void coalesceTest() throws IOException, InterruptedException {
+        Path folder = Files.createTempDirectory("config");
+        Path path = folder.resolve("driverMode.json");
+        var settings = new CVPipelineSettings();
+        long writesBefore = getMetric("writes");
+        long coalescedBefore = getMetric("coalesced");
+
+        try {
+            for (int i = 0; i < 20; i++) {
+                settings.exposure = i;
+                ConfigPersistence.save(path, settings);
+            }
+            // still inside the debounce window
+            Assertions.assertFalse(Files.exists(path));
+
+            // the first write also loads Jackson, give it some time
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (getMetric("writes") == writesBefore && System.currentTimeMillis() < deadline) {
+                Thread.sleep(ConfigPersistence.DEBOUNCE_MS / 10);
+            }
+            // a second write would have been due by now
+            Thread.sleep(ConfigPersistence.MAX_DELAY_MS);
+
+            Assertions.assertEquals(1, getMetric("writes") - writesBefore);
+            Assertions.assertEquals(19, getMetric("coalesced") - coalescedBefore);
+            Assertions.assertFalse(Files.exists(folder.resolve("driverMode.json.tmp")));
+            Assertions.assertEquals(19.0, JacksonHelper.deserializer(path, CVPipelineSettings.class).exposure);
+        } finally {
+            deleteFolder(folder);
+        }
+    }
+
+    @Test
+    public void deleteTest() throws IOException {
+        Path folder = Files.createTempDirectory("config");
+        Path path = folder.resolve("pipeline.json");
+
+        try {
+            ConfigPersistence.save(path, new CVPipelineSettings());
+            ConfigPersistence.delete(path);
+            ConfigPersistence.flush();
+            Assertions.assertFalse(Files.exists(path));
+
+            var settings = new CVPipelineSettings();
+            settings.nickname = "flushed";
+            ConfigPersistence.save(path, settings);
+            ConfigPersistence.flush();
+            Assertions.assertEquals("flushed", JacksonHelper.deserializer(path, CVPipelineSettings.class).nickname);
+        } finally {
+            deleteFolder(folder);
+        }
+    }
+
+    @Test
+    public void moveTest() throws IOException {
+        Path folder = Files.createTempDirectory("config");
+        Path oldPath = folder.resolve("old.json");
+        Path newPath = folder.resolve("new.json");
+
+        try {
+            var settings = new CVPipelineSettings();
+            ConfigPersistence.save(oldPath, settings);
+            ConfigPersistence.flush();
+
+            // a write still pending for the old name must not bring it back
+            ConfigPersistence.save(oldPath, settings);
+            settings.nickname = "new";
+            ConfigPersistence.move(oldPath, newPath, settings);
+            Assertions.assertFalse(Files.exists(oldPath));
+            Assertions.assertEquals("new", JacksonHelper.deserializer(newPath, CVPipelineSettings.class).nickname);
+
+            ConfigPersistence.flush();
+            Assertions.assertFalse(Files.exists(oldPath));
+        } finally {
+            deleteFolder(folder);
+        }
+    }
+
+    private static long getMetric(String name) {
+        return (Long) ConfigPersistence.getMetrics().get(name);
+    }
+
+    private static void deleteFolder(Path folder) throws IOException {
+        try (var files = Files.list(folder)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(folder);
+    }
+}
@@ -0,0 +1,68 @@
+package com.chameleonvision.util;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+public class ConstantVelocityKalmanFilterTest {
+
+    private static final double DT = 1.0 / 30;
+
+    @Test
+    public void tracksConstantVelocityTest() {
+        var filter = new ConstantVelocityKalmanFilter(50, 2);
+        var random = new Random(42);
+        double velocity = 120;
+
+        filter.reset(100, 500);
+        for (int i = 1; i <= 90; i++) {
+            filter.predict(DT);
+            filter.update(100 + velocity * i * DT + random.nextGaussian() * 2);
+        }
+
+        Assertions.assertEquals(100 + velocity * 90 * DT, filter.getPosition(), 2);
+        Assertions.assertEquals(velocity, filter.getVelocity(), 10);
+    }
+
+    @Test
+    public void smoothsNoiseTest() {
+        var filter = new ConstantVelocityKalmanFilter(10, 4);
+        var random = new Random(7);
+
+        filter.reset(50, 500);
+        double filteredError = 0;
+        double measuredError = 0;
+        for (int i = 0; i < 300; i++) {
+            double measured = 50 + random.nextGaussian() * 4;
+            filter.predict(DT);
+            filter.update(measured);
+            if (i >= 30) {
+                filteredError += Math.abs(filter.getPosition() - 50);
+                measuredError += Math.abs(measured - 50);
+            }
+        }
+
+        Assertions.assertTrue(filteredError < measuredError / 2);
+    }
+
+    @Test
+    public void predictsThroughDropoutTest() {
+        var filter = new ConstantVelocityKalmanFilter(50, 1);
+
+        filter.reset(0, 500);
+        for (int i = 1; i <= 60; i++) {
+            filter.predict(DT);
+            filter.update(60 * i * DT);
+        }
+        double deviationBefore = filter.getPositionDeviation();
+
+        // three frames without a measurement
+        for (int i = 0; i < 3; i++) {
+            filter.predict(DT);
+        }
+
+        Assertions.assertEquals(60 * 63 * DT, filter.getPosition(), 1);
+        Assertions.assertTrue(filter.getPositionDeviation() > deviationBefore);
+    }
+}
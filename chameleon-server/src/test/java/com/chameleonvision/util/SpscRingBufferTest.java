@@ -0,0 +1,51 @@
+package com.chameleonvision.util;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class SpscRingBufferTest {
+
+    @Test
+    public void boundedFifoTest() {
+        var buffer = new SpscRingBuffer<Integer>(3);
+
+        Assertions.assertTrue(buffer.isEmpty());
+        Assertions.assertNull(buffer.poll());
+
+        Assertions.assertTrue(buffer.offer(1));
+        Assertions.assertTrue(buffer.offer(2));
+        Assertions.assertTrue(buffer.offer(3));
+        Assertions.assertFalse(buffer.offer(4));
+        Assertions.assertEquals(3, buffer.size());
+
+        Assertions.assertEquals(1, (int) buffer.poll());
+        Assertions.assertTrue(buffer.offer(4));
+        Assertions.assertEquals(2, (int) buffer.poll());
+        Assertions.assertEquals(3, (int) buffer.poll());
+        Assertions.assertEquals(4, (int) buffer.poll());
+        Assertions.assertNull(buffer.poll());
+    }
+
+    @Test
+    public void producerConsumerTest() throws InterruptedException {
+        final int count = 100_000;
+        var buffer = new SpscRingBuffer<Integer>(4);
+
+        var producer = new Thread(() -> {
+            try {
+                for (int i = 0; i < count; i++) {
+                    buffer.put(i);
+                }
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+        });
+        producer.start();
+
+        for (int i = 0; i < count; i++) {
+            Assertions.assertEquals(i, (int) buffer.take());
+        }
+        producer.join();
+        Assertions.assertTrue(buffer.isEmpty());
+    }
+}
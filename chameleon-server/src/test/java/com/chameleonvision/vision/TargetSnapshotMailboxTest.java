@@ -0,0 +1,41 @@
+package com.chameleonvision.vision;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class TargetSnapshotMailboxTest {
+
+    @Test
+    public void newestSnapshotWinsTest() {
+        var mailbox = new TargetSnapshotMailbox();
+        Assertions.assertNull(mailbox.take());
+
+        mailbox.getWritable().targetCount = 1;
+        Assertions.assertFalse(mailbox.offer());
+        mailbox.getWritable().targetCount = 2;
+        Assertions.assertTrue(mailbox.offer());
+
+        TargetSnapshot snapshot = mailbox.take();
+        Assertions.assertNotNull(snapshot);
+        Assertions.assertEquals(2, snapshot.targetCount);
+        Assertions.assertNull(mailbox.take());
+
+        Assertions.assertEquals(2, mailbox.getOfferedCount());
+        Assertions.assertEquals(1, mailbox.getCoalescedCount());
+    }
+
+    @Test
+    public void snapshotsAreNeverSharedTest() {
+        var mailbox = new TargetSnapshotMailbox();
+        TargetSnapshot taken = null;
+        for (int i = 0; i < 10; i++) {
+            Assertions.assertNotSame(taken, mailbox.getWritable());
+            mailbox.getWritable().targetCount = i;
+            mailbox.offer();
+            if (i % 3 == 0) {
+                taken = mailbox.take();
+                Assertions.assertEquals(i, taken.targetCount);
+            }
+        }
+    }
+}
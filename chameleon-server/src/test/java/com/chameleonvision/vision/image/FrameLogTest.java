@@ -0,0 +1,109 @@
+package com.chameleonvision.vision.image;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+public class FrameLogTest {
+
+    private static final int WIDTH = 4;
+    private static final int HEIGHT = 2;
+    // CV_8UC3
+    private static final int MAT_TYPE = 16;
+
+    @Test
+    public void roundTripTest() throws IOException {
+        Path path = Files.createTempFile("framelog", ".cvlog");
+        try {
+            writeLog(path, 3);
+
+            try (var reader = new FrameLogReader(path)) {
+                Assertions.assertEquals(WIDTH, reader.getWidth());
+                Assertions.assertEquals(HEIGHT, reader.getHeight());
+                Assertions.assertEquals(MAT_TYPE, reader.getMatType());
+                Assertions.assertEquals(30, reader.getFps());
+                Assertions.assertEquals(68.5, reader.getFov());
+                Assertions.assertFalse(reader.isLossless());
+                Assertions.assertEquals(3, reader.getFrameCount());
+
+                for (int i = 0; i < 3; i++) {
+                    Assertions.assertEquals(1000L * i, reader.getTimestamp(i));
+                    ByteBuffer data = reader.getFrameData(i);
+                    Assertions.assertEquals(WIDTH * HEIGHT * 3, data.remaining());
+                    Assertions.assertEquals((byte) i, data.get(0));
+                    Assertions.assertTrue(reader.getTargets(i).isEmpty());
+                }
+
+                // settings are only written when they change, the frames in between keep the last ones
+                Assertions.assertEquals("Settings\n{\"a\":0}", reader.getSettings(0));
+                Assertions.assertEquals("Settings\n{\"a\":0}", reader.getSettings(1));
+                Assertions.assertEquals("Settings\n{\"a\":2}", reader.getSettings(2));
+            }
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    @Test
+    public void cutShortTest() throws IOException {
+        Path path = Files.createTempFile("framelog", ".cvlog");
+        try {
+            writeLog(path, 3);
+
+            // lose the index and half of the last frame, as if the recording had been killed
+            long frameRecordBytes = FrameLogWriter.RECORD_OVERHEAD + WIDTH * HEIGHT * 3;
+            long indexBytes = 3 * Long.BYTES + FrameLogWriter.FOOTER_BYTES;
+            try (var channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                channel.truncate(channel.size() - indexBytes - frameRecordBytes / 2);
+            }
+
+            try (var reader = new FrameLogReader(path)) {
+                Assertions.assertEquals(2, reader.getFrameCount());
+                Assertions.assertEquals(1000L, reader.getTimestamp(1));
+                Assertions.assertEquals((byte) 1, reader.getFrameData(1).get(0));
+            }
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    @Test
+    public void preallocatedTest() throws IOException {
+        Path path = Files.createTempFile("framelog", ".cvlog");
+        try {
+            writeLog(path, 3);
+
+            // an unfinished ring segment, no index and zeroes up to its preallocated size
+            long indexBytes = 3 * Long.BYTES + FrameLogWriter.FOOTER_BYTES;
+            try (var channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                channel.truncate(channel.size() - indexBytes);
+                channel.write(ByteBuffer.allocate(4096), channel.size());
+            }
+
+            try (var reader = new FrameLogReader(path)) {
+                Assertions.assertEquals(3, reader.getFrameCount());
+                Assertions.assertEquals(2000L, reader.getTimestamp(2));
+                Assertions.assertEquals("Settings\n{\"a\":2}", reader.getSettings(2));
+            }
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    private static void writeLog(Path path, int frames) throws IOException {
+        byte[] frame = new byte[WIDTH * HEIGHT * 3];
+        try (var writer = new FrameLogWriter(path, WIDTH, HEIGHT, MAT_TYPE, 30, 68.5, FrameLogWriter.ENCODING_RAW)) {
+            for (int i = 0; i < frames; i++) {
+                frame[0] = (byte) i;
+                String settings = "Settings\n{\"a\":" + (i < 2 ? 0 : i) + "}";
+                writer.writeFrame(1000L * i, settings, frame, frame.length);
+            }
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.chameleonvision.vision.pipeline;
+
+import com.chameleonvision.vision.enums.ImageRotationMode;
+import com.chameleonvision.vision.enums.SortMode;
+import com.chameleonvision.vision.pipeline.impl.StandardCVPipelineSettings;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class SettingsBinderTest {
+
+    @Test
+    public void coercionTest() {
+        var binder = SettingsBinder.of(StandardCVPipelineSettings.class);
+        var settings = new StandardCVPipelineSettings();
+
+        // msgpack sends whole numbers as integers, even for double fields
+        binder.bind("exposure", 20).apply(settings);
+        Assertions.assertEquals(20.0, settings.exposure);
+        binder.bind("parallelStripes", 4.0).apply(settings);
+        Assertions.assertEquals(4, settings.parallelStripes);
+        binder.bind("rotationMode", 2).apply(settings);
+        Assertions.assertEquals(ImageRotationMode.values()[2], settings.rotationMode);
+        binder.bind("sortMode", SortMode.Smallest.name()).apply(settings);
+        Assertions.assertEquals(SortMode.Smallest, settings.sortMode);
+        binder.bind("multiple", true).apply(settings);
+        Assertions.assertTrue(settings.multiple);
+
+        List<Number> hue = new ArrayList<>(Arrays.asList(10, 20));
+        binder.bind("hue", hue).apply(settings);
+        hue.set(0, 99);
+        Assertions.assertEquals(10, settings.hue.get(0));
+    }
+
+    @Test
+    public void rejectTest() {
+        var binder = SettingsBinder.of(StandardCVPipelineSettings.class);
+        var settings = new StandardCVPipelineSettings();
+        int stripes = settings.parallelStripes;
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> binder.bind("noSuchSetting", 1));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> binder.bind("parallelStripes", 1.5));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> binder.bind("parallelStripes", "2"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> binder.bind("parallelStripes", Integer.MAX_VALUE + 1L));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> binder.bind("parallelStripes", 1e10));
+        // would wrap around to ordinal 0
+        Assertions.assertThrows(IllegalArgumentException.class, () -> binder.bind("rotationMode", 1L << 32));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> binder.bind("rotationMode", ImageRotationMode.values().length));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> binder.bind("hue", Arrays.asList("a", "b")));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> binder.bind("multiple", null));
+        Assertions.assertEquals(stripes, settings.parallelStripes);
+
+        // fields of the base class can be bound too, but not the other way around
+        SettingsBinder.of(CVPipelineSettings.class).bind("exposure", 10);
+        Assertions.assertThrows(IllegalArgumentException.class, () -> SettingsBinder.of(CVPipelineSettings.class).bind("hue", List.of(1, 2)));
+    }
+}
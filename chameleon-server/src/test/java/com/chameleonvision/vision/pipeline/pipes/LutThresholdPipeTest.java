@@ -0,0 +1,70 @@
+package com.chameleonvision.vision.pipeline.pipes;
+
+import com.chameleonvision.util.ProgramDirectoryUtilities;
+import edu.wpi.cscore.CameraServerCvJNI;
+import edu.wpi.cscore.CameraServerJNI;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.core.Scalar;
+import org.opencv.imgcodecs.Imgcodecs;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+public class LutThresholdPipeTest {
+
+    private static final Path imagePath = Paths.get(ProgramDirectoryUtilities.getProgramDirectory(), "testimages", "2019", "CargoStraightDark48in.jpg");
+
+    @BeforeAll
+    static void setup() {
+        try {
+            CameraServerJNI.forceLoad();
+            CameraServerCvJNI.forceLoad();
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to load JNI libraries!");
+        }
+    }
+
+    @Test
+    public void exactMatchesHsvTest() throws InterruptedException {
+        if (!Files.exists(imagePath)) return;
+        Mat image = Imgcodecs.imread(imagePath.toString());
+        Assertions.assertFalse(image.empty());
+
+        // the default range, a green retroreflective tape range, and one that catches most of the image
+        double[][][] ranges = {
+                {{50, 50, 50}, {180, 255, 255}},
+                {{55, 100, 80}, {95, 255, 255}},
+                {{0, 0, 20}, {179, 200, 255}},
+        };
+        for (double[][] range : ranges) {
+            Scalar lower = new Scalar(range[0]);
+            Scalar upper = new Scalar(range[1]);
+            Mat hsvMask = new HsvPipe(lower, upper, 1).run(image).getLeft();
+
+            var lutPipe = new LutThresholdPipe(lower, upper, true);
+            // thresholded the slow way while the table is built, which must give the same mask too
+            assertSameMask(hsvMask, lutPipe.run(image).getLeft());
+
+            long deadline = System.currentTimeMillis() + 30_000;
+            while (!lutPipe.isTableReady() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            Assertions.assertTrue(lutPipe.isTableReady());
+            assertSameMask(hsvMask, lutPipe.run(image).getLeft());
+        }
+    }
+
+    private static void assertSameMask(Mat expected, Mat actual) {
+        Assertions.assertEquals(expected.size(), actual.size());
+        Assertions.assertEquals(expected.type(), actual.type());
+        Mat difference = new Mat();
+        Core.absdiff(expected, actual, difference);
+        Assertions.assertEquals(0, Core.countNonZero(difference));
+    }
+}